@@ -9,8 +9,15 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class})
 public class DataIngestionApplication {
+    // Below ClickHouse's default keep_alive_timeout, so pooled connections are never reused after the server drops them
+    private static final String DEFAULT_KEEPALIVE_SECONDS = "3";
 
     public static void main(String[] args) {
+        // The JDK HTTP client reads this once, when its first client is created. It is JVM-wide, so it is a
+        // JVM option rather than an application property: -Djdk.httpclient.keepalive.timeout overrides it.
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", DEFAULT_KEEPALIVE_SECONDS);
+        }
         SpringApplication.run(DataIngestionApplication.class, args);
     }
 
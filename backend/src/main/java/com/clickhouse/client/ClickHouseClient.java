@@ -1,5 +1,7 @@
 package com.clickhouse.client;
 
+import java.util.List;
+
 public interface ClickHouseClient extends AutoCloseable {
     QueryResponse query(String sql);
     
@@ -8,14 +10,33 @@ public interface ClickHouseClient extends AutoCloseable {
     }
     
     interface QueryResponse {
+        /**
+         * Overrides the client's fetch size, the number of rows the driver pulls per round trip.
+         */
+        QueryResponse fetchSize(int rows);
+
+        /**
+         * Runs the query and returns a cursor that reads rows as it is iterated. The caller must close it.
+         */
+        ClickHouseCursor execute() throws Exception;
+
+        /**
+         * Runs the query and reads the whole result into memory. Use {@link #execute()} for large results.
+         */
         ClickHouseResponse executeAndWait() throws Exception;
     }
     
     interface Builder {
         Builder node(ClickHouseNode node);
+
+        /**
+         * Connects to the first of {@code nodes} that accepts a connection, in order.
+         */
+        Builder nodes(List<ClickHouseNode> nodes);
         Builder database(String database);
         Builder username(String username);
         Builder password(String password);
+        Builder fetchSize(int rows);
         ClickHouseClient build();
     }
-} 
\ No newline at end of file
+}
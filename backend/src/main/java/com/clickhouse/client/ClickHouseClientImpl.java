@@ -3,18 +3,20 @@ package com.clickhouse.client;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class ClickHouseClientImpl implements ClickHouseClient {
     private final Connection connection;
+    private final int fetchSize;
     private static final String JDBC_URL_FORMAT = "jdbc:clickhouse://%s:%d/%s";
+    private static final int DEFAULT_FETCH_SIZE = 10_000;
 
-    private ClickHouseClientImpl(Connection connection) {
+    private ClickHouseClientImpl(Connection connection, int fetchSize) {
         this.connection = connection;
+        this.fetchSize = fetchSize;
     }
 
     @Override
@@ -22,31 +24,31 @@ public class ClickHouseClientImpl implements ClickHouseClient {
         return new QueryResponseImpl(sql, this);
     }
 
-    ClickHouseResponse executeQuery(String sql) throws Exception {
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            int columnCount = rs.getMetaData().getColumnCount();
-            List<String> columnNames = new ArrayList<>();
-            for (int i = 1; i <= columnCount; i++) {
-                columnNames.add(rs.getMetaData().getColumnName(i));
+    ClickHouseCursor openCursor(String sql, int fetchSize) throws SQLException {
+        Statement stmt = connection.createStatement();
+        try {
+            // Statements are forward-only and read-only by default, so rows can be streamed in fetchSize steps
+            stmt.setFetchSize(fetchSize);
+            ResultSet rs = stmt.executeQuery(sql);
+            try {
+                return new ClickHouseCursor(stmt, rs);
+            } catch (SQLException | RuntimeException e) {
+                rs.close();
+                throw e;
             }
+        } catch (SQLException | RuntimeException e) {
+            stmt.close();
+            throw e;
+        }
+    }
 
+    ClickHouseResponse executeQuery(String sql, int fetchSize) throws SQLException {
+        try (ClickHouseCursor cursor = openCursor(sql, fetchSize)) {
             List<ClickHouseRecord> records = new ArrayList<>();
-            while (rs.next()) {
-                List<String> values = new ArrayList<>();
-                for (int i = 1; i <= columnCount; i++) {
-                    Object value = rs.getObject(i);
-                    values.add(value != null ? value.toString() : null);
-                }
-                Map<String, Object> recordMap = new HashMap<>();
-                for (int i = 0; i < columnCount; i++) {
-                    recordMap.put(columnNames.get(i), values.get(i));
-                }
-                records.add(new ClickHouseRecord(recordMap));
+            while (cursor.next()) {
+                records.add(cursor.current().copy());
             }
-
-            return new ClickHouseResponse(records, columnNames);
+            return new ClickHouseResponse(records, cursor.getColumnNames());
         }
     }
 
@@ -60,29 +62,47 @@ public class ClickHouseClientImpl implements ClickHouseClient {
     private static class QueryResponseImpl implements QueryResponse {
         private final String sql;
         private final ClickHouseClientImpl client;
+        private int fetchSize;
 
         QueryResponseImpl(String sql, ClickHouseClientImpl client) {
             this.sql = sql;
             this.client = client;
+            this.fetchSize = client.fetchSize;
+        }
+
+        @Override
+        public QueryResponse fetchSize(int rows) {
+            this.fetchSize = rows;
+            return this;
+        }
+
+        @Override
+        public ClickHouseCursor execute() throws Exception {
+            return client.openCursor(sql, fetchSize);
         }
 
         @Override
         public ClickHouseResponse executeAndWait() throws Exception {
-            return client.executeQuery(sql);
+            return client.executeQuery(sql, fetchSize);
         }
     }
 
     public static class Builder implements ClickHouseClient.Builder {
-        private String host;
-        private int port;
+        private List<ClickHouseNode> nodes = List.of();
         private String database;
         private String username;
         private String password;
+        private int fetchSize = DEFAULT_FETCH_SIZE;
 
         @Override
         public Builder node(ClickHouseNode node) {
-            this.host = node.getHost();
-            this.port = node.getPort();
+            this.nodes = List.of(node);
+            return this;
+        }
+
+        @Override
+        public Builder nodes(List<ClickHouseNode> nodes) {
+            this.nodes = List.copyOf(nodes);
             return this;
         }
 
@@ -104,15 +124,31 @@ public class ClickHouseClientImpl implements ClickHouseClient {
             return this;
         }
 
+        @Override
+        public Builder fetchSize(int rows) {
+            this.fetchSize = rows;
+            return this;
+        }
+
         @Override
         public ClickHouseClient build() {
-            try {
-                String url = String.format(JDBC_URL_FORMAT, host, port, database);
-                Connection conn = DriverManager.getConnection(url, username, password);
-                return new ClickHouseClientImpl(conn);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create ClickHouseClient: " + e.getMessage(), e);
+            if (nodes.isEmpty()) {
+                throw new IllegalStateException("Failed to create ClickHouseClient: no node configured");
+            }
+            SQLException lastFailure = null;
+            for (ClickHouseNode node : nodes) {
+                try {
+                    String url = String.format(JDBC_URL_FORMAT, node.getHost(), node.getPort(), database);
+                    Connection conn = DriverManager.getConnection(url, username, password);
+                    return new ClickHouseClientImpl(conn, fetchSize);
+                } catch (SQLException e) {
+                    // Fail over to the next replica
+                    lastFailure = e;
+                } catch (Exception e) {
+                    throw new RuntimeException("Failed to create ClickHouseClient: " + e.getMessage(), e);
+                }
             }
+            throw new RuntimeException("Failed to create ClickHouseClient: " + lastFailure.getMessage(), lastFailure);
         }
     }
 } 
\ No newline at end of file
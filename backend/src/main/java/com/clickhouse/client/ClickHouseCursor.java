@@ -0,0 +1,118 @@
+package com.clickhouse.client;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward-only cursor over a query result, pulling rows from the driver as it is iterated.
+ * A single {@link ClickHouseRecord} is reused for every row: it reflects the current row only and
+ * must be copied with {@link ClickHouseRecord#copy()} to be kept. Closing the cursor releases the
+ * statement and any rows not yet read.
+ */
+public class ClickHouseCursor implements Iterable<ClickHouseRecord>, AutoCloseable {
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final List<String> columnNames;
+    private final ClickHouseRecord current;
+    private boolean hasCurrent;
+    private boolean iterated;
+
+    ClickHouseCursor(Statement statement, ResultSet resultSet) throws SQLException {
+        this.statement = statement;
+        this.resultSet = resultSet;
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<String> names = new ArrayList<>(columnCount);
+        Map<String, Integer> columnIndex = new HashMap<>();
+        for (int i = 0; i < columnCount; i++) {
+            names.add(metaData.getColumnName(i + 1));
+            columnIndex.putIfAbsent(names.get(i), i);
+        }
+        this.columnNames = Collections.unmodifiableList(names);
+        this.current = new ClickHouseRecord(new Object[columnCount], columnNames, columnIndex);
+    }
+
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
+    /**
+     * Advances to the next row.
+     *
+     * @return false once the result is exhausted
+     */
+    public boolean next() throws SQLException {
+        hasCurrent = resultSet.next();
+        if (hasCurrent) {
+            Object[] values = current.values();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = resultSet.getObject(i + 1);
+            }
+        }
+        return hasCurrent;
+    }
+
+    /**
+     * The row the cursor is on, overwritten by the next call to {@link #next()}.
+     */
+    public ClickHouseRecord current() {
+        if (!hasCurrent) {
+            throw new NoSuchElementException("Cursor is not on a row");
+        }
+        return current;
+    }
+
+    /**
+     * Iterates the remaining rows once. Driver errors are rethrown as {@link IllegalStateException}.
+     */
+    @Override
+    public Iterator<ClickHouseRecord> iterator() {
+        if (iterated) {
+            throw new IllegalStateException("Cursor can only be iterated once");
+        }
+        iterated = true;
+        return new Iterator<>() {
+            private boolean advanced;
+
+            @Override
+            public boolean hasNext() {
+                if (!advanced) {
+                    try {
+                        ClickHouseCursor.this.next();
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Failed to read row: " + e.getMessage(), e);
+                    }
+                    advanced = true;
+                }
+                return hasCurrent;
+            }
+
+            @Override
+            public ClickHouseRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                advanced = false;
+                return current;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            resultSet.close();
+        } finally {
+            statement.close();
+        }
+    }
+}
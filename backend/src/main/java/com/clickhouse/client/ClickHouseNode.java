@@ -1,6 +1,8 @@
 package com.clickhouse.client;
 
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 
 public class ClickHouseNode {
     private final String host;
@@ -16,6 +18,36 @@ public class ClickHouseNode {
         return new ClickHouseNode(host, port);
     }
 
+    public static ClickHouseNode of(String host, int port) {
+        return new ClickHouseNode(host, port);
+    }
+
+    /**
+     * Parses {@code host}, {@code host:port} or {@code [ipv6]:port}.
+     *
+     * @throws IllegalArgumentException if the address is blank or its port is not a number
+     */
+    public static ClickHouseNode parse(String address, int defaultPort) {
+        if (address == null || address.isBlank()) {
+            throw new IllegalArgumentException("Node address must not be empty");
+        }
+        String value = address.trim();
+        int colon = value.lastIndexOf(':');
+        boolean bracketed = value.startsWith("[");
+        if (colon < 0 || (bracketed && colon < value.indexOf(']'))) {
+            return new ClickHouseNode(value, defaultPort);
+        }
+        // A bare IPv6 address has several colons and no port; it is bracketed for use in URLs
+        if (!bracketed && value.indexOf(':') != colon) {
+            return new ClickHouseNode("[" + value + "]", defaultPort);
+        }
+        try {
+            return new ClickHouseNode(value.substring(0, colon), Integer.parseInt(value.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid node address: " + address);
+        }
+    }
+
     public String getHost() {
         return host;
     }
@@ -23,4 +55,25 @@ public class ClickHouseNode {
     public int getPort() {
         return port;
     }
-} 
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClickHouseNode other)) {
+            return false;
+        }
+        return port == other.port && host.equalsIgnoreCase(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host.toLowerCase(Locale.ROOT), port);
+    }
+
+    @Override
+    public String toString() {
+        return host + ":" + port;
+    }
+}
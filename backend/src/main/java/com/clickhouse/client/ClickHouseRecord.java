@@ -1,46 +1,76 @@
 package com.clickhouse.client;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import com.clickhouse.data.ClickHouseValue;
-
 public class ClickHouseRecord {
-    private final List<Object> values;
+    private final Object[] values;
     private final List<String> columnNames;
-    private final Map<String, Object> recordMap;
+    // Column name to position, shared by all rows of a result
+    private final Map<String, Integer> columnIndex;
 
     public ClickHouseRecord(List<Object> values, List<String> columnNames) {
-        this.values = values != null ? values : new ArrayList<>();
-        this.columnNames = columnNames != null ? columnNames : new ArrayList<>();
-        this.recordMap = null;
+        this(values != null ? values.toArray() : new Object[0],
+            columnNames != null ? List.copyOf(columnNames) : List.of(),
+            null);
     }
 
+    /**
+     * @param recordMap column name to value, in column order (e.g. a {@link java.util.LinkedHashMap})
+     */
     public ClickHouseRecord(Map<String, Object> recordMap) {
-        this.recordMap = recordMap;
-        this.values = new ArrayList<>(recordMap.values());
-        this.columnNames = new ArrayList<>(recordMap.keySet());
+        this(recordMap.values().toArray(), List.copyOf(recordMap.keySet()), null);
+    }
+
+    ClickHouseRecord(Object[] values, List<String> columnNames, Map<String, Integer> columnIndex) {
+        this.values = values;
+        this.columnNames = columnNames;
+        this.columnIndex = columnIndex != null ? columnIndex : indexOf(columnNames);
+    }
+
+    private static Map<String, Integer> indexOf(List<String> columnNames) {
+        Map<String, Integer> index = new HashMap<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            index.putIfAbsent(columnNames.get(i), i);
+        }
+        return index;
+    }
+
+    /**
+     * Backing array, filled in place by {@link ClickHouseCursor} for each row.
+     */
+    Object[] values() {
+        return values;
     }
 
     public Object getValue(int index) {
-        if (index < 0 || index >= values.size()) {
-            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + values.size());
+        if (index < 0 || index >= values.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + values.length);
         }
-        return values.get(index);
+        return values[index];
     }
 
     public Object getValue(String columnName) {
-        int index = columnNames.indexOf(columnName);
-        if (index == -1) {
+        Integer index = columnIndex.get(columnName);
+        if (index == null) {
             throw new IllegalArgumentException("Column not found: " + columnName);
         }
-        return getValue(index);
+        return values[index];
+    }
+
+    public ClickHouseValue get(int index) {
+        return new ClickHouseValue(getValue(index));
+    }
+
+    public ClickHouseValue get(String columnName) {
+        return new ClickHouseValue(getValue(columnName));
     }
 
     public int size() {
-        return values.size();
+        return values.length;
     }
 
     public List<String> getColumnNames() {
@@ -48,11 +78,13 @@ public class ClickHouseRecord {
     }
 
     public List<Object> getValues() {
-        return Collections.unmodifiableList(values);
+        return Collections.unmodifiableList(Arrays.asList(values));
     }
 
-	public com.clickhouse.client.ClickHouseValue get(int i) {
-		// TODO Auto-generated method stub
-		return null;
-	}
+    /**
+     * Detached copy of this row, for keeping a row read from a {@link ClickHouseCursor}.
+     */
+    public ClickHouseRecord copy() {
+        return new ClickHouseRecord(values.clone(), columnNames, columnIndex);
+    }
 }
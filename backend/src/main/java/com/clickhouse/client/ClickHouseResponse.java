@@ -1,7 +1,7 @@
 package com.clickhouse.client;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 public class ClickHouseResponse implements Iterable<ClickHouseRecord> {
@@ -14,11 +14,11 @@ public class ClickHouseResponse implements Iterable<ClickHouseRecord> {
     }
 
     public List<ClickHouseRecord> records() {
-        return new ArrayList<>(records);
+        return Collections.unmodifiableList(records);
     }
 
     public List<String> getColumnNames() {
-        return new ArrayList<>(columnNames);
+        return Collections.unmodifiableList(columnNames);
     }
 
     public int size() {
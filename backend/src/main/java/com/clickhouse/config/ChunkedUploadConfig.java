@@ -0,0 +1,21 @@
+package com.clickhouse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "upload.chunked")
+public class ChunkedUploadConfig {
+    // Uploads without a chunk for this long are aborted and their partial files deleted
+    private Duration sessionTimeout = Duration.ofHours(1);
+
+    public Duration getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(Duration sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+}
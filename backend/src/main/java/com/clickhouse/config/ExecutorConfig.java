@@ -0,0 +1,43 @@
+package com.clickhouse.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Bounded pool shared by every import for CPU-bound CSV parsing.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService csvParseExecutor(IngestionConfig properties, MeterRegistry registry) {
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getParseThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "csv-parse-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Exposes queue depth and active threads as executor_* meters
+        return ExecutorServiceMetrics.monitor(registry, executor, "csv.parse");
+    }
+
+    /**
+     * Bounded pool shared by every partitioned export for streaming hash ranges to files.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService exportExecutor(IngestionConfig properties, MeterRegistry registry) {
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, properties.getExportThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "clickhouse-export-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return ExecutorServiceMetrics.monitor(registry, executor, "export");
+    }
+}
@@ -0,0 +1,121 @@
+package com.clickhouse.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@ConfigurationProperties(prefix = "ingestion.jobs")
+public class IngestionConfig {
+    private int maxConcurrentJobs = 8;
+    private int maxQueuedJobs = 100;
+    private int maxJobsPerHost = 4;
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    // Threads shared by all partitioned exports, and the most hash ranges one export may request
+    private int exportThreads = 16;
+    private int maxExportParallelism = 8;
+    // Most insert workers and queued batches one import may request; parse parallelism is capped by parseThreads
+    private int maxInsertParallelism = 8;
+    private int maxInFlightBatches = 32;
+    private Duration progressRetention = Duration.ofHours(1);
+    private Duration progressStreamInterval = Duration.ofSeconds(1);
+    private Duration progressStreamTimeout = Duration.ofMinutes(30);
+    private int progressStreamSenderThreads = 2;
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    public int getMaxQueuedJobs() {
+        return maxQueuedJobs;
+    }
+
+    public void setMaxQueuedJobs(int maxQueuedJobs) {
+        this.maxQueuedJobs = maxQueuedJobs;
+    }
+
+    public int getMaxJobsPerHost() {
+        return maxJobsPerHost;
+    }
+
+    public void setMaxJobsPerHost(int maxJobsPerHost) {
+        this.maxJobsPerHost = maxJobsPerHost;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+
+    public int getExportThreads() {
+        return exportThreads;
+    }
+
+    public void setExportThreads(int exportThreads) {
+        this.exportThreads = exportThreads;
+    }
+
+    public int getMaxExportParallelism() {
+        return maxExportParallelism;
+    }
+
+    public void setMaxExportParallelism(int maxExportParallelism) {
+        this.maxExportParallelism = maxExportParallelism;
+    }
+
+    public int getMaxInsertParallelism() {
+        return maxInsertParallelism;
+    }
+
+    public void setMaxInsertParallelism(int maxInsertParallelism) {
+        this.maxInsertParallelism = maxInsertParallelism;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    public Duration getProgressRetention() {
+        return progressRetention;
+    }
+
+    public void setProgressRetention(Duration progressRetention) {
+        this.progressRetention = progressRetention;
+    }
+
+    public Duration getProgressStreamInterval() {
+        return progressStreamInterval;
+    }
+
+    public void setProgressStreamInterval(Duration progressStreamInterval) {
+        this.progressStreamInterval = progressStreamInterval;
+    }
+
+    public Duration getProgressStreamTimeout() {
+        return progressStreamTimeout;
+    }
+
+    public void setProgressStreamTimeout(Duration progressStreamTimeout) {
+        this.progressStreamTimeout = progressStreamTimeout;
+    }
+
+    public int getProgressStreamSenderThreads() {
+        return progressStreamSenderThreads;
+    }
+
+    public void setProgressStreamSenderThreads(int progressStreamSenderThreads) {
+        this.progressStreamSenderThreads = progressStreamSenderThreads;
+    }
+}
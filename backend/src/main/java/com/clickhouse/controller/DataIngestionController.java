@@ -2,24 +2,40 @@ package com.clickhouse.controller;
 
 import com.clickhouse.model.ClickHouseConnection;
 import com.clickhouse.model.ColumnSelection;
+import com.clickhouse.model.FileValidationReport;
 import com.clickhouse.model.FlatFileConfig;
 import com.clickhouse.model.JoinConfig;
 import com.clickhouse.model.PreviewRequest;
+import com.clickhouse.model.ProgressSnapshot;
+import com.clickhouse.model.TableSchema;
+import com.clickhouse.model.UploadStatus;
+import com.clickhouse.model.ValidationMode;
+import com.clickhouse.service.ChunkedUploadService;
 import com.clickhouse.service.ClickHouseService;
 import com.clickhouse.service.DataPreviewService;
 import com.clickhouse.service.FileService;
+import com.clickhouse.service.IngestionJobScheduler;
 import com.clickhouse.service.ProgressService;
+import com.clickhouse.service.ProgressStreamService;
+import com.clickhouse.service.TaskProgress;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api")
@@ -40,6 +56,15 @@ public class DataIngestionController {
     @Autowired
     private ProgressService progressService;
 
+    @Autowired
+    private ProgressStreamService progressStreamService;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private IngestionJobScheduler jobScheduler;
+
     @GetMapping("/tables")
     public ResponseEntity<List<String>> getTables(
             @RequestParam String host,
@@ -47,8 +72,7 @@ public class DataIngestionController {
             @RequestParam String database,
             @RequestParam String user,
             @RequestParam(required = false) String jwtToken) {
-        log.info("Received request for tables with params: host=" + host + 
-            ", port=" + port + ", database=" + database + ", user=" + user);
+        log.debug("Received request for tables: host={}, port={}, database={}, user={}", host, port, database, user);
         try {
             ClickHouseConnection config = new ClickHouseConnection();
             config.setHost(host);
@@ -58,10 +82,10 @@ public class DataIngestionController {
             config.setJwtToken(jwtToken != null ? jwtToken : "");
             
             List<String> tables = clickHouseService.getTables(config);
-            log.info("Successfully retrieved " + tables.size() + " tables");
+            log.debug("Retrieved {} tables", tables.size());
             return ResponseEntity.ok(tables);
         } catch (Exception e) {
-            log.error("Error processing request: " + e.getMessage());
+            log.error("Error fetching tables: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
         }
     }
@@ -90,16 +114,96 @@ public class DataIngestionController {
     @PostMapping("/upload")
     public ResponseEntity<String> uploadFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("delimiter") String delimiter) {
+            @RequestParam("delimiter") String delimiter,
+            @RequestParam(value = "validation", defaultValue = "SAMPLE") ValidationMode validation) {
         try {
             String filePath = fileService.saveUploadedFile(file);
-            fileService.validateFileFormat(filePath, delimiter);
+            fileService.validateFileFormat(filePath, delimiter, validation);
             return ResponseEntity.ok(filePath);
         } catch (Exception e) {
             return ResponseEntity.badRequest().body("Error uploading file: " + e.getMessage());
         }
     }
 
+    @PostMapping("/uploads")
+    public ResponseEntity<UploadStatus> initChunkedUpload(
+            @RequestParam String fileName,
+            @RequestParam(defaultValue = "-1") long totalSize) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.init(fileName, totalSize));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @PutMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadStatus> uploadChunk(
+            @PathVariable String uploadId,
+            @RequestParam long offset,
+            HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.writeChunk(uploadId, offset, request.getInputStream()));
+        } catch (IllegalStateException e) {
+            // Tell the client where to resume from
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(chunkedUploadService.status(uploadId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<UploadStatus> getChunkedUpload(@PathVariable String uploadId) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.status(uploadId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeChunkedUpload(
+            @PathVariable String uploadId,
+            @RequestParam String delimiter,
+            @RequestParam(required = false) String sha256,
+            @RequestParam(value = "validation", defaultValue = "SAMPLE") ValidationMode validation) {
+        try {
+            UploadStatus status = chunkedUploadService.complete(uploadId, sha256);
+            fileService.validateFileFormat(status.getFilePath(), delimiter, validation);
+            return ResponseEntity.ok(status);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body("Error completing upload: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Void> abortChunkedUpload(@PathVariable String uploadId) {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/file-validation")
+    public ResponseEntity<FileValidationReport> getFileValidation(@RequestParam String filePath) {
+        FileValidationReport report = fileService.getValidationReport(filePath);
+        if (report == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    @GetMapping("/file-schema")
+    public ResponseEntity<TableSchema> getFileSchema(
+            @RequestParam String filePath,
+            @RequestParam String delimiter,
+            @RequestParam List<String> columns) {
+        try {
+            return ResponseEntity.ok(fileService.inferSchema(filePath, delimiter, columns));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @GetMapping("/file-headers")
     public ResponseEntity<List<String>> getFileHeaders(
             @RequestParam String filePath,
@@ -112,13 +216,17 @@ public class DataIngestionController {
     }
 
     @GetMapping("/preview/clickhouse")
-    public ResponseEntity<List<List<String>>> previewClickHouseData(
+    public CompletableFuture<ResponseEntity<List<List<String>>>> previewClickHouseData(
             @RequestParam String table,
             @RequestBody PreviewRequest request) {
         try {
-            return ResponseEntity.ok(dataPreviewService.previewClickHouseData(request.getConfig(), table, request.getColumns()));
+            // Answered when the query completes, without a request thread waiting on it
+            return dataPreviewService.previewClickHouseData(request.getConfig(), table, request.getColumns())
+                .handle((rows, error) -> error == null
+                    ? ResponseEntity.ok(rows)
+                    : ResponseEntity.badRequest().<List<List<String>>>build());
         } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
         }
     }
 
@@ -135,8 +243,20 @@ public class DataIngestionController {
     }
 
     @GetMapping("/progress/{taskId}")
-    public ResponseEntity<Integer> getProgress(@PathVariable String taskId) {
-        return ResponseEntity.ok(progressService.getProgress(taskId));
+    public ResponseEntity<ProgressSnapshot> getProgress(@PathVariable String taskId) {
+        ProgressSnapshot progress = progressService.getProgress(taskId);
+        if (progress == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(progress);
+    }
+
+    @GetMapping(value = "/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress(
+            @RequestParam List<String> taskIds,
+            @RequestParam(required = false) Long intervalMillis) {
+        return progressStreamService.subscribe(taskIds,
+            intervalMillis != null ? Duration.ofMillis(intervalMillis) : null);
     }
 
     @PostMapping("/ingest/clickhouse-to-file")
@@ -144,25 +264,12 @@ public class DataIngestionController {
             @RequestBody ClickHouseConnection config,
             @RequestParam String table,
             @RequestBody ColumnSelection columns,
-            @RequestBody FlatFileConfig fileConfig) {
+            @RequestBody FlatFileConfig fileConfig,
+            @RequestParam(defaultValue = "0") int priority) {
         String taskId = UUID.randomUUID().toString();
-        try {
-            // Start a new thread for the ingestion process
-            new Thread(() -> {
-                try {
-                    progressService.updateProgress(taskId, 10);
-                    String result = clickHouseService.exportToFile(config, table, columns, fileConfig);
-                    progressService.updateProgress(taskId, 100);
-                    progressService.removeProgress(taskId);
-                } catch (Exception e) {
-                    progressService.updateProgress(taskId, -1);
-                }
-            }).start();
-            
-            return ResponseEntity.ok(taskId);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
-        }
+        TaskProgress progress = progressService.register(taskId);
+        return submitJob(taskId, config, priority,
+            () -> clickHouseService.exportToFile(config, table, columns, fileConfig, progress));
     }
 
     @PostMapping("/ingest/file-to-clickhouse")
@@ -170,26 +277,14 @@ public class DataIngestionController {
             @RequestBody ClickHouseConnection config,
             @RequestParam String table,
             @RequestBody ColumnSelection columns,
-            @RequestBody FlatFileConfig fileConfig) {
+            @RequestBody FlatFileConfig fileConfig,
+            @RequestParam(defaultValue = "0") int priority) {
         String taskId = UUID.randomUUID().toString();
-        try {
-            // Start a new thread for the ingestion process
-            new Thread(() -> {
-                try {
-                    progressService.updateProgress(taskId, 10);
-                    String result = clickHouseService.importFromFile(config, table, columns, fileConfig);
-                    fileService.deleteFile(fileConfig.getFilePath());
-                    progressService.updateProgress(taskId, 100);
-                    progressService.removeProgress(taskId);
-                } catch (Exception e) {
-                    progressService.updateProgress(taskId, -1);
-                }
-            }).start();
-            
-            return ResponseEntity.ok(taskId);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
-        }
+        TaskProgress progress = progressService.register(taskId);
+        return submitJob(taskId, config, priority, () -> {
+            clickHouseService.importFromFile(config, table, columns, fileConfig, progress);
+            fileService.deleteFile(fileConfig.getFilePath());
+        });
     }
 
     @PostMapping("/ingest/join-tables")
@@ -197,23 +292,53 @@ public class DataIngestionController {
             @RequestBody ClickHouseConnection config,
             @RequestBody JoinConfig joinConfig,
             @RequestBody ColumnSelection columns,
-            @RequestBody FlatFileConfig fileConfig) {
+            @RequestBody FlatFileConfig fileConfig,
+            @RequestParam(defaultValue = "0") int priority) {
         String taskId = UUID.randomUUID().toString();
+        TaskProgress progress = progressService.register(taskId);
+        return submitJob(taskId, config, priority,
+            () -> clickHouseService.joinTables(config, joinConfig, columns, fileConfig, progress));
+    }
+
+    @DeleteMapping("/jobs/{taskId}")
+    public ResponseEntity<Void> cancelJob(@PathVariable String taskId) {
+        if (!jobScheduler.cancel(taskId)) {
+            return ResponseEntity.notFound().build();
+        }
+        progressService.markCancelled(taskId);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Queues an ingestion job, answering 429 when the scheduler has no room for it.
+     * The task must already be registered with the progress service.
+     */
+    private ResponseEntity<String> submitJob(String taskId, ClickHouseConnection config, int priority,
+                                             IngestionJobScheduler.Job job) {
         try {
-            // Start a new thread for the ingestion process
-            new Thread(() -> {
+            jobScheduler.submit(taskId, config.getHost() + ":" + config.getPort(), priority, () -> {
+                if (!progressService.markRunning(taskId)) {
+                    return;
+                }
                 try {
-                    progressService.updateProgress(taskId, 10);
-                    String result = clickHouseService.joinTables(config, joinConfig, columns, fileConfig);
-                    progressService.updateProgress(taskId, 100);
-                    progressService.removeProgress(taskId);
+                    job.run();
+                    progressService.markCompleted(taskId);
                 } catch (Exception e) {
-                    progressService.updateProgress(taskId, -1);
+                    // Cancelling interrupts the job, which then fails in whatever it was doing
+                    if (jobScheduler.isCancelled(taskId) || Thread.currentThread().isInterrupted()) {
+                        progressService.markCancelled(taskId);
+                    } else {
+                        log.error("Task {} failed: {}", taskId, e.getMessage());
+                        progressService.markFailed(taskId, e.getMessage());
+                    }
                 }
-            }).start();
-            
+            });
             return ResponseEntity.ok(taskId);
+        } catch (RejectedExecutionException e) {
+            progressService.removeProgress(taskId);
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
         } catch (Exception e) {
+            progressService.removeProgress(taskId);
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
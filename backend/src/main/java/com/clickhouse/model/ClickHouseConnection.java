@@ -1,6 +1,8 @@
 package com.clickhouse.model;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ClickHouseConnection implements Closeable {
     private String host;
@@ -8,6 +10,12 @@ public class ClickHouseConnection implements Closeable {
     private String database;
     private String user;
     private String jwtToken;
+    private CompressionCodec compression = CompressionCodec.NONE;
+    // Further nodes serving the same data, as host or host:port; the port defaults to this connection's
+    private List<String> replicas = new ArrayList<>();
+    private LoadBalancingPolicy loadBalancing = LoadBalancingPolicy.ROUND_ROBIN;
+    // Insert into the shards' local tables directly when the target is a Distributed table
+    private boolean shardAwareInserts;
 
     public String getHost() {
         return host;
@@ -49,6 +57,54 @@ public class ClickHouseConnection implements Closeable {
         this.jwtToken = jwtToken;
     }
 
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionCodec compression) {
+        this.compression = compression;
+    }
+
+    public List<String> getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(List<String> replicas) {
+        this.replicas = replicas;
+    }
+
+    public LoadBalancingPolicy getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    public void setLoadBalancing(LoadBalancingPolicy loadBalancing) {
+        this.loadBalancing = loadBalancing;
+    }
+
+    public boolean isShardAwareInserts() {
+        return shardAwareInserts;
+    }
+
+    public void setShardAwareInserts(boolean shardAwareInserts) {
+        this.shardAwareInserts = shardAwareInserts;
+    }
+
+    /**
+     * Copy of this connection that targets only the given node.
+     */
+    public ClickHouseConnection withEndpoint(String host, int port) {
+        ClickHouseConnection copy = new ClickHouseConnection();
+        copy.host = host;
+        copy.port = port;
+        copy.database = database;
+        copy.user = user;
+        copy.jwtToken = jwtToken;
+        copy.compression = compression;
+        copy.loadBalancing = loadBalancing;
+        copy.shardAwareInserts = shardAwareInserts;
+        return copy;
+    }
+
     @Override
     public void close() {
         // Implementation for closing connection
@@ -4,6 +4,7 @@ import java.util.List;
 
 public class ColumnSelection {
     private List<String> columns;
+    private QueryFilter filter;
 
     public List<String> getColumns() {
         return columns;
@@ -12,4 +13,12 @@ public class ColumnSelection {
     public void setColumns(List<String> columns) {
         this.columns = columns;
     }
-} 
\ No newline at end of file
+
+    public QueryFilter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(QueryFilter filter) {
+        this.filter = filter;
+    }
+}
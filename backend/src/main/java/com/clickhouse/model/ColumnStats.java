@@ -0,0 +1,40 @@
+package com.clickhouse.model;
+
+public class ColumnStats {
+    private String name;
+    private String inferredType;
+    private long nullCount;
+    private int maxLength;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getInferredType() {
+        return inferredType;
+    }
+
+    public void setInferredType(String inferredType) {
+        this.inferredType = inferredType;
+    }
+
+    public long getNullCount() {
+        return nullCount;
+    }
+
+    public void setNullCount(long nullCount) {
+        this.nullCount = nullCount;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+}
@@ -0,0 +1,61 @@
+package com.clickhouse.model;
+
+import java.util.Locale;
+
+public enum CompressionCodec {
+    NONE(null, ""),
+    GZIP("gzip", ".gz"),
+    ZSTD("zstd", ".zst"),
+    LZ4("lz4", ".lz4");
+
+    private final String encoding;
+    private final String fileExtension;
+
+    CompressionCodec(String encoding, String fileExtension) {
+        this.encoding = encoding;
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Token used in HTTP {@code Accept-Encoding} and {@code Content-Encoding} headers, or {@code null} for none.
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Conventional file name suffix, e.g. {@code .gz}, or an empty string for none.
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Picks the codec implied by a file name's suffix.
+     */
+    public static CompressionCodec fromFileName(String fileName) {
+        for (CompressionCodec codec : values()) {
+            if (codec != NONE && fileName.toLowerCase(Locale.ROOT).endsWith(codec.fileExtension)) {
+                return codec;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Maps a {@code Content-Encoding} header value back to a codec.
+     *
+     * @throws IllegalArgumentException for an encoding this application cannot decode
+     */
+    public static CompressionCodec fromEncoding(String encoding) {
+        if (encoding == null || encoding.isBlank() || encoding.equalsIgnoreCase("identity")) {
+            return NONE;
+        }
+        for (CompressionCodec codec : values()) {
+            if (encoding.trim().equalsIgnoreCase(codec.encoding)) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported content encoding: " + encoding);
+    }
+}
@@ -0,0 +1,19 @@
+package com.clickhouse.model;
+
+import java.util.Locale;
+
+public enum FileFormat {
+    /** Delimited text, written and parsed with the configured delimiter. */
+    CSV,
+    /** Apache Parquet, encoded and decoded by ClickHouse. */
+    PARQUET;
+
+    /**
+     * Picks the format implied by a file name, ignoring a trailing compression suffix.
+     */
+    public static FileFormat fromFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        name = name.substring(0, name.length() - CompressionCodec.fromFileName(name).getFileExtension().length());
+        return name.endsWith(".parquet") ? PARQUET : CSV;
+    }
+}
@@ -0,0 +1,132 @@
+package com.clickhouse.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileValidationReport {
+    private String filePath;
+    private ValidationMode mode;
+    private long fileSize;
+    private long bytesScanned;
+    private long recordCount;
+    private int columnCount;
+    private long mismatchCount;
+    private List<ColumnCountMismatch> mismatches = new ArrayList<>();
+    private List<ColumnStats> columns = new ArrayList<>();
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public ValidationMode getMode() {
+        return mode;
+    }
+
+    public void setMode(ValidationMode mode) {
+        this.mode = mode;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public long getBytesScanned() {
+        return bytesScanned;
+    }
+
+    public void setBytesScanned(long bytesScanned) {
+        this.bytesScanned = bytesScanned;
+    }
+
+    public boolean isComplete() {
+        return bytesScanned >= fileSize;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(long recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public void setColumnCount(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    public long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    public void setMismatchCount(long mismatchCount) {
+        this.mismatchCount = mismatchCount;
+    }
+
+    public List<ColumnCountMismatch> getMismatches() {
+        return mismatches;
+    }
+
+    public void setMismatches(List<ColumnCountMismatch> mismatches) {
+        this.mismatches = mismatches;
+    }
+
+    public List<ColumnStats> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<ColumnStats> columns) {
+        this.columns = columns;
+    }
+
+    public static class ColumnCountMismatch {
+        // 0 when the record was found in the sampled tail, where line numbers are unknown
+        private long lineNumber;
+        private long byteOffset;
+        private int fieldCount;
+
+        public ColumnCountMismatch() {
+        }
+
+        public ColumnCountMismatch(long lineNumber, long byteOffset, int fieldCount) {
+            this.lineNumber = lineNumber;
+            this.byteOffset = byteOffset;
+            this.fieldCount = fieldCount;
+        }
+
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        public void setLineNumber(long lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+
+        public long getByteOffset() {
+            return byteOffset;
+        }
+
+        public void setByteOffset(long byteOffset) {
+            this.byteOffset = byteOffset;
+        }
+
+        public int getFieldCount() {
+            return fieldCount;
+        }
+
+        public void setFieldCount(int fieldCount) {
+            this.fieldCount = fieldCount;
+        }
+    }
+}
@@ -1,8 +1,35 @@
 package com.clickhouse.model;
 
+import java.util.Map;
+
 public class FlatFileConfig {
     private String filePath;
     private String delimiter;
+    // Quote character of delimited files; a doubled quote inside quotes stands for one
+    private String quote = "\"";
+    // Character making the next one literal, e.g. a backslash; null disables escaping
+    private String escape;
+    private int batchSize = 100_000;
+    private int maxInFlightBatches = 4;
+    private int insertParallelism = 2;
+    private int exportParallelism = 1;
+    private int parseParallelism = 1;
+    private boolean inferSchema = true;
+    // Per-column ClickHouse type overrides for the created table
+    private Map<String, String> columnTypes;
+    private String orderBy;
+    private String shardingKey;
+    private boolean splitOutputFiles;
+    // Null infers the format from the file extension
+    private FileFormat format;
+    // Null infers the codec from the file extension
+    private CompressionCodec compression;
+    private int compressionWorkers;
+    // Retries of a failed batch insert, waiting retryBackoffMillis and doubling the wait each time
+    private int insertRetries = 3;
+    private long retryBackoffMillis = 500;
+    // Where an import records its progress and resumes from; null disables resuming
+    private String checkpointPath;
 
     public String getFilePath() {
         return filePath;
@@ -19,4 +46,148 @@ public class FlatFileConfig {
     public void setDelimiter(String delimiter) {
         this.delimiter = delimiter;
     }
-} 
\ No newline at end of file
+
+    public String getQuote() {
+        return quote;
+    }
+
+    public void setQuote(String quote) {
+        this.quote = quote;
+    }
+
+    public String getEscape() {
+        return escape;
+    }
+
+    public void setEscape(String escape) {
+        this.escape = escape;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxInFlightBatches() {
+        return maxInFlightBatches;
+    }
+
+    public void setMaxInFlightBatches(int maxInFlightBatches) {
+        this.maxInFlightBatches = maxInFlightBatches;
+    }
+
+    public int getInsertParallelism() {
+        return insertParallelism;
+    }
+
+    public void setInsertParallelism(int insertParallelism) {
+        this.insertParallelism = insertParallelism;
+    }
+
+    public int getExportParallelism() {
+        return exportParallelism;
+    }
+
+    public void setExportParallelism(int exportParallelism) {
+        this.exportParallelism = exportParallelism;
+    }
+
+    public String getShardingKey() {
+        return shardingKey;
+    }
+
+    public void setShardingKey(String shardingKey) {
+        this.shardingKey = shardingKey;
+    }
+
+    public boolean isSplitOutputFiles() {
+        return splitOutputFiles;
+    }
+
+    public void setSplitOutputFiles(boolean splitOutputFiles) {
+        this.splitOutputFiles = splitOutputFiles;
+    }
+
+    public int getParseParallelism() {
+        return parseParallelism;
+    }
+
+    public void setParseParallelism(int parseParallelism) {
+        this.parseParallelism = parseParallelism;
+    }
+
+    public boolean isInferSchema() {
+        return inferSchema;
+    }
+
+    public void setInferSchema(boolean inferSchema) {
+        this.inferSchema = inferSchema;
+    }
+
+    public Map<String, String> getColumnTypes() {
+        return columnTypes;
+    }
+
+    public void setColumnTypes(Map<String, String> columnTypes) {
+        this.columnTypes = columnTypes;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public void setOrderBy(String orderBy) {
+        this.orderBy = orderBy;
+    }
+
+    public CompressionCodec getCompression() {
+        return compression;
+    }
+
+    public void setCompression(CompressionCodec compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionWorkers() {
+        return compressionWorkers;
+    }
+
+    public void setCompressionWorkers(int compressionWorkers) {
+        this.compressionWorkers = compressionWorkers;
+    }
+
+    public FileFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(FileFormat format) {
+        this.format = format;
+    }
+
+    public int getInsertRetries() {
+        return insertRetries;
+    }
+
+    public void setInsertRetries(int insertRetries) {
+        this.insertRetries = insertRetries;
+    }
+
+    public long getRetryBackoffMillis() {
+        return retryBackoffMillis;
+    }
+
+    public void setRetryBackoffMillis(long retryBackoffMillis) {
+        this.retryBackoffMillis = retryBackoffMillis;
+    }
+
+    public String getCheckpointPath() {
+        return checkpointPath;
+    }
+
+    public void setCheckpointPath(String checkpointPath) {
+        this.checkpointPath = checkpointPath;
+    }
+}
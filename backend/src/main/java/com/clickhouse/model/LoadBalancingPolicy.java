@@ -0,0 +1,8 @@
+package com.clickhouse.model;
+
+public enum LoadBalancingPolicy {
+    /** Rotate requests over the healthy nodes. */
+    ROUND_ROBIN,
+    /** Send each request to the healthy node with the fewest requests in flight. */
+    LEAST_LOADED
+}
@@ -0,0 +1,55 @@
+package com.clickhouse.model;
+
+/**
+ * Row filtering pushed down into the generated SELECT. Every part is optional.
+ */
+public class QueryFilter {
+    // Boolean SQL expression, e.g. "event_date = '2024-01-01'"
+    private String where;
+    private Long limit;
+    private Long offset;
+    // Fraction of the table to read, in (0, 1]; needs a table with a SAMPLE BY key
+    private Double sample;
+    // Comma-separated sort expressions, e.g. "event_time DESC, id"
+    private String orderBy;
+
+    public String getWhere() {
+        return where;
+    }
+
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    public Long getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Long limit) {
+        this.limit = limit;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+
+    public Double getSample() {
+        return sample;
+    }
+
+    public void setSample(Double sample) {
+        this.sample = sample;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public void setOrderBy(String orderBy) {
+        this.orderBy = orderBy;
+    }
+}
@@ -0,0 +1,26 @@
+package com.clickhouse.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TableSchema {
+    // Column name to ClickHouse type, in table order
+    private Map<String, String> columnTypes = new LinkedHashMap<>();
+    private String orderBy = "tuple()";
+
+    public Map<String, String> getColumnTypes() {
+        return columnTypes;
+    }
+
+    public void setColumnTypes(Map<String, String> columnTypes) {
+        this.columnTypes = columnTypes;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public void setOrderBy(String orderBy) {
+        this.orderBy = orderBy;
+    }
+}
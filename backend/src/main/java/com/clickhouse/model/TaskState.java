@@ -0,0 +1,14 @@
+package com.clickhouse.model;
+
+public enum TaskState {
+    /** Accepted and waiting for a job worker. */
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isTerminal() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
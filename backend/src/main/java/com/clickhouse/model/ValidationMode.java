@@ -0,0 +1,8 @@
+package com.clickhouse.model;
+
+public enum ValidationMode {
+    /** Scan every record of the file. */
+    FULL,
+    /** Scan the first and last few megabytes of the file only. */
+    SAMPLE
+}
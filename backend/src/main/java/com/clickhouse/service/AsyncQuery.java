@@ -0,0 +1,346 @@
+package com.clickhouse.service;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A query whose {@code TabSeparated} result is published as batches of rows, without a thread blocked on it.
+ * The request is sent when the single subscriber first requests batches, and body chunks are pulled from
+ * the connection only while the subscriber has outstanding demand, so a slow consumer throttles the server
+ * rather than buffering the result. {@link #cancel()} drops the request if it is still waiting for a
+ * connection, and otherwise aborts the exchange and kills the query on the server by its {@code query_id}.
+ */
+public class AsyncQuery implements Flow.Publisher<List<List<String>>> {
+
+    /**
+     * Sends the query with the given body handler, e.g. through {@link ClickHouseHttpTransport#sendAsync},
+     * asking {@code beforeSend} right before the request goes out and dropping it if that returns false.
+     */
+    interface Sender {
+        CompletableFuture<HttpResponse<Void>> send(HttpResponse.BodyHandler<Void> handler, BooleanSupplier beforeSend);
+    }
+
+    private final String queryId;
+    private final int batchRows;
+    private final Sender sender;
+    private final Runnable killQuery;
+    private final CompletableFuture<Long> completion = new CompletableFuture<>();
+    // Completing this ends the exchange and frees the connection slot
+    private final CompletableFuture<Void> bodyDone = new CompletableFuture<>();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicBoolean killed = new AtomicBoolean();
+    private final Object lock = new Object();
+    private volatile CompletableFuture<HttpResponse<Void>> exchange;
+
+    // Guarded by lock
+    private Flow.Subscriber<? super List<List<String>>> downstream;
+    private Flow.Subscription upstream;
+    private long demand;
+    private boolean upstreamRequested;
+    private boolean upstreamDone;
+    private Throwable failure;
+    private boolean cancelled;
+    // Whether the request left the queue, and so the query may be running on the server
+    private boolean sent;
+    private boolean terminated;
+    private boolean draining;
+    private final Queue<List<List<String>>> ready = new ArrayDeque<>();
+    private List<List<String>> building;
+    private byte[] line = new byte[1 << 12];
+    private int lineLength;
+    private long rowCount;
+    private final StringBuilder scratch = new StringBuilder();
+
+    AsyncQuery(String queryId, int batchRows, Sender sender, Runnable killQuery) {
+        this.queryId = queryId;
+        this.batchRows = Math.max(1, batchRows);
+        this.sender = sender;
+        this.killQuery = killQuery;
+        this.building = new ArrayList<>(this.batchRows);
+    }
+
+    public String getQueryId() {
+        return queryId;
+    }
+
+    /**
+     * Completes with the number of rows once the result has been fully delivered, or exceptionally
+     * if the query failed or was cancelled.
+     */
+    public CompletableFuture<Long> completion() {
+        return completion;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<List<String>>> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("AsyncQuery supports a single subscriber"));
+            return;
+        }
+        synchronized (lock) {
+            downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Demand must be positive: " + n));
+                    return;
+                }
+                synchronized (lock) {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                AsyncQuery.this.cancel();
+            }
+        });
+
+        exchange = sender.send(responseInfo -> responseInfo.statusCode() == 200
+                ? new BodySubscriber()
+                : HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                    body -> {
+                        throw new IllegalStateException("ClickHouse query failed with status code: "
+                            + responseInfo.statusCode() + ", body: " + body);
+                    }),
+                this::beginSend);
+        exchange.whenComplete((response, error) -> {
+                if (error != null) {
+                    fail(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error);
+                }
+            });
+    }
+
+    /**
+     * Stops delivering rows. A request still waiting for a connection is never sent; one already sent has
+     * its exchange aborted and {@code KILL QUERY} sent for this query's id straight away.
+     */
+    public void cancel() {
+        Flow.Subscription subscription;
+        boolean running;
+        synchronized (lock) {
+            if (terminated) {
+                return;
+            }
+            cancelled = true;
+            terminated = true;
+            running = sent;
+            subscription = upstream;
+            ready.clear();
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        CompletableFuture<HttpResponse<Void>> request = exchange;
+        if (request != null) {
+            request.cancel(true);
+        }
+        CancellationException cancellation = new CancellationException("Query " + queryId + " cancelled");
+        bodyDone.completeExceptionally(cancellation);
+        completion.completeExceptionally(cancellation);
+        if (running && killed.compareAndSet(false, true)) {
+            killQuery.run();
+        }
+    }
+
+    /**
+     * Called by the sender when a connection is free; the query is only sent if it was not cancelled or
+     * failed meanwhile, which {@link #cancel()} decides under the same lock.
+     */
+    private boolean beginSend() {
+        synchronized (lock) {
+            if (terminated || failure != null) {
+                return false;
+            }
+            sent = true;
+            return true;
+        }
+    }
+
+    private void fail(Throwable error) {
+        Flow.Subscription subscription;
+        synchronized (lock) {
+            if (failure != null || terminated) {
+                return;
+            }
+            failure = error;
+            subscription = upstream;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        bodyDone.completeExceptionally(error);
+        drain();
+    }
+
+    /**
+     * Delivers ready batches against demand, requests more body chunks when they run out, and signals
+     * termination. Only one thread drains at a time; it re-reads the state under the lock before giving up,
+     * so changes made by other threads meanwhile are never missed.
+     */
+    private void drain() {
+        synchronized (lock) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            List<List<String>> batch = null;
+            Throwable error = null;
+            boolean complete = false;
+            Flow.Subscription toRequest = null;
+            Flow.Subscriber<? super List<List<String>>> subscriber;
+            long rows;
+            synchronized (lock) {
+                subscriber = downstream;
+                rows = rowCount;
+                if (terminated) {
+                    draining = false;
+                    return;
+                }
+                if (failure != null) {
+                    error = failure;
+                    terminated = true;
+                } else if (demand > 0 && !ready.isEmpty()) {
+                    batch = ready.poll();
+                    demand--;
+                } else if (upstreamDone && ready.isEmpty()) {
+                    complete = true;
+                    terminated = true;
+                } else if (demand > 0 && upstream != null && !upstreamRequested && !upstreamDone) {
+                    upstreamRequested = true;
+                    toRequest = upstream;
+                } else {
+                    draining = false;
+                    return;
+                }
+            }
+            if (error != null) {
+                completion.completeExceptionally(error);
+                subscriber.onError(error);
+            } else if (complete) {
+                completion.complete(rows);
+                subscriber.onComplete();
+            } else if (batch != null) {
+                subscriber.onNext(batch);
+            } else if (toRequest != null) {
+                toRequest.request(1);
+            }
+        }
+    }
+
+    /**
+     * Must be called holding the lock. Splits body bytes into lines; tabs and newlines inside values are
+     * escaped by ClickHouse, and UTF-8 continuation bytes never match either, so splitting bytes is safe.
+     */
+    private void parse(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b != '\n') {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = b;
+                continue;
+            }
+            endLine();
+        }
+    }
+
+    private void endLine() {
+        List<String> row = new ArrayList<>();
+        TabSeparatedReader.parseLine(new String(line, 0, lineLength, StandardCharsets.UTF_8), row, scratch);
+        lineLength = 0;
+        building.add(row);
+        rowCount++;
+        if (building.size() >= batchRows) {
+            ready.add(building);
+            building = new ArrayList<>(batchRows);
+        }
+    }
+
+    private final class BodySubscriber implements HttpResponse.BodySubscriber<Void> {
+        @Override
+        public CompletionStage<Void> getBody() {
+            return bodyDone;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            boolean cancelNow;
+            synchronized (lock) {
+                upstream = subscription;
+                cancelNow = cancelled || failure != null;
+            }
+            if (cancelNow) {
+                subscription.cancel();
+                bodyDone.completeExceptionally(new CancellationException("Query " + queryId + " cancelled"));
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            synchronized (lock) {
+                upstreamRequested = false;
+                if (terminated) {
+                    return;
+                }
+                for (ByteBuffer buffer : buffers) {
+                    parse(buffer);
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            fail(error);
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (lock) {
+                if (lineLength > 0) {
+                    endLine();
+                }
+                if (!building.isEmpty()) {
+                    ready.add(building);
+                    building = new ArrayList<>(0);
+                }
+                upstreamDone = true;
+            }
+            bodyDone.complete(null);
+            drain();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.clickhouse.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Overlaps CSV parsing with ClickHouse inserts.
+ * Producers fill batches and hand them to a bounded queue drained by a fixed number of insert
+ * workers. Batch buffers are recycled through a free list of the same bound, so a slow server
+ * blocks the producers instead of letting encoded batches pile up on the heap.
+ */
+class BatchInsertPipeline implements AutoCloseable {
+    private static final long POLL_MILLIS = 100;
+    private static final AtomicInteger PIPELINE_IDS = new AtomicInteger();
+
+    @FunctionalInterface
+    interface BatchSender {
+        void send(InsertBatchEncoder batch) throws Exception;
+    }
+
+    private final BatchSender sender;
+    private final int parallelism;
+    private final BlockingQueue<InsertBatchEncoder> pending;
+    private final BlockingQueue<InsertBatchEncoder> free;
+    private final ExecutorService workers;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+    private final InsertBatchEncoder endOfInput;
+
+    BatchInsertPipeline(InsertBatchEncoder prototype, int producers, int parallelism, int maxInFlightBatches,
+                        BatchSender sender) {
+        if (producers < 1 || parallelism < 1 || maxInFlightBatches < 1) {
+            throw new IllegalArgumentException("insertParallelism and maxInFlightBatches must be at least 1");
+        }
+        this.sender = sender;
+        this.parallelism = parallelism;
+        this.pending = new ArrayBlockingQueue<>(maxInFlightBatches + parallelism);
+        // One buffer per queued batch, one per worker and one per producer
+        int buffers = maxInFlightBatches + parallelism + producers;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(prototype.newInstance());
+        }
+        this.endOfInput = prototype.newInstance();
+
+        int pipelineId = PIPELINE_IDS.incrementAndGet();
+        AtomicInteger workerIds = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable,
+                "clickhouse-insert-" + pipelineId + "-" + workerIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(this::drain);
+        }
+    }
+
+    /**
+     * Takes an empty batch buffer, blocking while all buffers are in flight.
+     */
+    InsertBatchEncoder acquire() throws Exception {
+        while (true) {
+            checkFailure();
+            InsertBatchEncoder batch = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (batch != null) {
+                return batch;
+            }
+        }
+    }
+
+    /**
+     * Queues a filled batch for insertion, blocking while the queue is full.
+     */
+    void submit(InsertBatchEncoder batch) throws Exception {
+        if (batch.rowCount() == 0) {
+            free.add(batch);
+            return;
+        }
+        while (!pending.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Signals end of input and waits until every queued batch has been inserted.
+     */
+    void finish() throws Exception {
+        for (int i = 0; i < parallelism; i++) {
+            while (!pending.offer(endOfInput, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkFailure();
+            }
+        }
+        workers.shutdown();
+        while (!workers.awaitTermination(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+        checkFailure();
+    }
+
+    private void drain() {
+        try {
+            while (failure.get() == null) {
+                InsertBatchEncoder batch = pending.take();
+                if (batch == endOfInput) {
+                    return;
+                }
+                sender.send(batch);
+                batch.reset();
+                free.add(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private void checkFailure() throws Exception {
+        Exception e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
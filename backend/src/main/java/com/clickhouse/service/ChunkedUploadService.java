@@ -0,0 +1,310 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ChunkedUploadConfig;
+import com.clickhouse.model.UploadStatus;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives large files as a sequence of chunks written straight to disk.
+ * Chunks carry their byte offset, so a client whose connection dropped asks for the received size
+ * and resumes from there; bytes it resends are skipped. The SHA-256 of the file is computed
+ * incrementally as contiguous bytes arrive. One chunk of an upload is written at a time, without holding
+ * the session's lock while the body is read, so status requests never wait on a slow client. Uploads
+ * that receive nothing for {@code upload.chunked.session-timeout} are aborted, and partial files left by
+ * an earlier run are deleted once as old.
+ */
+@Service
+public class ChunkedUploadService {
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+    private final Path uploadDir;
+    private final long sessionTimeoutNanos;
+    private final ScheduledExecutorService reaper;
+
+    public ChunkedUploadService(ChunkedUploadConfig properties) {
+        this(properties, Paths.get(FileService.UPLOAD_DIR));
+    }
+
+    ChunkedUploadService(ChunkedUploadConfig properties, Path uploadDir) {
+        this.uploadDir = uploadDir.toAbsolutePath();
+        this.sessionTimeoutNanos = properties.getSessionTimeout().toNanos();
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, properties.getSessionTimeout().toSeconds() / 2);
+        reaper.scheduleWithFixedDelay(this::removeAbandoned, period, period, TimeUnit.SECONDS);
+    }
+
+    public UploadStatus init(String fileName, long totalSize) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(uploadDir);
+        Path target = uploadDir.resolve(uploadId + extensionOf(fileName));
+        Path partial = uploadDir.resolve(uploadId + PARTIAL_SUFFIX);
+
+        UploadSession session = new UploadSession(uploadId, target, partial, totalSize);
+        sessions.put(uploadId, session);
+        return session.status();
+    }
+
+    /**
+     * Writes one chunk starting at {@code offset}.
+     *
+     * @throws IllegalStateException if the chunk starts past the bytes received so far, or another chunk
+     *         of the upload is still being written
+     */
+    public UploadStatus writeChunk(String uploadId, long offset, InputStream body) throws IOException {
+        UploadSession session = session(uploadId);
+        long position;
+        synchronized (session) {
+            checkOpen(session);
+            if (session.complete) {
+                throw new IllegalStateException("Upload " + uploadId + " is already complete");
+            }
+            if (session.writing) {
+                throw new IllegalStateException("Another chunk of upload " + uploadId + " is being written");
+            }
+            if (offset > session.received) {
+                throw new IllegalStateException(String.format(
+                    "Chunk offset %d is past the %d bytes received so far", offset, session.received));
+            }
+            session.writing = true;
+            session.lastActivityNanos = System.nanoTime();
+            position = session.received;
+        }
+        try {
+            // Bytes before the received mark were already written by an earlier attempt
+            long skip = position - offset;
+            while (skip > 0) {
+                long skipped = body.skip(skip);
+                if (skipped <= 0) {
+                    if (body.read() < 0) {
+                        return status(uploadId);
+                    }
+                    skipped = 1;
+                }
+                skip -= skipped;
+            }
+
+            // Only the writing thread touches the channel position and digest until it clears the flag
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) > 0) {
+                if (session.totalSize >= 0 && position + read > session.totalSize) {
+                    throw new IllegalStateException("Upload exceeds the declared size of " + session.totalSize + " bytes");
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    session.channel.write(chunk, position + chunk.position());
+                }
+                session.digest.update(buffer, 0, read);
+                position += read;
+                synchronized (session) {
+                    session.received = position;
+                    session.lastActivityNanos = System.nanoTime();
+                }
+            }
+        } finally {
+            synchronized (session) {
+                session.writing = false;
+                session.lastActivityNanos = System.nanoTime();
+            }
+        }
+        return status(uploadId);
+    }
+
+    public UploadStatus status(String uploadId) {
+        UploadSession session = session(uploadId);
+        synchronized (session) {
+            return session.status();
+        }
+    }
+
+    /**
+     * Finishes the upload, checks size and checksum, and moves the file to its final name.
+     */
+    public UploadStatus complete(String uploadId, String expectedSha256) throws IOException {
+        UploadSession session = session(uploadId);
+        synchronized (session) {
+            if (session.complete) {
+                return session.status();
+            }
+            checkOpen(session);
+            if (session.writing) {
+                throw new IllegalStateException("A chunk of upload " + uploadId + " is still being written");
+            }
+            if (session.totalSize >= 0 && session.received != session.totalSize) {
+                throw new IllegalStateException(String.format(
+                    "Upload has %d of %d bytes", session.received, session.totalSize));
+            }
+            session.sha256 = HexFormat.of().formatHex(session.digest.digest());
+            if (expectedSha256 != null && !expectedSha256.isBlank()
+                    && !expectedSha256.equalsIgnoreCase(session.sha256)) {
+                abort(uploadId);
+                throw new IllegalStateException("Checksum mismatch: expected " + expectedSha256
+                    + ", received " + session.sha256);
+            }
+            session.channel.force(false);
+            session.channel.close();
+            Files.move(session.partial, session.target, StandardCopyOption.ATOMIC_MOVE);
+            session.complete = true;
+            sessions.remove(uploadId);
+            return session.status();
+        }
+    }
+
+    public void abort(String uploadId) {
+        UploadSession session = sessions.remove(uploadId);
+        if (session == null) {
+            return;
+        }
+        synchronized (session) {
+            discard(session);
+        }
+    }
+
+    /**
+     * Aborts uploads idle for longer than the session timeout, and deletes partial files no session owns
+     * that are as old, e.g. left behind by a restart.
+     */
+    void removeAbandoned() {
+        long now = System.nanoTime();
+        for (UploadSession session : sessions.values()) {
+            synchronized (session) {
+                if (!session.writing && now - session.lastActivityNanos > sessionTimeoutNanos) {
+                    logger.info("Aborting upload {}: nothing received for {} s", session.uploadId,
+                        TimeUnit.NANOSECONDS.toSeconds(now - session.lastActivityNanos));
+                    sessions.remove(session.uploadId, session);
+                    discard(session);
+                }
+            }
+        }
+
+        if (!Files.isDirectory(uploadDir)) {
+            return;
+        }
+        long cutoffMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(sessionTimeoutNanos);
+        try (DirectoryStream<Path> partials = Files.newDirectoryStream(uploadDir, "*" + PARTIAL_SUFFIX)) {
+            for (Path partial : partials) {
+                String fileName = partial.getFileName().toString();
+                String uploadId = fileName.substring(0, fileName.length() - PARTIAL_SUFFIX.length());
+                if (!sessions.containsKey(uploadId)
+                        && Files.getLastModifiedTime(partial).toMillis() < cutoffMillis) {
+                    logger.info("Deleting abandoned partial upload {}", partial);
+                    Files.deleteIfExists(partial);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Error cleaning up partial uploads in {}: {}", uploadDir, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+
+    private static void discard(UploadSession session) {
+        session.closed = true;
+        try {
+            session.channel.close();
+            Files.deleteIfExists(session.partial);
+        } catch (IOException e) {
+            logger.warn("Error discarding upload {}: {}", session.uploadId, e.getMessage());
+        }
+    }
+
+    private static void checkOpen(UploadSession session) {
+        if (session.closed) {
+            throw new IllegalArgumentException("Unknown upload: " + session.uploadId);
+        }
+    }
+
+    private UploadSession session(String uploadId) {
+        UploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new IllegalArgumentException("Unknown upload: " + uploadId);
+        }
+        return session;
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName != null ? fileName.lastIndexOf('.') : -1;
+        if (dot < 0) {
+            return "";
+        }
+        String extension = fileName.substring(dot);
+        return extension.matches("\\.[A-Za-z0-9]{1,10}") ? extension : "";
+    }
+
+    private static final class UploadSession {
+        private final String uploadId;
+        private final Path target;
+        private final Path partial;
+        private final long totalSize;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+        // Guarded by the session's lock, except for the channel and digest, which belong to the writer
+        private long received;
+        private boolean writing;
+        private boolean closed;
+        private long lastActivityNanos = System.nanoTime();
+        private boolean complete;
+        private String sha256;
+
+        UploadSession(String uploadId, Path target, Path partial, long totalSize) throws IOException {
+            this.uploadId = uploadId;
+            this.target = target;
+            this.partial = partial;
+            this.totalSize = totalSize;
+            this.channel = FileChannel.open(partial,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        UploadStatus status() {
+            UploadStatus status = new UploadStatus();
+            status.setUploadId(uploadId);
+            status.setTotalSize(totalSize);
+            status.setReceivedBytes(received);
+            status.setComplete(complete);
+            if (complete) {
+                status.setFilePath(target.toString());
+                status.setSha256(sha256);
+            }
+            return status;
+        }
+    }
+}
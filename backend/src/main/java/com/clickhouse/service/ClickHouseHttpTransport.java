@@ -0,0 +1,229 @@
+package com.clickhouse.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * HTTP transport for a single ClickHouse endpoint.
+ * Wraps one long-lived {@link HttpClient} whose keep-alive pool is reused by every request to the
+ * endpoint, and caps the number of concurrent requests. The JDK client never pipelines HTTP/1.1
+ * requests, so the cap is also the maximum number of open connections. Asynchronous requests wait for
+ * a free slot in a queue instead of blocking a thread.
+ */
+public class ClickHouseHttpTransport {
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Runnable> pendingAsync = new ConcurrentLinkedQueue<>();
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    ClickHouseHttpTransport(Duration connectTimeout, Duration requestTimeout, int maxConnections) {
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .build();
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxConnections, true);
+    }
+
+    public HttpRequest.Builder newRequest() {
+        return HttpRequest.newBuilder().timeout(requestTimeout);
+    }
+
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+            throws IOException, InterruptedException {
+        acquire();
+        try {
+            return client.send(request, handler);
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Sends a request whose body is consumed as a stream.
+     * The connection slot stays taken until the returned body is closed.
+     */
+    public HttpResponse<InputStream> sendStreaming(HttpRequest request) throws IOException, InterruptedException {
+        acquire();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            release();
+            throw e;
+        }
+        InputStream body = new FilterInputStream(response.body()) {
+            private final AtomicBoolean closed = new AtomicBoolean();
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (closed.compareAndSet(false, true)) {
+                        release();
+                    }
+                }
+            }
+        };
+        return new StreamingResponse(response, body);
+    }
+
+    /**
+     * Sends a request without blocking. The connection slot is held until the returned future completes,
+     * which for a streaming {@code handler} is when its body subscriber has finished.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        return sendAsync(request, handler, () -> true);
+    }
+
+    /**
+     * Like {@link #sendAsync(HttpRequest, HttpResponse.BodyHandler)}, but asks {@code beforeSend} once a slot
+     * is free, and gives the slot back without sending if it returns false. Cancelling the returned future
+     * while the request waits for a slot also drops it, and once sent aborts the exchange.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> handler,
+                                                            BooleanSupplier beforeSend) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        pendingAsync.add(() -> {
+            CompletableFuture<HttpResponse<T>> sent;
+            try {
+                if (result.isDone() || !beforeSend.getAsBoolean()) {
+                    release();
+                    result.completeExceptionally(new CancellationException("Request cancelled before it was sent"));
+                    return;
+                }
+                sent = client.sendAsync(request, handler);
+            } catch (RuntimeException e) {
+                release();
+                result.completeExceptionally(e);
+                return;
+            }
+            sent.whenComplete((response, error) -> {
+                release();
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    sent.cancel(true);
+                }
+            });
+        });
+        startPendingAsync();
+        return result;
+    }
+
+    /**
+     * Sends a request right away, outside the connection slots. Only for small control requests such as
+     * {@code KILL QUERY}, which must not wait behind the queries they act on.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendControlAsync(HttpRequest request,
+                                                                   HttpResponse.BodyHandler<T> handler) {
+        lastUsedNanos = System.nanoTime();
+        return client.sendAsync(request, handler);
+    }
+
+    boolean isIdle(Duration idleTimeout) {
+        return inFlight.get() == 0 && pendingAsync.isEmpty()
+            && System.nanoTime() - lastUsedNanos > idleTimeout.toNanos();
+    }
+
+    /**
+     * Requests in flight plus those waiting for a slot.
+     */
+    int load() {
+        return inFlight.get() + pendingAsync.size() + permits.getQueueLength();
+    }
+
+    private void acquire() throws InterruptedException {
+        permits.acquire();
+        inFlight.incrementAndGet();
+        lastUsedNanos = System.nanoTime();
+    }
+
+    private void release() {
+        lastUsedNanos = System.nanoTime();
+        inFlight.decrementAndGet();
+        permits.release();
+        startPendingAsync();
+    }
+
+    /**
+     * Starts queued asynchronous requests while slots are free. Called after every enqueue and release,
+     * so a request queued concurrently with a release is never stranded.
+     */
+    private void startPendingAsync() {
+        while (!pendingAsync.isEmpty() && permits.tryAcquire()) {
+            Runnable next = pendingAsync.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            lastUsedNanos = System.nanoTime();
+            next.run();
+        }
+    }
+
+    private record StreamingResponse(HttpResponse<InputStream> delegate, InputStream body)
+            implements HttpResponse<InputStream> {
+        @Override
+        public int statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return delegate.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return delegate.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return delegate.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return delegate.version();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.MetadataCacheConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Caches table and column listings per ClickHouse endpoint, user, credentials and database. The
+ * credentials are part of the key as a fingerprint, so a request with a wrong or revoked token never
+ * reads what a login that succeeded has cached.
+ * Entries expire after {@code clickhouse.metadata-cache.ttl} and the cache is bounded by
+ * {@code maximum-size}. Concurrent misses on one key share a single load, which runs on the
+ * thread that missed first; a failed load is not cached.
+ */
+@Component
+public class ClickHouseMetadataCache {
+
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    private record DatabaseKey(String host, int port, String user, String credentials, String database) {
+        static DatabaseKey of(ClickHouseConnection config) {
+            return new DatabaseKey(config.getHost(), config.getPort(), config.getUser(),
+                fingerprint(config.getJwtToken()), config.getDatabase());
+        }
+    }
+
+    private record TableKey(DatabaseKey database, String table) {
+    }
+
+    private final AsyncCache<DatabaseKey, List<String>> tables;
+    private final AsyncCache<TableKey, List<Map<String, String>>> columns;
+    // Loads of a whole database's columns, so concurrent warm-ups share one query
+    private final AsyncCache<DatabaseKey, Boolean> warmedDatabases;
+
+    public ClickHouseMetadataCache(MetadataCacheConfig properties) {
+        this.tables = newCache(properties);
+        this.columns = newCache(properties);
+        this.warmedDatabases = newCache(properties);
+    }
+
+    private static <K, V> AsyncCache<K, V> newCache(MetadataCacheConfig properties) {
+        return Caffeine.newBuilder()
+            .expireAfterWrite(properties.getTtl())
+            .maximumSize(properties.getMaximumSize())
+            .buildAsync();
+    }
+
+    public List<String> getTables(ClickHouseConnection config, Loader<List<String>> loader) throws Exception {
+        return load(tables, DatabaseKey.of(config), () -> List.copyOf(loader.load()));
+    }
+
+    public List<Map<String, String>> getColumns(ClickHouseConnection config, String table,
+                                                Loader<List<Map<String, String>>> loader) throws Exception {
+        return load(columns, new TableKey(DatabaseKey.of(config), table), () -> List.copyOf(loader.load()));
+    }
+
+    /**
+     * Runs {@code loader} once per database and TTL period to fetch the columns of every table in
+     * one round trip, and caches them per table.
+     */
+    public void warmColumns(ClickHouseConnection config,
+                            Loader<Map<String, List<Map<String, String>>>> loader) throws Exception {
+        DatabaseKey database = DatabaseKey.of(config);
+        load(warmedDatabases, database, () -> {
+            for (Map.Entry<String, List<Map<String, String>>> table : loader.load().entrySet()) {
+                columns.put(new TableKey(database, table.getKey()),
+                    CompletableFuture.completedFuture(List.copyOf(table.getValue())));
+            }
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Drops the table listing of the connection's database and the columns of {@code table},
+     * after the table has been created or altered.
+     */
+    public void invalidateTable(ClickHouseConnection config, String table) {
+        DatabaseKey database = DatabaseKey.of(config);
+        tables.synchronous().invalidate(database);
+        columns.synchronous().invalidate(new TableKey(database, table));
+    }
+
+    /**
+     * A SHA-256 of the token, so cache keys do not hold the credentials themselves.
+     */
+    private static String fingerprint(String token) {
+        if (token == null) {
+            return "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static <K, V> V load(AsyncCache<K, V> cache, K key, Loader<V> loader) throws Exception {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = cache.asMap().putIfAbsent(key, created);
+        if (existing == null) {
+            try {
+                created.complete(loader.load());
+            } catch (Exception | Error e) {
+                // Failed futures are evicted by the cache, so the next caller retries
+                created.completeExceptionally(e);
+                throw e;
+            }
+            return created.join();
+        }
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+}
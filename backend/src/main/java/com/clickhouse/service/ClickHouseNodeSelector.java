@@ -0,0 +1,244 @@
+package com.clickhouse.service;
+
+import com.clickhouse.client.ClickHouseNode;
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.clickhouse.model.LoadBalancingPolicy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the requests of a connection over its host and replicas, round-robin or to the least-loaded node.
+ * A node that cannot be connected to is marked down and tried only after the healthy ones, until a
+ * periodic {@code /ping} finds it answering again. Requests that failed to connect are retried on the next
+ * node; nothing was sent, so this is safe for inserts as well. Single-host connections bypass all of this.
+ */
+@Component
+public class ClickHouseNodeSelector {
+    private static final Logger logger = LoggerFactory.getLogger(ClickHouseNodeSelector.class);
+
+    @FunctionalInterface
+    interface NodeCall<T> {
+        T call(ClickHouseConnection node) throws Exception;
+    }
+
+    private final ClickHouseConfig properties;
+    private final ClickHouseTransportRegistry transportRegistry;
+    private final Map<ClickHouseNode, NodeHealth> health = new ConcurrentHashMap<>();
+    private final Map<List<ClickHouseNode>, AtomicInteger> rotations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checker;
+
+    public ClickHouseNodeSelector(ClickHouseConfig properties, ClickHouseTransportRegistry transportRegistry) {
+        this.properties = properties;
+        this.transportRegistry = transportRegistry;
+        this.checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clickhouse-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, properties.getHealthCheckInterval().toMillis());
+        checker.scheduleWithFixedDelay(this::checkNodes, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The connection's host followed by its replicas, without duplicates.
+     */
+    public List<ClickHouseNode> nodesOf(ClickHouseConnection config) {
+        Set<ClickHouseNode> nodes = new LinkedHashSet<>();
+        nodes.add(ClickHouseNode.of(config.getHost(), config.getPort()));
+        if (config.getReplicas() != null) {
+            for (String replica : config.getReplicas()) {
+                nodes.add(ClickHouseNode.parse(replica, config.getPort()));
+            }
+        }
+        return List.copyOf(nodes);
+    }
+
+    /**
+     * Single-node views of the connection in the order they should be tried: healthy nodes by the
+     * connection's policy, then nodes marked down, longest down first.
+     */
+    public List<ClickHouseConnection> candidates(ClickHouseConnection config) {
+        List<ClickHouseNode> nodes = nodesOf(config);
+        if (nodes.size() == 1) {
+            return List.of(config);
+        }
+        long now = System.nanoTime();
+        List<NodeHealth> up = new ArrayList<>(nodes.size());
+        List<NodeHealth> down = new ArrayList<>();
+        for (ClickHouseNode node : nodes) {
+            NodeHealth state = health.computeIfAbsent(node, n ->
+                new NodeHealth(n, config.withEndpoint(n.getHost(), n.getPort())));
+            state.lastUsedNanos = now;
+            (state.up ? up : down).add(state);
+        }
+
+        // Rotating first also breaks ties between equally loaded nodes
+        int rotation = rotations.computeIfAbsent(nodes, k -> new AtomicInteger()).getAndIncrement();
+        Collections.rotate(up, -Math.floorMod(rotation, Math.max(1, up.size())));
+        if (config.getLoadBalancing() == LoadBalancingPolicy.LEAST_LOADED) {
+            up.sort(Comparator.comparingInt(state -> transportRegistry.transportFor(state.endpoint).load()));
+        }
+        down.sort(Comparator.comparingLong(state -> state.downSinceNanos));
+
+        List<ClickHouseConnection> ordered = new ArrayList<>(nodes.size());
+        for (NodeHealth state : up) {
+            ordered.add(endpointOf(state, config));
+        }
+        for (NodeHealth state : down) {
+            ordered.add(endpointOf(state, config));
+        }
+        return ordered;
+    }
+
+    /**
+     * The node the next request should go to, for requests that must stay on one node throughout.
+     */
+    public ClickHouseConnection select(ClickHouseConnection config) {
+        return candidates(config).get(0);
+    }
+
+    /**
+     * Runs {@code call} against the candidate nodes in turn until one can be connected to.
+     * Any other failure is thrown straight away.
+     */
+    <T> T execute(ClickHouseConnection config, NodeCall<T> call) throws Exception {
+        List<ClickHouseConnection> candidates = candidates(config);
+        Exception lastFailure = null;
+        for (ClickHouseConnection node : candidates) {
+            try {
+                T result = call.call(node);
+                report(node, null);
+                return result;
+            } catch (Exception e) {
+                if (candidates.size() == 1 || !isConnectionFailure(e)) {
+                    throw e;
+                }
+                report(node, e);
+                lastFailure = e;
+            }
+        }
+        throw lastFailure;
+    }
+
+    /**
+     * Records the outcome of a request to {@code node}: success marks it up, a connection failure down.
+     */
+    void report(ClickHouseConnection node, Throwable error) {
+        NodeHealth state = health.get(ClickHouseNode.of(node.getHost(), node.getPort()));
+        if (state == null) {
+            return;
+        }
+        if (error == null) {
+            markUp(state);
+        } else if (isConnectionFailure(error)) {
+            markDown(state, String.valueOf(error));
+        }
+    }
+
+    static boolean isConnectionFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException
+                    || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException
+                    || cause instanceof UnresolvedAddressException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ClickHouseConnection endpointOf(NodeHealth state, ClickHouseConnection config) {
+        ClickHouseNode node = state.node;
+        return config.withEndpoint(node.getHost(), node.getPort());
+    }
+
+    private void markUp(NodeHealth state) {
+        if (!state.up) {
+            state.up = true;
+            logger.info("ClickHouse node {} is reachable again", state.node);
+        }
+    }
+
+    private void markDown(NodeHealth state, String reason) {
+        if (state.up) {
+            state.downSinceNanos = System.nanoTime();
+            state.up = false;
+            logger.warn("ClickHouse node {} is unreachable, failing over: {}", state.node, reason);
+        }
+    }
+
+    private void checkNodes() {
+        long idleNanos = properties.getIdleEvictionTimeout().toNanos();
+        long now = System.nanoTime();
+        // Nodes no connection has used lately are forgotten, so pings do not keep their transports alive
+        health.values().removeIf(state -> now - state.lastUsedNanos > idleNanos);
+        // Rotations of topologies with a forgotten node are dropped with it; one still in use starts over
+        rotations.keySet().removeIf(nodes -> !health.keySet().containsAll(nodes));
+        for (NodeHealth state : health.values()) {
+            ping(state);
+        }
+    }
+
+    private void ping(NodeHealth state) {
+        ClickHouseHttpTransport transport = transportRegistry.transportFor(state.endpoint);
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(String.format("http://%s:%d/ping", state.node.getHost(), state.node.getPort())))
+            .timeout(properties.getConnectTimeout())
+            .GET()
+            .build();
+        // Outside the connection slots, so a node busy with long queries still shows as alive
+        transport.sendControlAsync(request, HttpResponse.BodyHandlers.discarding())
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    markDown(state, String.valueOf(error));
+                } else if (response.statusCode() != 200) {
+                    markDown(state, "ping returned status " + response.statusCode());
+                } else {
+                    markUp(state);
+                }
+            });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        checker.shutdownNow();
+        health.clear();
+    }
+
+    private static final class NodeHealth {
+        private final ClickHouseNode node;
+        // Carries the user the node's transport is shared under
+        private final ClickHouseConnection endpoint;
+        private volatile boolean up = true;
+        private volatile long downSinceNanos;
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private NodeHealth(ClickHouseNode node, ClickHouseConnection endpoint) {
+            this.node = node;
+            this.endpoint = endpoint;
+        }
+    }
+}
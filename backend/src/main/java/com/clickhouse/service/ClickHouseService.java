@@ -1,284 +1,1308 @@
 package com.clickhouse.service;
 
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.config.IngestionConfig;
 import com.clickhouse.model.ClickHouseConnection;
 import com.clickhouse.model.ColumnSelection;
+import com.clickhouse.model.CompressionCodec;
+import com.clickhouse.model.FileFormat;
 import com.clickhouse.model.FlatFileConfig;
 import com.clickhouse.model.JoinConfig;
+import com.clickhouse.model.TableSchema;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.logging.Logger;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class ClickHouseService {
-    private static final Logger logger = Logger.getLogger(ClickHouseService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(ClickHouseService.class);
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final int MAX_BATCH_BYTES = 32 << 20;
+    private static final int CHUNKS_PER_PARSER = 4;
+    private static final int ASYNC_BATCH_ROWS = 8192;
+    // Rows between checks for job cancellation
+    private static final int CANCEL_CHECK_MASK = (1 << 12) - 1;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30_000;
+    // Per-batch debug logs are sampled
+    private static final int BATCH_LOG_SAMPLE_RATE = 100;
+
+    private final LogSampler batchLogSampler = new LogSampler(BATCH_LOG_SAMPLE_RATE);
+
+    @Autowired
+    private ClickHouseTransportRegistry transportRegistry;
+
+    @Autowired
+    private ClickHouseNodeSelector nodeSelector;
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    @Qualifier("csvParseExecutor")
+    private ExecutorService csvParseExecutor;
+
+    @Autowired
+    @Qualifier("exportExecutor")
+    private ExecutorService exportExecutor;
+
+    @Autowired
+    private IngestionConfig ingestionConfig;
+
+    @Autowired
+    private ClickHouseConfig httpConfig;
+
+    @Autowired
+    private IngestionMetrics metrics;
+
+    @Autowired
+    private ClickHouseMetadataCache metadataCache;
 
     public List<String> getTables(ClickHouseConnection config) {
-        logger.info("Fetching tables for database: " + config.getDatabase());
-        List<String> tables = new ArrayList<>();
         try {
-            String query = URLEncoder.encode("SHOW TABLES FROM " + config.getDatabase(), StandardCharsets.UTF_8);
-            String url = String.format("http://%s:%d",
-                config.getHost(),
-                config.getPort());
-            
-            logger.info("Connecting to ClickHouse at: " + url);
-            
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("X-ClickHouse-User", config.getUser())
-                .header("X-ClickHouse-Key", config.getJwtToken() != null ? config.getJwtToken() : "")
-                .header("X-ClickHouse-Database", config.getDatabase())
+            return metadataCache.getTables(config, () -> fetchTables(config));
+        } catch (Exception e) {
+            logger.error("Error fetching tables from {}:{}", config.getHost(), config.getPort(), e);
+            throw new RuntimeException("Failed to fetch tables: " + e.getMessage(), e);
+        }
+    }
+
+    private List<String> fetchTables(ClickHouseConnection config) throws Exception {
+        logger.debug("Fetching tables for database {} from {}:{}",
+            config.getDatabase(), config.getHost(), config.getPort());
+        List<String> tables = new ArrayList<>();
+        HttpResponse<String> response = nodeSelector.execute(config, node -> {
+            ClickHouseHttpTransport transport = transportRegistry.transportFor(node);
+            HttpRequest request = newRequest(transport, node, null)
                 .header("X-ClickHouse-Format", "TabSeparated")
                 .POST(HttpRequest.BodyPublishers.ofString("SHOW TABLES"))
                 .build();
-            
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            logger.info("Response status code: " + response.statusCode());
-            logger.info("Response body: " + response.body());
-            
-            if (response.statusCode() != 200) {
-                throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + response.body());
-            }
-            
-            String[] lines = response.body().split("\n");
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    logger.info("Found table: " + line.trim());
-                    tables.add(line.trim());
-                }
+            return send(transport, request, node, "get_tables");
+        });
+        
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + response.body());
+        }
+        
+        String[] lines = response.body().split("\n");
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                tables.add(line.trim());
             }
-            
-            logger.info("Found " + tables.size() + " tables");
-            return tables;
-        } catch (Exception e) {
-            logger.severe("Error fetching tables: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to fetch tables: " + e.getMessage(), e);
         }
+        
+        logger.debug("Found {} tables in database {}", tables.size(), config.getDatabase());
+        return tables;
     }
 
     public List<Map<String, String>> getColumns(ClickHouseConnection config, String tableName) {
-        System.out.println("Fetching columns for table: " + tableName);
-        List<Map<String, String>> columns = new ArrayList<>();
         try {
-            String query = URLEncoder.encode("DESCRIBE " + tableName, StandardCharsets.UTF_8);
-            String url = String.format("http://%s:%d/?query=%s",
-                config.getHost(),
-                config.getPort(),
-                query);
-            
-            System.out.println("Executing query: " + url);
-            
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .header("X-ClickHouse-User", config.getUser())
-                .header("X-ClickHouse-Key", config.getJwtToken() != null ? config.getJwtToken() : "")
-                .build();
-            
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + response.body());
+            // A first miss caches the columns of every table in the database with one query
+            metadataCache.warmColumns(config, () -> fetchDatabaseColumns(config));
+            return metadataCache.getColumns(config, tableName, () -> describeTable(config, tableName));
+        } catch (Exception e) {
+            logger.error("Error fetching columns for table {}: {}", tableName, e.getMessage());
+            throw new RuntimeException("Failed to fetch columns: " + e.getMessage());
+        }
+    }
+
+    private List<Map<String, String>> describeTable(ClickHouseConnection config, String tableName) throws Exception {
+        logger.debug("Fetching columns for table {}", tableName);
+        List<Map<String, String>> columns = new ArrayList<>();
+        String query = "DESCRIBE " + tableName;
+        
+        HttpResponse<String> response = nodeSelector.execute(config, node -> {
+            ClickHouseHttpTransport transport = transportRegistry.transportFor(node);
+            return send(transport, newRequest(transport, node, query).build(), node, "get_columns");
+        });
+        if (response.statusCode() != 200) {
+            throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + response.body());
+        }
+        
+        String[] lines = response.body().split("\n");
+        for (String line : lines) {
+            if (!line.trim().isEmpty()) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 2) {
+                    columns.add(columnInfo(parts[0].trim(), parts[1].trim()));
+                }
             }
-            
-            String[] lines = response.body().split("\n");
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    String[] parts = line.split("\t");
-                    if (parts.length >= 2) {
-                        Map<String, String> columnInfo = new HashMap<>();
-                        columnInfo.put("name", parts[0].trim());
-                        columnInfo.put("type", parts[1].trim());
-                        columns.add(columnInfo);
-                    }
+        }
+        return columns;
+    }
+
+    /**
+     * Reads the columns of every table in the connection's database from {@code system.columns}.
+     * Returns an empty map if the query fails, e.g. without access to system tables, in which case
+     * each table is described on its own.
+     */
+    private Map<String, List<Map<String, String>>> fetchDatabaseColumns(ClickHouseConnection config) {
+        Map<String, List<Map<String, String>>> tables = new HashMap<>();
+        try {
+            HttpResponse<String> response = executeQuery(config, "get_database_columns",
+                "SELECT table, name, type FROM system.columns WHERE database = currentDatabase() " +
+                "ORDER BY table, position FORMAT TabSeparated");
+            try (TabSeparatedReader reader = new TabSeparatedReader(
+                    new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8)))) {
+                List<String> row;
+                while ((row = reader.next()) != null) {
+                    tables.computeIfAbsent(row.get(0), table -> new ArrayList<>())
+                        .add(columnInfo(row.get(1), row.get(2)));
                 }
             }
-            return columns;
+            logger.debug("Cached columns of {} tables in database {}", tables.size(), config.getDatabase());
         } catch (Exception e) {
-            System.err.println("Error fetching columns: " + e.getMessage());
-            throw new RuntimeException("Failed to fetch columns: " + e.getMessage());
+            logger.debug("Could not read system.columns, falling back to DESCRIBE: {}", e.getMessage());
+            tables.clear();
         }
+        return tables;
     }
 
-    private HttpResponse<String> executeQuery(ClickHouseConnection config, String query) throws Exception {
-        String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
-        String url = String.format("http://%s:%d/?query=%s",
-            config.getHost(),
-            config.getPort(),
-            encodedQuery);
-        
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
+    private Map<String, String> columnInfo(String name, String type) {
+        Map<String, String> columnInfo = new HashMap<>();
+        columnInfo.put("name", name);
+        columnInfo.put("type", type);
+        return columnInfo;
+    }
+
+    private HttpRequest.Builder newRequest(ClickHouseHttpTransport transport, ClickHouseConnection config,
+                                           String urlQuery) {
+        return newRequest(transport, config, urlQuery, Map.of());
+    }
+
+    /**
+     * @param settings further URL parameters, such as {@code query_id} or query-level settings
+     */
+    private HttpRequest.Builder newRequest(ClickHouseHttpTransport transport, ClickHouseConnection config,
+                                           String urlQuery, Map<String, String> settings) {
+        String url = String.format("http://%s:%d/", config.getHost(), config.getPort());
+        List<String> parameters = new ArrayList<>(2 + settings.size());
+        if (urlQuery != null) {
+            parameters.add("query=" + URLEncoder.encode(urlQuery, StandardCharsets.UTF_8));
+        }
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            parameters.add(setting.getKey() + "=" + URLEncoder.encode(setting.getValue(), StandardCharsets.UTF_8));
+        }
+        if (compressionOf(config) != CompressionCodec.NONE) {
+            // The server only compresses responses when this is set and Accept-Encoding is sent
+            parameters.add("enable_http_compression=1");
+        }
+        if (!parameters.isEmpty()) {
+            url += "?" + String.join("&", parameters);
+        }
+        HttpRequest.Builder builder = transport.newRequest()
             .uri(URI.create(url))
             .header("X-ClickHouse-User", config.getUser())
-            .header("X-ClickHouse-Key", config.getJwtToken() != null ? config.getJwtToken() : "")
-            .build();
-        
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            .header("X-ClickHouse-Key", config.getJwtToken() != null ? config.getJwtToken() : "");
+        if (config.getDatabase() != null && !config.getDatabase().isEmpty()) {
+            builder.header("X-ClickHouse-Database", config.getDatabase());
+        }
+        return builder;
+    }
+
+    private static CompressionCodec compressionOf(ClickHouseConnection config) {
+        return config.getCompression() != null ? config.getCompression() : CompressionCodec.NONE;
+    }
+
+    /**
+     * Sends a request whose response is read whole, timing it as {@code operation}.
+     */
+    private HttpResponse<String> send(ClickHouseHttpTransport transport, HttpRequest request,
+                                      ClickHouseConnection config, String operation) throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            HttpResponse<String> response = transport.send(request, HttpResponse.BodyHandlers.ofString());
+            success = response.statusCode() == 200;
+            return response;
+        } finally {
+            metrics.recordQuery(operation, config, System.nanoTime() - start, success);
+        }
+    }
+
+    private HttpResponse<String> executeQuery(ClickHouseConnection config, String operation,
+                                              String query) throws Exception {
+        // Sent as a POST body: GET requests are read-only on the ClickHouse HTTP interface
+        HttpResponse<String> response = nodeSelector.execute(config, node -> {
+            ClickHouseHttpTransport transport = transportRegistry.transportFor(node);
+            HttpRequest request = newRequest(transport, node, null)
+                .POST(HttpRequest.BodyPublishers.ofString(query))
+                .build();
+            return send(transport, request, node, operation);
+        });
         if (response.statusCode() != 200) {
             throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + response.body());
         }
         return response;
     }
 
+    /**
+     * Runs a query whose result is streamed back. Only the time to the response headers is recorded
+     * as query latency; reading the body is measured per block by {@link #copyTabSeparated}.
+     */
+    private HttpResponse<InputStream> executeStreamingQuery(ClickHouseConnection config, String operation,
+                                                            String query) throws Exception {
+        return nodeSelector.execute(config, node -> sendStreamingQuery(node, operation, query));
+    }
+
+    private HttpResponse<InputStream> sendStreamingQuery(ClickHouseConnection config, String operation,
+                                                         String query) throws Exception {
+        ClickHouseHttpTransport transport = transportRegistry.transportFor(config);
+        HttpRequest.Builder builder = newRequest(transport, config, null)
+            .POST(HttpRequest.BodyPublishers.ofString(query));
+        CompressionCodec compression = compressionOf(config);
+        if (compression != CompressionCodec.NONE) {
+            builder.header("Accept-Encoding", compression.getEncoding());
+        }
+        HttpRequest request = builder.build();
+
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = transport.sendStreaming(request);
+        } catch (Exception e) {
+            metrics.recordQuery(operation, config, System.nanoTime() - start, false);
+            throw e;
+        }
+        metrics.recordQuery(operation, config, System.nanoTime() - start, response.statusCode() == 200);
+        if (response.statusCode() != 200) {
+            String body;
+            try (InputStream errorBody = decodedBody(response, response.body())) {
+                body = new String(errorBody.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            throw new RuntimeException("ClickHouse query failed with status code: " + response.statusCode() + ", body: " + body);
+        }
+        return response;
+    }
+
+    /**
+     * Starts a query without blocking a thread on it. The query, without a FORMAT clause, is sent once the
+     * returned publisher is subscribed to, and its rows are published in batches of up to {@code batchRows}.
+     * The response is not HTTP-compressed, since decoding a pushed body would need a stream per query.
+     */
+    public AsyncQuery streamQueryAsync(ClickHouseConnection connection, String operation, String query,
+                                       int batchRows) {
+        // The query is killed on the node it runs on, so it is not failed over
+        ClickHouseConnection config = nodeSelector.select(connection);
+        ClickHouseHttpTransport transport = transportRegistry.transportFor(config);
+        String queryId = UUID.randomUUID().toString();
+        HttpRequest request = newRequest(transport, config, null, Map.of("query_id", queryId))
+            .POST(HttpRequest.BodyPublishers.ofString(query + " FORMAT TabSeparated"))
+            .build();
+        long start = System.nanoTime();
+        AsyncQuery asyncQuery = new AsyncQuery(queryId, batchRows,
+            (handler, beforeSend) -> transport.sendAsync(request, handler, beforeSend),
+            () -> killQuery(config, queryId));
+        asyncQuery.completion().whenComplete((rows, error) -> {
+            metrics.recordQuery(operation, config, System.nanoTime() - start, error == null);
+            nodeSelector.report(config, error);
+        });
+        return asyncQuery;
+    }
+
+    /**
+     * Runs a query without blocking and collects all of its rows. Cancelling the returned future, or
+     * completing it in any other way before the query finished, e.g. with a timeout, cancels the query:
+     * it is not sent if it is still waiting for a connection, and killed on the server otherwise.
+     */
+    public CompletableFuture<List<List<String>>> queryAsync(ClickHouseConnection config, String operation,
+                                                           String query) {
+        AsyncQuery asyncQuery = streamQueryAsync(config, operation, query, ASYNC_BATCH_ROWS);
+        // Batches are delivered one at a time, each after the previous onNext returned
+        List<List<String>> rows = new ArrayList<>();
+        asyncQuery.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(List<List<String>> batch) {
+                rows.addAll(batch);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // Reported through completion()
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        CompletableFuture<List<List<String>>> result = asyncQuery.completion().thenApply(count -> rows);
+        result.whenComplete((value, error) -> {
+            if (error != null && !asyncQuery.completion().isDone()) {
+                asyncQuery.cancel();
+            }
+        });
+        return result;
+    }
+
+    private void killQuery(ClickHouseConnection config, String queryId) {
+        ClickHouseHttpTransport transport = transportRegistry.transportFor(config);
+        HttpRequest request = newRequest(transport, config, null)
+            .POST(HttpRequest.BodyPublishers.ofString("KILL QUERY WHERE query_id = '" + queryId + "' ASYNC"))
+            .build();
+        transport.sendControlAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            if (error != null) {
+                logger.warn("Failed to kill query {}: {}", queryId, error.getMessage());
+            } else if (response.statusCode() != 200) {
+                logger.warn("Failed to kill query {}: status {}, body: {}", queryId, response.statusCode(),
+                    response.body());
+            } else {
+                logger.debug("Killed query {}", queryId);
+            }
+        });
+    }
+
+    private int copyTabSeparated(HttpResponse<InputStream> response, CSVPrinter csvPrinter,
+                                 ClickHouseConnection config, String operation,
+                                 TaskProgress progress) throws IOException {
+        int recordCount = 0;
+        long blockStart = System.nanoTime();
+        CountingInputStream wire = new CountingInputStream(response.body(), progress);
+        try (wire; TabSeparatedReader reader = new TabSeparatedReader(decodedBody(response, wire))) {
+            List<String> values;
+            while ((values = reader.next()) != null) {
+                csvPrinter.printRecord(values);
+                recordCount++;
+                if ((recordCount & CANCEL_CHECK_MASK) == 0) {
+                    long now = System.nanoTime();
+                    metrics.recordWriteBatch(config, operation, now - blockStart, CANCEL_CHECK_MASK + 1);
+                    if (logger.isDebugEnabled() && batchLogSampler.sample()) {
+                        logger.debug("{}: wrote {} rows so far, last block took {} ms", operation, recordCount,
+                            (now - blockStart) / 1_000_000);
+                    }
+                    blockStart = now;
+                    progress.addRowsRead(CANCEL_CHECK_MASK + 1);
+                    progress.addRowsWritten(CANCEL_CHECK_MASK + 1);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Export cancelled");
+                    }
+                }
+            }
+        }
+        metrics.recordWireBytes(config, "received", compressionOf(config), wire.count);
+        int remainder = recordCount & CANCEL_CHECK_MASK;
+        if (remainder > 0) {
+            metrics.recordWriteBatch(config, operation, System.nanoTime() - blockStart, remainder);
+        }
+        progress.addRowsRead(remainder);
+        progress.addRowsWritten(remainder);
+        return recordCount;
+    }
+
+    /**
+     * Decompresses a streamed response body according to its {@code Content-Encoding}.
+     * The server may answer uncompressed even when compression was requested.
+     */
+    private InputStream decodedBody(HttpResponse<?> response, InputStream body) throws IOException {
+        CompressionCodec encoding = CompressionCodec.fromEncoding(
+            response.headers().firstValue("Content-Encoding").orElse(null));
+        return CompressionStreams.decompress(encoding, body);
+    }
+
+    private CSVPrinter openCsvPrinter(FlatFileConfig fileConfig) throws IOException {
+        return openCsvPrinter(Paths.get(fileConfig.getFilePath()), fileConfig);
+    }
+
+    /**
+     * Opens a CSV writer on {@code path}, compressed with the codec configured for the output file.
+     */
+    private CSVPrinter openCsvPrinter(Path path, FlatFileConfig fileConfig) throws IOException {
+        OutputStream file = Files.newOutputStream(path);
+        OutputStream out;
+        try {
+            out = CompressionStreams.compress(outputCompression(fileConfig), file,
+                fileConfig.getCompressionWorkers());
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE);
+        return new CSVPrinter(writer,
+            CSVFormat.DEFAULT.builder()
+                .setDelimiter(fileConfig.getDelimiter().charAt(0))
+                .build());
+    }
+
+    /**
+     * The configured output codec, or the one implied by the file extension when none is set.
+     */
+    private static CompressionCodec outputCompression(FlatFileConfig fileConfig) {
+        return fileConfig.getCompression() != null
+            ? fileConfig.getCompression()
+            : CompressionCodec.fromFileName(fileConfig.getFilePath());
+    }
+
+    private static FileFormat outputFormat(FlatFileConfig fileConfig) {
+        return fileConfig.getFormat() != null
+            ? fileConfig.getFormat()
+            : FileFormat.fromFileName(fileConfig.getFilePath());
+    }
+
+    /**
+     * Output clause for a Parquet export. A configured codec compresses the Parquet column chunks
+     * rather than the whole file, so the file stays readable column by column.
+     */
+    private static String parquetOutputClause(FlatFileConfig fileConfig) {
+        CompressionCodec compression = fileConfig.getCompression();
+        if (compression == null) {
+            return " FORMAT Parquet";
+        }
+        String method = compression == CompressionCodec.NONE ? "none" : compression.getEncoding();
+        return " SETTINGS output_format_parquet_compression_method = '" + method + "' FORMAT Parquet";
+    }
+
+    /**
+     * Writes a {@code FORMAT Parquet} response body to {@code target} as it arrives and returns
+     * the number of rows, read back from the written file's footer.
+     */
+    private long copyParquet(HttpResponse<InputStream> response, Path target, ClickHouseConnection config,
+                             TaskProgress progress) throws IOException {
+        long start = System.nanoTime();
+        CountingInputStream wire = new CountingInputStream(response.body(), progress);
+        try (wire; InputStream body = decodedBody(response, wire); OutputStream out = Files.newOutputStream(target)) {
+            byte[] buffer = new byte[OUTPUT_BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Export cancelled");
+                }
+            }
+        }
+        metrics.recordWireBytes(config, "received", compressionOf(config), wire.count);
+        long recordCount = ParquetFooter.read(target).rowCount();
+        progress.addRowsRead(recordCount);
+        progress.addRowsWritten(recordCount);
+        logger.debug("Wrote {} Parquet rows to {} in {} ms", recordCount, target, (System.nanoTime() - start) / 1_000_000);
+        return recordCount;
+    }
+
     public String exportToFile(ClickHouseConnection config, String table, 
-                             ColumnSelection columns, FlatFileConfig fileConfig) throws Exception {
-        try (FileWriter writer = new FileWriter(fileConfig.getFilePath());
-             CSVPrinter csvPrinter = new CSVPrinter(writer, 
-                 CSVFormat.DEFAULT.builder()
-                     .setDelimiter(fileConfig.getDelimiter().charAt(0))
-                     .build())) {
+                             ColumnSelection columns, FlatFileConfig fileConfig,
+                             TaskProgress progress) throws Exception {
+        try {
+            // Checked before the output file is created
+            QueryFilters.validate(columns.getFilter());
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Failed to export data: " + e.getMessage());
+        }
+        boolean parquet = outputFormat(fileConfig) == FileFormat.PARQUET;
+        // Parquet files cannot be concatenated, so parallel Parquet exports always write part files.
+        // A LIMIT, OFFSET or ORDER BY applies to the whole result, so it cannot be split into ranges either.
+        if (fileConfig.getExportParallelism() > 1 && (!parquet || fileConfig.isSplitOutputFiles())
+                && !QueryFilters.requiresSingleStream(columns.getFilter())) {
+            try {
+                return exportPartitioned(config, table, columns, fileConfig, progress);
+            } catch (Exception e) {
+                logger.error("Error exporting {} to file: {}", table, e.getMessage());
+                throw new Exception("Failed to export data: " + e.getMessage());
+            }
+        }
+        if (parquet) {
+            try {
+                String query = QueryFilters.select(columns.getColumns(), table, null, columns.getFilter(), null, 0)
+                    + parquetOutputClause(fileConfig);
+                long recordCount = copyParquet(executeStreamingQuery(config, "export", query),
+                    Paths.get(fileConfig.getFilePath()), config, progress);
+                return String.format("Successfully exported %d records to %s",
+                    recordCount, fileConfig.getFilePath());
+            } catch (Exception e) {
+                logger.error("Error exporting {} to file: {}", table, e.getMessage());
+                throw new Exception("Failed to export data: " + e.getMessage());
+            }
+        }
+        try (CSVPrinter csvPrinter = openCsvPrinter(fileConfig)) {
             
             // Write headers
             csvPrinter.printRecord(columns.getColumns());
             
-            // Write data
-            String query = String.format("SELECT %s FROM %s FORMAT TabSeparated", 
-                String.join(", ", columns.getColumns()), 
-                table);
+            // Stream data straight from the response into the file
+            String query = QueryFilters.select(columns.getColumns(), table, null, columns.getFilter(), null, 0)
+                + " FORMAT TabSeparated";
                 
-            HttpResponse<String> response = executeQuery(config, query);
-            String[] lines = response.body().split("\n");
-            
-            int recordCount = 0;
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    String[] values = line.split("\t");
-                    csvPrinter.printRecord((Object[]) values);
-                    recordCount++;
-                }
-            }
+            HttpResponse<InputStream> response = executeStreamingQuery(config, "export", query);
+            int recordCount = copyTabSeparated(response, csvPrinter, config, "export", progress);
             
             return String.format("Successfully exported %d records to %s", 
                 recordCount, fileConfig.getFilePath());
         } catch (Exception e) {
-            System.err.println("Error exporting to file: " + e.getMessage());
+            logger.error("Error exporting {} to file: {}", table, e.getMessage());
             throw new Exception("Failed to export data: " + e.getMessage());
         }
     }
 
+    /**
+     * Splits the table into {@code exportParallelism} hash ranges and fetches them concurrently, each over its
+     * own connection. Ranges are written either to separate part files or appended to the target file in range order.
+     * Compressed parts are appended as they are: gzip members, zstd frames and lz4 frames may be concatenated.
+     * The number of ranges is capped by the configured maximum and by the connections allowed per endpoint,
+     * and ranges run on the shared export pool.
+     */
+    private String exportPartitioned(ClickHouseConnection config, String table, ColumnSelection columns,
+                                     FlatFileConfig fileConfig, TaskProgress progress) throws Exception {
+        int partitions = Math.min(fileConfig.getExportParallelism(), Math.max(1,
+            Math.min(ingestionConfig.getMaxExportParallelism(), httpConfig.getMaxConnectionsPerEndpoint())));
+        if (partitions < fileConfig.getExportParallelism()) {
+            logger.info("Exporting {} in {} ranges instead of the {} requested", table, partitions,
+                fileConfig.getExportParallelism());
+        }
+        String shardingKey = fileConfig.getShardingKey() != null && !fileConfig.getShardingKey().isBlank()
+            ? fileConfig.getShardingKey()
+            : String.join(", ", columns.getColumns());
+        QueryFilters.validateExpression("shardingKey", shardingKey);
+        boolean split = fileConfig.isSplitOutputFiles();
+        boolean parquet = outputFormat(fileConfig) == FileFormat.PARQUET;
+        Path target = Paths.get(fileConfig.getFilePath());
+
+        // When merging, range 0 streams straight into the target and the rest are staged next to it
+        List<Path> partFiles = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            if (split) {
+                partFiles.add(partFilePath(target, i, outputCompression(fileConfig)));
+            } else {
+                partFiles.add(i == 0 ? target : target.resolveSibling(target.getFileName() + ".part" + i + ".tmp"));
+            }
+        }
+
+        List<Future<Long>> ranges = new ArrayList<>(partitions);
+        try {
+            for (int i = 0; i < partitions; i++) {
+                int range = i;
+                String rangeCondition = String.format("cityHash64(%s) %% %d = %d", shardingKey, partitions, range);
+                String select = QueryFilters.select(columns.getColumns(), table, null, columns.getFilter(),
+                    rangeCondition, 0);
+                ranges.add(exportExecutor.submit(() -> {
+                    if (parquet) {
+                        String query = select + parquetOutputClause(fileConfig);
+                        return copyParquet(executeStreamingQuery(config, "export", query), partFiles.get(range),
+                            config, progress);
+                    }
+                    try (CSVPrinter csvPrinter = openCsvPrinter(partFiles.get(range), fileConfig)) {
+                        if (split || range == 0) {
+                            csvPrinter.printRecord(columns.getColumns());
+                        }
+                        String query = select + " FORMAT TabSeparated";
+                        return (long) copyTabSeparated(executeStreamingQuery(config, "export", query), csvPrinter,
+                            config, "export", progress);
+                    }
+                }));
+            }
+
+            long recordCount = 0;
+            for (Future<Long> range : ranges) {
+                try {
+                    recordCount += range.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+
+            if (!split) {
+                try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    for (Path part : partFiles.subList(1, partitions)) {
+                        try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ)) {
+                            long position = 0;
+                            long size = in.size();
+                            while (position < size) {
+                                position += in.transferTo(position, size - position, out);
+                            }
+                        }
+                    }
+                }
+                return String.format("Successfully exported %d records to %s",
+                    recordCount, fileConfig.getFilePath());
+            }
+            return String.format("Successfully exported %d records to %d files next to %s",
+                recordCount, partitions, fileConfig.getFilePath());
+        } finally {
+            // The pool is shared with other exports, so only this export's ranges are stopped
+            for (Future<Long> range : ranges) {
+                range.cancel(true);
+            }
+            if (!split) {
+                for (Path part : partFiles.subList(1, partitions)) {
+                    Files.deleteIfExists(part);
+                }
+            }
+        }
+    }
+
+    /**
+     * Numbers a part file before its extension, keeping a compression suffix, e.g. {@code out-part-00001.csv.gz}.
+     */
+    private Path partFilePath(Path target, int part, CompressionCodec compression) {
+        String name = target.getFileName().toString();
+        String compressionSuffix = "";
+        if (compression != CompressionCodec.NONE
+                && name.toLowerCase(Locale.ROOT).endsWith(compression.getFileExtension())) {
+            compressionSuffix = name.substring(name.length() - compression.getFileExtension().length());
+            name = name.substring(0, name.length() - compressionSuffix.length());
+        }
+        int dot = name.lastIndexOf('.');
+        String suffix = String.format("-part-%05d", part);
+        return target.resolveSibling((dot > 0
+            ? name.substring(0, dot) + suffix + name.substring(dot)
+            : name + suffix) + compressionSuffix);
+    }
+
     public String importFromFile(ClickHouseConnection config, String table,
-                               ColumnSelection columns, FlatFileConfig fileConfig) throws Exception {
-        try (Reader reader = new FileReader(fileConfig.getFilePath())) {
-            // Create table if not exists
+                               ColumnSelection columns, FlatFileConfig fileConfig,
+                               TaskProgress progress) throws Exception {
+        try {
+            // Create table if not exists, typed from the file unless inference is turned off
+            TableSchema schema = resolveTableSchema(columns.getColumns(), fileConfig);
             String createTableQuery = String.format(
-                "CREATE TABLE IF NOT EXISTS %s (%s) ENGINE = MergeTree() ORDER BY tuple()",
+                // The window makes insert_deduplication_token effective on a non-replicated table
+                "CREATE TABLE IF NOT EXISTS %s (%s) ENGINE = MergeTree() ORDER BY %s "
+                    + "SETTINGS non_replicated_deduplication_window = 1000",
                 table,
-                String.join(", ", columns.getColumns().stream()
-                    .map(col -> col + " String")
-                    .toList())
+                String.join(", ", schema.getColumnTypes().entrySet().stream()
+                    .map(col -> col.getKey() + " " + col.getValue())
+                    .toList()),
+                schema.getOrderBy()
             );
             
-            HttpResponse<String> response = executeQuery(config, createTableQuery);
+            HttpResponse<String> response = executeQuery(config, "create_table", createTableQuery);
+            metadataCache.invalidateTable(config, table);
             
-            // Read CSV file
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.builder()
-                .setDelimiter(fileConfig.getDelimiter().charAt(0))
-                .setHeader()
-                .build()
-                .parse(reader);
+            Path path = Paths.get(fileConfig.getFilePath());
+            if (ParquetFooter.isParquet(path)) {
+                long recordCount = insertParquet(config, table, columns.getColumns(), path, fileConfig, progress);
+                return String.format("Successfully imported %d records from %s",
+                    recordCount, fileConfig.getFilePath());
+            }
             
-            int batchSize = 1000;
-            List<String> values = new ArrayList<>();
-            int recordCount = 0;
+            // Encode rows against the actual table schema, which may predate this import
+            InsertBatchEncoder encoder = InsertBatchEncoder.forTypes(
+                resolveColumnTypes(config, table, columns.getColumns()));
             
-            for (CSVRecord record : records) {
-                List<String> rowValues = new ArrayList<>();
-                for (String column : columns.getColumns()) {
-                    String value = String.valueOf(record.get(column));
-                    rowValues.add("'" + value.replace("'", "''") + "'");
-                }
-                values.add("(" + String.join(", ", rowValues) + ")");
-                recordCount++;
-                
-                // Batch insert every 1000 records
-                if (values.size() >= batchSize) {
-                    executeBatchInsert(config, table, columns.getColumns(), values);
-                    values.clear();
-                }
-            }
+            // Batches of randomly sharded Distributed tables go straight to the shards' local tables
+            ShardRouter shards = config.isShardAwareInserts() ? resolveShardRouter(config, table) : null;
+            
+            CsvDialect dialect = CsvDialect.of(fileConfig);
+            long recordCount;
+            long resumedRecords;
+            progress.setTotalBytes(Files.size(path));
+            // Compressed input cannot be split into byte ranges, so it is always parsed sequentially
+            boolean compressed = RecordCursor.detectCompression(path) != CompressionCodec.NONE;
+            int parseParallelism = compressed ? 1
+                : capped(table, "parse parallelism", fileConfig.getParseParallelism(), ingestionConfig.getParseThreads());
+            // Each insert worker holds a connection while it sends
+            int insertParallelism = capped(table, "insert parallelism", fileConfig.getInsertParallelism(),
+                Math.min(ingestionConfig.getMaxInsertParallelism(), httpConfig.getMaxConnectionsPerEndpoint()));
+            int maxInFlightBatches = capped(table, "in-flight batches", fileConfig.getMaxInFlightBatches(),
+                ingestionConfig.getMaxInFlightBatches());
             
-            // Insert remaining records
-            if (!values.isEmpty()) {
-                executeBatchInsert(config, table, columns.getColumns(), values);
+            ImportCheckpoint checkpoint = ImportCheckpoint.open(fileConfig.getCheckpointPath() != null
+                ? Paths.get(fileConfig.getCheckpointPath()) : null, path, table, fileConfig.getBatchSize(),
+                parseParallelism);
+            
+            // Parse while insert workers send completed batches concurrently
+            try (BatchInsertPipeline pipeline = new BatchInsertPipeline(encoder, parseParallelism,
+                    insertParallelism, maxInFlightBatches,
+                    batch -> {
+                        try {
+                            String token = checkpoint.deduplicationToken(batch.sourceStart(), batch.sourceEnd());
+                            if (shards != null) {
+                                ShardRouter.Shard shard = shards.shardFor(batch.sourceStart());
+                                executeBatchInsert(shard.connection(), shards.localTable(), columns.getColumns(),
+                                    batch, token, fileConfig);
+                            } else {
+                                executeBatchInsert(config, table, columns.getColumns(), batch, token, fileConfig);
+                            }
+                            checkpoint.commit(batch.sourceStart(), batch.sourceEnd(), batch.rowCount());
+                            progress.addRowsWritten(batch.rowCount());
+                        } finally {
+                            progress.batchFinished();
+                        }
+                    })) {
+                if (compressed) {
+                    try (RecordCursor scanner = RecordCursor.open(path, dialect)) {
+                        int[] fieldIndexes = readFieldIndexes(scanner, columns.getColumns());
+                        // Ranges are record ordinals: compressed byte offsets only advance a read buffer at a time
+                        checkpoint.begin(0);
+                        resumedRecords = checkpoint.committedRows();
+                        logResume(checkpoint, fileConfig, table, "record");
+                        // A compressed stream cannot be seeked, so committed records are read again and skipped
+                        long resumeAt = checkpoint.committedOffset();
+                        for (long skip = resumeAt; skip > 0; skip--) {
+                            if (!scanner.next()) {
+                                throw new IllegalStateException("Checkpoint is past the end of the file at record "
+                                    + (resumeAt - skip));
+                            }
+                        }
+                        progress.addBytesProcessed(scanner.position());
+                        recordCount = encodeRecords(scanner, resumeAt, -1, true, fieldIndexes,
+                            fileConfig.getBatchSize(), pipeline, progress, checkpoint);
+                    }
+                } else {
+                    int[] fieldIndexes;
+                    long dataStart;
+                    try (DelimitedFileScanner header = new DelimitedFileScanner(path, dialect, 0, -1)) {
+                        fieldIndexes = readFieldIndexes(header, columns.getColumns());
+                        dataStart = header.position();
+                        checkpoint.begin(dataStart);
+                    }
+                    resumedRecords = checkpoint.committedRows();
+                    logResume(checkpoint, fileConfig, table, "byte");
+                    long resumeAt = checkpoint.committedOffset();
+                    progress.addBytesProcessed(resumeAt);
+                    if (parseParallelism > 1) {
+                        recordCount = parseChunked(path, dialect, fieldIndexes, dataStart, resumeAt,
+                            parseParallelism, fileConfig,
+                            pipeline, progress, checkpoint);
+                    } else {
+                        try (DelimitedFileScanner scanner = new DelimitedFileScanner(path, dialect, resumeAt, -1)) {
+                            recordCount = encodeRecords(scanner, resumeAt, -1, false, fieldIndexes,
+                                fileConfig.getBatchSize(), pipeline, progress, checkpoint);
+                        }
+                    }
+                }
+                pipeline.finish();
             }
+            checkpoint.complete();
             
             return String.format("Successfully imported %d records from %s", 
-                recordCount, fileConfig.getFilePath());
+                resumedRecords + recordCount, fileConfig.getFilePath());
         } catch (Exception e) {
-            logger.severe("Error importing from file: " + e.getMessage());
+            logger.error("Error importing {} into {}: {}", fileConfig.getFilePath(), table, e.getMessage());
             throw new Exception("Failed to import data: " + e.getMessage());
         }
     }
 
-    private void executeBatchInsert(ClickHouseConnection config, String table, 
-                                  List<String> columns, List<String> values) throws Exception {
-        String insertQuery = String.format("INSERT INTO %s (%s) VALUES %s",
+    /**
+     * Caps a per-import setting from the request at the configured maximum, and raises it to at least 1.
+     */
+    private int capped(String table, String setting, int requested, int max) {
+        int value = Math.max(1, Math.min(requested, Math.max(1, max)));
+        if (value < requested) {
+            logger.info("Importing into {} with {} {} instead of the {} requested", table, setting, value, requested);
+        }
+        return value;
+    }
+
+    private TableSchema resolveTableSchema(List<String> columns, FlatFileConfig fileConfig) throws IOException {
+        TableSchema schema;
+        if (fileConfig.isInferSchema()) {
+            schema = fileService.inferSchema(fileConfig.getFilePath(), fileConfig.getDelimiter(), columns);
+        } else {
+            schema = new TableSchema();
+            for (String column : columns) {
+                schema.getColumnTypes().put(column, "String");
+            }
+        }
+        if (fileConfig.getColumnTypes() != null) {
+            for (Map.Entry<String, String> override : fileConfig.getColumnTypes().entrySet()) {
+                if (schema.getColumnTypes().containsKey(override.getKey())) {
+                    QueryFilters.validateTypeName("column type of " + override.getKey(), override.getValue());
+                    schema.getColumnTypes().put(override.getKey(), override.getValue());
+                }
+            }
+        }
+        if (fileConfig.getOrderBy() != null && !fileConfig.getOrderBy().isBlank()) {
+            QueryFilters.validateTableOrderBy("orderBy", fileConfig.getOrderBy());
+            schema.setOrderBy(fileConfig.getOrderBy());
+        }
+        return schema;
+    }
+
+    private void logResume(ImportCheckpoint checkpoint, FlatFileConfig fileConfig, String table, String unit) {
+        if (checkpoint.isResumed()) {
+            logger.info("Resuming import of {} into {} at {} {}, after {} committed records",
+                fileConfig.getFilePath(), table, unit, checkpoint.committedOffset(), checkpoint.committedRows());
+        }
+    }
+
+    /**
+     * Splits the records from {@code dataStart} into record-aligned byte ranges and parses them concurrently
+     * into the insert pipeline. Ranges before {@code resumeAt}, a record boundary, were committed by an
+     * earlier run and are skipped. The split depends only on the file and the parse parallelism, so a resumed
+     * import cuts the same batches as the run it continues.
+     */
+    private long parseChunked(Path path, CsvDialect dialect, int[] fieldIndexes, long dataStart, long resumeAt,
+                              int parseParallelism,
+                              FlatFileConfig fileConfig, BatchInsertPipeline pipeline, TaskProgress progress,
+                              ImportCheckpoint checkpoint) throws Exception {
+        List<CsvChunker.Chunk> chunks = CsvChunker.split(path, dataStart,
+            parseParallelism * CHUNKS_PER_PARSER, dialect);
+        List<Future<Long>> parsed = new ArrayList<>(chunks.size());
+        try {
+            for (CsvChunker.Chunk chunk : chunks) {
+                if (chunk.end() <= resumeAt) {
+                    continue;
+                }
+                long start = Math.max(chunk.start(), resumeAt);
+                parsed.add(csvParseExecutor.submit(() -> {
+                    try (DelimitedFileScanner scanner = new DelimitedFileScanner(
+                            path, dialect, start, chunk.end())) {
+                        return encodeRecords(scanner, start, chunk.end(), false, fieldIndexes,
+                            fileConfig.getBatchSize(), pipeline, progress, checkpoint);
+                    }
+                }));
+            }
+            long recordCount = 0;
+            for (Future<Long> chunk : parsed) {
+                try {
+                    recordCount += chunk.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            return recordCount;
+        } finally {
+            // The pool is shared with other imports, so only this import's chunks are stopped
+            for (Future<Long> chunk : parsed) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Encodes the scanner's remaining records into batches for the pipeline. Each batch is tagged with the
+     * range it was read from, and the batches cover {@code [start, end)} without gaps; an {@code end} of
+     * -1 means wherever the scanner stops. Ranges are byte offsets, or record ordinals continuing from
+     * {@code start} if {@code countRecords} is set. Progress is reported per batch in bytes, counted from
+     * {@code start} for byte ranges and from the scanner's position otherwise.
+     */
+    private long encodeRecords(RecordCursor scanner, long start, long end, boolean countRecords,
+                               int[] fieldIndexes, int batchSize, BatchInsertPipeline pipeline,
+                               TaskProgress progress, ImportCheckpoint checkpoint) throws Exception {
+        String[] rowValues = new String[fieldIndexes.length];
+        long recordCount = 0;
+        long reported = start;
+        long reportedBytes = countRecords ? scanner.position() : start;
+        InsertBatchEncoder batch = pipeline.acquire();
+        long batchStart = System.nanoTime();
+        while (scanner.next()) {
+            // Only the selected fields are decoded
+            for (int i = 0; i < rowValues.length; i++) {
+                rowValues[i] = scanner.field(fieldIndexes[i]);
+            }
+            batch.writeRow(rowValues);
+            recordCount++;
+            if ((recordCount & CANCEL_CHECK_MASK) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Import cancelled");
+            }
+            
+            if (batch.rowCount() >= batchSize || batch.byteCount() >= MAX_BATCH_BYTES) {
+                long position = countRecords ? start + recordCount : scanner.position();
+                metrics.recordParseBatch(System.nanoTime() - batchStart);
+                reportBatch(batch, scanner.position() - reportedBytes, progress);
+                batch.setSourceRange(reported, position);
+                reported = position;
+                reportedBytes = scanner.position();
+                pipeline.submit(batch);
+                batch = pipeline.acquire();
+                batchStart = System.nanoTime();
+            }
+        }
+        long rangeEnd = countRecords ? start + recordCount
+            : end >= 0 ? end : Math.max(reported, scanner.position());
+        if (batch.rowCount() > 0) {
+            metrics.recordParseBatch(System.nanoTime() - batchStart);
+            reportBatch(batch, scanner.position() - reportedBytes, progress);
+            batch.setSourceRange(reported, rangeEnd);
+        } else if (rangeEnd > reported) {
+            // Nothing to insert, but the range must be committed for the checkpoint to move past it
+            checkpoint.commit(reported, rangeEnd, 0);
+        }
+        pipeline.submit(batch);
+        return recordCount;
+    }
+
+    private void reportBatch(InsertBatchEncoder batch, long bytes, TaskProgress progress) {
+        progress.addRowsRead(batch.rowCount());
+        progress.addBytesProcessed(bytes);
+        progress.batchStarted();
+    }
+
+    private int[] readFieldIndexes(RecordCursor scanner, List<String> columns) throws IOException {
+        if (!scanner.next()) {
+            throw new IllegalArgumentException("File is empty");
+        }
+        Map<String, Integer> headerMap = new HashMap<>();
+        for (int i = 0; i < scanner.fieldCount(); i++) {
+            headerMap.put(scanner.field(i), i);
+        }
+        return resolveFieldIndexes(headerMap, columns);
+    }
+
+    private int[] resolveFieldIndexes(Map<String, Integer> headerMap, List<String> columns) {
+        int[] indexes = new int[columns.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            Integer index = headerMap.get(columns.get(i));
+            if (index == null) {
+                throw new IllegalArgumentException("Column not found in file: " + columns.get(i));
+            }
+            indexes[i] = index;
+        }
+        return indexes;
+    }
+
+    private List<String> resolveColumnTypes(ClickHouseConnection config, String table,
+                                            List<String> columns) {
+        Map<String, String> typesByName = new HashMap<>();
+        for (Map<String, String> column : getColumns(config, table)) {
+            typesByName.put(column.get("name"), column.get("type"));
+        }
+        List<String> types = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            String type = typesByName.get(column);
+            if (type == null) {
+                throw new IllegalArgumentException("Column " + column + " does not exist in table " + table);
+            }
+            types.add(type);
+        }
+        return types;
+    }
+
+    /**
+     * Looks up the shards of {@code table} if it is a Distributed table that may be inserted into shard by
+     * shard. Shard replicas are reached on the connection's HTTP port, since {@code system.clusters} only
+     * lists the native protocol port.
+     *
+     * @return the router, or {@code null} to insert through {@code table} itself
+     */
+    private ShardRouter resolveShardRouter(ClickHouseConnection config, String table) throws Exception {
+        int dot = table.indexOf('.');
+        String database = dot >= 0 ? ShardRouter.quoteLiteral(table.substring(0, dot)) : "currentDatabase()";
+        String name = dot >= 0 ? table.substring(dot + 1) : table;
+        String engineFull = executeQuery(config, "get_table_engine",
+            "SELECT engine_full FROM system.tables WHERE database = " + database
+                + " AND name = " + ShardRouter.quoteLiteral(name) + " FORMAT TabSeparated").body().trim();
+        List<String> engine = engineFull.isEmpty() ? null : ShardRouter.parseDistributedEngine(engineFull);
+        if (engine == null || engine.size() < 3) {
+            return null;
+        }
+        if (!ShardRouter.isRandomlySharded(engine)) {
+            logger.info("Inserting into {} through the Distributed table: sharding key {} is evaluated by the server",
+                table, engine.get(3));
+            return null;
+        }
+
+        String cluster = ShardRouter.unquote(engine.get(0));
+        String localDatabase = ShardRouter.unquote(engine.get(1));
+        String localTable = ShardRouter.quoteIdentifier(ShardRouter.unquote(engine.get(2)));
+        if (!localDatabase.isEmpty() && !localDatabase.equalsIgnoreCase("currentDatabase()")) {
+            localTable = ShardRouter.quoteIdentifier(localDatabase) + "." + localTable;
+        }
+
+        HttpResponse<String> response = executeQuery(config, "get_cluster_shards",
+            "SELECT shard_num, shard_weight, host_name FROM system.clusters WHERE cluster = "
+                + ShardRouter.quoteLiteral(cluster) + " ORDER BY shard_num, replica_num FORMAT TabSeparated");
+        Map<Integer, List<String>> replicas = new LinkedHashMap<>();
+        Map<Integer, Integer> weights = new HashMap<>();
+        try (TabSeparatedReader reader = new TabSeparatedReader(
+                new ByteArrayInputStream(response.body().getBytes(StandardCharsets.UTF_8)))) {
+            List<String> row;
+            while ((row = reader.next()) != null) {
+                int shard = Integer.parseInt(row.get(0));
+                weights.put(shard, Integer.parseInt(row.get(1)));
+                replicas.computeIfAbsent(shard, k -> new ArrayList<>()).add(row.get(2));
+            }
+        }
+        if (replicas.isEmpty() || weights.values().stream().allMatch(weight -> weight <= 0)) {
+            logger.warn("Inserting into {} through the Distributed table: cluster {} has no writable shards",
+                table, cluster);
+            return null;
+        }
+
+        List<ShardRouter.Shard> shards = new ArrayList<>(replicas.size());
+        List<Integer> shardWeights = new ArrayList<>(replicas.size());
+        for (Map.Entry<Integer, List<String>> entry : replicas.entrySet()) {
+            List<String> hosts = entry.getValue();
+            ClickHouseConnection shardConfig = config.withEndpoint(hosts.get(0), config.getPort());
+            shardConfig.setReplicas(new ArrayList<>(hosts.subList(1, hosts.size())));
+            shards.add(new ShardRouter.Shard(entry.getKey(), shardConfig));
+            shardWeights.add(Math.max(0, weights.get(entry.getKey())));
+        }
+        logger.info("Routing inserts into {} to {} on {} shards of cluster {}", table, localTable, shards.size(),
+            cluster);
+        return new ShardRouter(localTable, shards, shardWeights);
+    }
+
+    /**
+     * Inserts one batch, retrying with exponential backoff on I/O errors and server-side (5xx) failures.
+     * Every attempt carries the same {@code insert_deduplication_token}, so a batch the server committed
+     * before its response was lost is not inserted twice.
+     */
+    private void executeBatchInsert(ClickHouseConnection config, String table, List<String> columns,
+                                    InsertBatchEncoder batch, String deduplicationToken,
+                                    FlatFileConfig fileConfig) throws Exception {
+        String insertQuery = String.format("INSERT INTO %s (%s) FORMAT %s",
             table,
             String.join(", ", columns),
-            String.join(", ", values));
-            
-        HttpResponse<String> response = executeQuery(config, insertQuery);
+            batch.format());
+        CompressionCodec compression = compressionOf(config);
+        byte[] body;
+        int bodyLength;
+        if (compression == CompressionCodec.NONE) {
+            body = batch.array();
+            bodyLength = batch.byteCount();
+        } else {
+            // Compressed on the insert worker, so batches are compressed in parallel
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(1 << 10, batch.byteCount() / 4));
+            try (OutputStream out = CompressionStreams.compress(compression, compressed)) {
+                out.write(batch.array(), 0, batch.byteCount());
+            }
+            body = compressed.toByteArray();
+            bodyLength = body.length;
+        }
+        Map<String, String> settings = Map.of("insert_deduplication_token", deduplicationToken);
+        
+        int retries = Math.max(0, fileConfig.getInsertRetries());
+        for (int attempt = 0; ; attempt++) {
+            Exception failure;
+            try {
+                HttpResponse<String> response = sendBatch(config, table, insertQuery, settings, body, bodyLength,
+                    compression, batch);
+                if (response.statusCode() == 200) {
+                    return;
+                }
+                failure = new RuntimeException("ClickHouse insert failed with status code: " + response.statusCode() + ", body: " + response.body());
+                // Client errors such as unparseable data fail the same way every time
+                if (response.statusCode() < 500 || attempt >= retries) {
+                    throw failure;
+                }
+            } catch (IOException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                failure = e;
+            }
+            long delay = retryDelayMillis(fileConfig.getRetryBackoffMillis(), attempt);
+            logger.warn("Insert of {} rows into {} failed (attempt {} of {}), retrying in {} ms: {}",
+                batch.rowCount(), table, attempt + 1, retries + 1, delay, failure.getMessage());
+            Thread.sleep(delay);
+        }
+    }
+
+    private HttpResponse<String> sendBatch(ClickHouseConnection config, String table, String insertQuery,
+                                           Map<String, String> settings, byte[] body, int bodyLength,
+                                           CompressionCodec compression, InsertBatchEncoder batch) throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response;
+        try {
+            // Failing over is safe: a node that could not be connected to received nothing
+            response = nodeSelector.execute(config, node -> {
+                ClickHouseHttpTransport transport = transportRegistry.transportFor(node);
+                HttpRequest.Builder builder = newRequest(transport, node, insertQuery, settings)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, bodyLength));
+                if (compression != CompressionCodec.NONE) {
+                    builder.header("Content-Encoding", compression.getEncoding());
+                }
+                return transport.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            });
+            metrics.recordWireBytes(config, "sent", compression, bodyLength);
+        } catch (Exception e) {
+            metrics.recordInsert(config, batch.format(), System.nanoTime() - start, batch.rowCount(),
+                batch.byteCount(), false);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        metrics.recordInsert(config, batch.format(), elapsed, batch.rowCount(),
+            batch.byteCount(), response.statusCode() == 200);
+        if (logger.isDebugEnabled() && batchLogSampler.sample()) {
+            logger.debug("Inserted {} rows ({} bytes, {}) into {} in {} ms", batch.rowCount(), batch.byteCount(),
+                batch.format(), table, elapsed / 1_000_000);
+        }
+        return response;
+    }
+
+    /**
+     * Exponential backoff from {@code baseMillis}, capped, with jitter so parallel workers do not retry in step.
+     */
+    private static long retryDelayMillis(long baseMillis, int attempt) {
+        long ceiling = Math.min(MAX_RETRY_BACKOFF_MILLIS, Math.max(0, baseMillis) << Math.min(attempt, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    /**
+     * Streams a Parquet file from disk as the body of a single INSERT. ClickHouse matches the file's columns
+     * by name and reads only the selected ones. The body is not HTTP-compressed since Parquet already is.
+     * The whole file is one batch: it is retried like {@link #executeBatchInsert} under a token derived from
+     * the file, and recorded in the checkpoint once committed, so a rerun after a lost response or a crash
+     * does not insert it twice.
+     */
+    private long insertParquet(ClickHouseConnection config, String table, List<String> columns, Path path,
+                               FlatFileConfig fileConfig, TaskProgress progress) throws Exception {
+        String insertQuery = String.format("INSERT INTO %s (%s) FORMAT Parquet",
+            table,
+            String.join(", ", columns));
+        long recordCount = ParquetFooter.read(path).rowCount();
+        long size = Files.size(path);
+        progress.setTotalBytes(size);
+        // Batch size and parse parallelism do not apply: the file is sent as it is
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(fileConfig.getCheckpointPath() != null
+            ? Paths.get(fileConfig.getCheckpointPath()) : null, path, table, 0, 1);
+        checkpoint.begin(0);
+        if (checkpoint.committedOffset() >= size) {
+            logger.info("Skipping {}: the checkpoint records it as imported into {}", path, table);
+            progress.addBytesProcessed(size);
+            checkpoint.complete();
+            return checkpoint.committedRows();
+        }
+        Map<String, String> settings = Map.of("insert_deduplication_token", checkpoint.deduplicationToken(0, size));
+        
+        int retries = Math.max(0, fileConfig.getInsertRetries());
+        progress.batchStarted();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                AtomicReference<CountingInputStream> body = new AtomicReference<>();
+                Exception failure;
+                try {
+                    HttpResponse<String> response = nodeSelector.execute(config, node -> {
+                        ClickHouseHttpTransport transport = transportRegistry.transportFor(node);
+                        HttpRequest request = newRequest(transport, node, insertQuery, settings)
+                            .POST(HttpRequest.BodyPublishers.fromPublisher(HttpRequest.BodyPublishers.ofInputStream(() -> {
+                                try {
+                                    CountingInputStream in = new CountingInputStream(Files.newInputStream(path), progress);
+                                    discardProgress(body.getAndSet(in), progress);
+                                    return in;
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            }), size))
+                            .build();
+                        return send(transport, request, node, "insert_file");
+                    });
+                    if (response.statusCode() == 200) {
+                        metrics.recordWireBytes(config, "sent", CompressionCodec.NONE, size);
+                        checkpoint.commit(0, size, recordCount);
+                        checkpoint.complete();
+                        progress.addRowsRead(recordCount);
+                        progress.addRowsWritten(recordCount);
+                        return recordCount;
+                    }
+                    failure = new RuntimeException("ClickHouse insert failed with status code: " + response.statusCode() + ", body: " + response.body());
+                    // Client errors such as an unreadable file fail the same way every time
+                    if (response.statusCode() < 500 || attempt >= retries) {
+                        throw failure;
+                    }
+                } catch (IOException e) {
+                    if (attempt >= retries) {
+                        throw e;
+                    }
+                    failure = e;
+                }
+                // The next attempt streams the file again from the start
+                discardProgress(body.get(), progress);
+                long delay = retryDelayMillis(fileConfig.getRetryBackoffMillis(), attempt);
+                logger.warn("Insert of {} into {} failed (attempt {} of {}), retrying in {} ms: {}",
+                    path, table, attempt + 1, retries + 1, delay, failure.getMessage());
+                Thread.sleep(delay);
+            }
+        } finally {
+            progress.batchFinished();
+        }
+    }
+
+    private static void discardProgress(CountingInputStream in, TaskProgress progress) {
+        if (in != null) {
+            progress.addBytesProcessed(-in.count);
+        }
     }
 
     public String joinTables(ClickHouseConnection config, JoinConfig joinConfig,
-                           ColumnSelection columns, FlatFileConfig fileConfig) throws Exception {
-        try (FileWriter writer = new FileWriter(fileConfig.getFilePath());
-             CSVPrinter csvPrinter = new CSVPrinter(writer, 
-                 CSVFormat.DEFAULT.builder()
-                     .setDelimiter(fileConfig.getDelimiter().charAt(0))
-                     .build())) {
+                           ColumnSelection columns, FlatFileConfig fileConfig,
+                           TaskProgress progress) throws Exception {
+        try {
+            // Checked before the output file is created
+            QueryFilters.validate(columns.getFilter());
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Failed to join tables: " + e.getMessage());
+        }
+        try (CSVPrinter csvPrinter = openCsvPrinter(fileConfig)) {
             
             // Write headers
             csvPrinter.printRecord(columns.getColumns());
             
-            // Write data
+            // Stream data straight from the response into the file
             String query = buildJoinQuery(joinConfig, columns) + " FORMAT TabSeparated";
-            HttpResponse<String> response = executeQuery(config, query);
-            String[] lines = response.body().split("\n");
-            
-            int recordCount = 0;
-            for (String line : lines) {
-                if (!line.trim().isEmpty()) {
-                    String[] values = line.split("\t");
-                    csvPrinter.printRecord((Object[]) values);
-                    recordCount++;
-                }
-            }
+            HttpResponse<InputStream> response = executeStreamingQuery(config, "join", query);
+            int recordCount = copyTabSeparated(response, csvPrinter, config, "join", progress);
             
             return String.format("Successfully exported %d records from joined tables to %s", 
                 recordCount, fileConfig.getFilePath());
         } catch (Exception e) {
-            logger.severe("Error joining tables: " + e.getMessage());
+            logger.error("Error joining tables: {}", e.getMessage());
             throw new Exception("Failed to join tables: " + e.getMessage());
         }
     }
 
     private String buildJoinQuery(JoinConfig joinConfig, ColumnSelection columns) {
-        StringBuilder query = new StringBuilder();
-        query.append("SELECT ").append(String.join(", ", columns.getColumns()))
-             .append(" FROM ").append(joinConfig.getSourceTable());
-        
+        String join = null;
         if (joinConfig.getJoinTable() != null) {
-            query.append(" JOIN ").append(joinConfig.getJoinTable())
-                 .append(" ON ").append(joinConfig.getJoinCondition());
+            join = " JOIN " + joinConfig.getJoinTable() + " ON " + joinConfig.getJoinCondition();
+        }
+        // The filter's SAMPLE applies to the source table
+        return QueryFilters.select(columns.getColumns(), joinConfig.getSourceTable(), join,
+            columns.getFilter(), null, 0);
+    }
+
+    /**
+     * Reports the bytes read from a response body to the task's progress.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final TaskProgress progress;
+        long count;
+
+        CountingInputStream(InputStream in, TaskProgress progress) {
+            super(in);
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                progress.addBytesProcessed(1);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                progress.addBytesProcessed(read);
+                count += read;
+            }
+            return read;
         }
-        
-        return query.toString();
     }
-} 
\ No newline at end of file
+}
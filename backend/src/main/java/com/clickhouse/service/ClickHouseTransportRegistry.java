@@ -0,0 +1,55 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands out one shared {@link ClickHouseHttpTransport} per ClickHouse endpoint, keyed by host, port and user,
+ * and evicts transports that have been idle longer than the configured timeout.
+ */
+@Component
+public class ClickHouseTransportRegistry {
+    private final ClickHouseConfig properties;
+    private final Map<EndpointKey, ClickHouseHttpTransport> transports = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+
+    public ClickHouseTransportRegistry(ClickHouseConfig properties) {
+        this.properties = properties;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "clickhouse-transport-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, properties.getIdleEvictionTimeout().toSeconds() / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+    }
+
+    public ClickHouseHttpTransport transportFor(ClickHouseConnection config) {
+        EndpointKey key = new EndpointKey(config.getHost(), config.getPort(), config.getUser());
+        return transports.computeIfAbsent(key, k -> new ClickHouseHttpTransport(
+            properties.getConnectTimeout(),
+            properties.getRequestTimeout(),
+            properties.getMaxConnectionsPerEndpoint()));
+    }
+
+    private void evictIdle() {
+        transports.values().removeIf(transport -> transport.isIdle(properties.getIdleEvictionTimeout()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        evictor.shutdownNow();
+        transports.clear();
+    }
+
+    private record EndpointKey(String host, int port, String user) {
+    }
+}
@@ -0,0 +1,160 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.ColumnStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Accumulates statistics for one column of a delimited file in a single pass, and infers the
+ * narrowest ClickHouse type that every observed value fits. Empty fields count as nulls.
+ * Only types that read back as the text in the file are inferred: numbers written with leading
+ * zeros, such as postal codes or account numbers, stay strings, and timestamps without an offset
+ * are stored as {@code DateTime('UTC')}, which parses and prints them unchanged whatever the
+ * server's time zone, with no daylight saving gaps.
+ */
+class ColumnProfile {
+    static final int LOW_CARDINALITY_LIMIT = 1000;
+
+    private final String name;
+    private long nullCount;
+    private long valueCount;
+    private int maxLength;
+    private boolean int64 = true;
+    private boolean float64 = true;
+    private boolean date = true;
+    private boolean dateTime = true;
+    private Set<String> distinct = new HashSet<>();
+
+    ColumnProfile(String name) {
+        this.name = name;
+    }
+
+    void observe(String value) {
+        if (value.isEmpty()) {
+            nullCount++;
+            return;
+        }
+        valueCount++;
+        maxLength = Math.max(maxLength, value.length());
+        if ((int64 || float64) && hasLeadingZero(value)) {
+            int64 = false;
+            float64 = false;
+        }
+        if (int64 && !isInt64(value)) {
+            int64 = false;
+        }
+        if (float64 && !int64 && !isFloat64(value)) {
+            float64 = false;
+        }
+        if (date && !isDate(value)) {
+            date = false;
+        }
+        if (dateTime && !isDateTime(value)) {
+            dateTime = false;
+        }
+        if (distinct != null) {
+            distinct.add(value);
+            if (distinct.size() > LOW_CARDINALITY_LIMIT) {
+                distinct = null;
+            }
+        }
+    }
+
+    String inferredType() {
+        if (valueCount == 0) {
+            return "String";
+        }
+        String type;
+        if (int64) {
+            type = "Int64";
+        } else if (float64) {
+            type = "Float64";
+        } else if (date) {
+            type = "Date";
+        } else if (dateTime) {
+            type = "DateTime('UTC')";
+        } else if (distinct != null && valueCount > 10L * distinct.size()) {
+            // Few distinct values relative to the rows seen: dictionary encoding pays off
+            return "LowCardinality(String)";
+        } else {
+            return "String";
+        }
+        return nullCount > 0 ? "Nullable(" + type + ")" : type;
+    }
+
+    ColumnStats toStats() {
+        ColumnStats stats = new ColumnStats();
+        stats.setName(name);
+        stats.setInferredType(inferredType());
+        stats.setNullCount(nullCount);
+        stats.setMaxLength(maxLength);
+        return stats;
+    }
+
+    /**
+     * A zero followed by another digit, e.g. {@code 007} or {@code -01.5}, which a number would drop.
+     */
+    private static boolean hasLeadingZero(String value) {
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        return value.length() > start + 1 && value.charAt(start) == '0'
+            && value.charAt(start + 1) >= '0' && value.charAt(start + 1) <= '9';
+    }
+
+    private static boolean isInt64(String value) {
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        int length = value.length() - start;
+        if (length == 0 || length > 18) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFloat64(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                return false;
+            }
+        }
+        try {
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDate(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            return false;
+        }
+        try {
+            LocalDate.parse(value);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static boolean isDateTime(String value) {
+        if (value.length() != 19 || value.charAt(4) != '-' || (value.charAt(10) != ' ' && value.charAt(10) != 'T')) {
+            return false;
+        }
+        try {
+            LocalDateTime.parse(value.replace(' ', 'T'));
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.CompressionCodec;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Cursor over a compressed delimited file, decompressed and parsed as a stream.
+ * Compressed input cannot be memory-mapped or split, so this reads sequentially with commons-csv.
+ * Byte offsets count compressed bytes read from the file and are accurate to the read buffer.
+ */
+final class CompressedRecordCursor implements RecordCursor {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final CountingInputStream file;
+    private final CSVParser parser;
+    private final Iterator<CSVRecord> records;
+
+    private CSVRecord record;
+    private long lineNumber;
+    private long recordStart;
+    private long position;
+
+    CompressedRecordCursor(Path path, CsvDialect dialect, CompressionCodec codec) throws IOException {
+        this.file = new CountingInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+        try {
+            InputStream decompressed = CompressionStreams.decompress(codec, file);
+            this.parser = CSVFormat.DEFAULT.builder()
+                .setDelimiter(dialect.delimiter())
+                .setQuote(dialect.quote())
+                .setEscape(dialect.hasEscape() ? Character.valueOf((char) dialect.escape()) : null)
+                // Empty lines are skipped in next(), where the line count is still known
+                .setIgnoreEmptyLines(false)
+                .build()
+                .parse(new InputStreamReader(decompressed, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+        this.records = parser.iterator();
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        recordStart = position;
+        try {
+            do {
+                // The parser has consumed the line break ending the previous record or empty line
+                long startLine = parser.getCurrentLineNumber() + 1;
+                if (!records.hasNext()) {
+                    record = null;
+                    return false;
+                }
+                record = records.next();
+                lineNumber = startLine;
+            } while (isEmptyLine(record));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        position = file.count;
+        return true;
+    }
+
+    /**
+     * A single empty field is an empty line. commons-csv does not say whether it was quoted, so unlike
+     * {@link DelimitedFileScanner} a line holding only {@code ""} is skipped as well.
+     */
+    private static boolean isEmptyLine(CSVRecord record) {
+        return record.size() == 1 && record.get(0).isEmpty();
+    }
+
+    @Override
+    public int fieldCount() {
+        return record != null ? record.size() : 0;
+    }
+
+    @Override
+    public String field(int index) {
+        if (index >= fieldCount()) {
+            throw new IllegalArgumentException(String.format(
+                "Line %d has %d fields, field %d requested", lineNumber, fieldCount(), index + 1));
+        }
+        String value = record.get(index);
+        if (index == 0 && record.getRecordNumber() == 1 && !value.isEmpty() && value.charAt(0) == BYTE_ORDER_MARK) {
+            return value.substring(1);
+        }
+        return value;
+    }
+
+    @Override
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long recordStart() {
+        return recordStart;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+        file.close();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.CompressionCodec;
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+import com.github.luben.zstd.ZstdOutputStreamNoFinalizer;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming compressors and decompressors for each {@link CompressionCodec}.
+ * LZ4 uses the frame format, which is what ClickHouse expects for {@code Content-Encoding: lz4}.
+ */
+final class CompressionStreams {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private CompressionStreams() {
+    }
+
+    static InputStream decompress(CompressionCodec codec, InputStream in) throws IOException {
+        return switch (codec) {
+            case NONE -> in;
+            case GZIP -> new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD -> new ZstdInputStreamNoFinalizer(in);
+            case LZ4 -> new LZ4FrameInputStream(in);
+        };
+    }
+
+    static OutputStream compress(CompressionCodec codec, OutputStream out) throws IOException {
+        return compress(codec, out, 0);
+    }
+
+    /**
+     * @param workers background threads for zstd block compression; 0 compresses on the calling thread.
+     *                Other codecs always compress on the calling thread.
+     */
+    static OutputStream compress(CompressionCodec codec, OutputStream out, int workers) throws IOException {
+        return switch (codec) {
+            case NONE -> out;
+            case GZIP -> new GZIPOutputStream(out, BUFFER_SIZE);
+            case ZSTD -> {
+                ZstdOutputStreamNoFinalizer zstd = new ZstdOutputStreamNoFinalizer(out);
+                if (workers > 0) {
+                    zstd.setWorkers(workers);
+                }
+                yield zstd;
+            }
+            case LZ4 -> new LZ4FrameOutputStream(out);
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package com.clickhouse.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a delimited file into byte ranges that start and end on record boundaries, so the ranges can be
+ * scanned independently by {@link DelimitedFileScanner}. Boundaries are found with a single pass over the
+ * raw bytes that tracks quote and escape state the way the scanner does, so a line break inside a quoted or
+ * escaped field never splits a record. Records may end with {@code \n}, {@code \r\n} or a lone {@code \r}.
+ */
+final class CsvChunker {
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+    private static final long MIN_CHUNK_SIZE = 8L << 20;
+
+    private CsvChunker() {
+    }
+
+    /**
+     * A byte range {@code [start, end)} of the file holding whole records.
+     */
+    record Chunk(long start, long end) {
+    }
+
+    /**
+     * Splits the records from {@code dataStart}, a record boundary such as the end of the header, into at
+     * most {@code targetChunks} ranges. Data without a usable boundary comes back as a single range.
+     */
+    static List<Chunk> split(Path path, long dataStart, int targetChunks, CsvDialect dialect) throws IOException {
+        byte delimiter = (byte) dialect.delimiter();
+        byte quote = (byte) dialect.quote();
+        boolean hasEscape = dialect.hasEscape();
+        byte escape = (byte) dialect.escape();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<Chunk> chunks = new ArrayList<>();
+            if (dataStart >= size) {
+                return chunks;
+            }
+            long chunkSize = Math.max(MIN_CHUNK_SIZE, (size - dataStart) / Math.max(1, targetChunks));
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+            // Like the scanner, a quote only opens a quoted field as the first byte of the field
+            boolean fieldStart = true;
+            boolean inQuotes = false;
+            // The previous byte closed a quoted field, unless this one doubles it
+            boolean closingQuote = false;
+            boolean escaped = false;
+            // Offset just past a \r outside quotes, which ends a record unless a \n follows
+            long pendingCr = -1;
+            long chunkStart = dataStart;
+            long position = dataStart;
+            while (position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer.get(i);
+                    long recordEnd = -1;
+                    if (pendingCr >= 0) {
+                        if (b != '\n') {
+                            recordEnd = pendingCr;
+                        }
+                        pendingCr = -1;
+                    }
+                    if (escaped) {
+                        escaped = false;
+                    } else if (closingQuote && b == quote) {
+                        // A doubled quote inside a quoted field
+                        closingQuote = false;
+                        inQuotes = true;
+                    } else if (inQuotes) {
+                        if (hasEscape && b == escape) {
+                            escaped = true;
+                        } else if (b == quote) {
+                            inQuotes = false;
+                            closingQuote = true;
+                        }
+                    } else {
+                        closingQuote = false;
+                        boolean atFieldStart = fieldStart;
+                        fieldStart = false;
+                        if (hasEscape && b == escape) {
+                            escaped = true;
+                        } else if (b == quote && atFieldStart) {
+                            inQuotes = true;
+                        } else if (b == delimiter) {
+                            fieldStart = true;
+                        } else if (b == '\n') {
+                            recordEnd = position + i + 1;
+                            fieldStart = true;
+                        } else if (b == '\r') {
+                            pendingCr = position + i + 1;
+                            fieldStart = true;
+                        }
+                    }
+                    if (recordEnd >= 0 && recordEnd - chunkStart >= chunkSize) {
+                        chunks.add(new Chunk(chunkStart, recordEnd));
+                        chunkStart = recordEnd;
+                    }
+                }
+                position += read;
+            }
+            if (chunkStart < size) {
+                chunks.add(new Chunk(chunkStart, size));
+            }
+            return chunks;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.FlatFileConfig;
+
+/**
+ * How a delimited file separates and quotes its fields. Inside quotes a doubled quote stands for one, as
+ * in RFC 4180; an escape character, if set, makes the character after it literal anywhere in a field, with
+ * {@code n}, {@code r}, {@code t}, {@code b} and {@code f} standing for the control characters as in
+ * commons-csv.
+ *
+ * @param escape the escape character, or -1 for none
+ */
+record CsvDialect(char delimiter, char quote, int escape) {
+    static final int NO_ESCAPE = -1;
+
+    CsvDialect {
+        if (delimiter == quote || delimiter == escape) {
+            throw new IllegalArgumentException("The delimiter cannot also be the quote or escape character");
+        }
+    }
+
+    /**
+     * Comma-style quoting with the given delimiter and no escape character.
+     */
+    static CsvDialect rfc4180(char delimiter) {
+        return new CsvDialect(delimiter, '"', NO_ESCAPE);
+    }
+
+    static CsvDialect of(FlatFileConfig fileConfig) {
+        String quote = fileConfig.getQuote();
+        String escape = fileConfig.getEscape();
+        return new CsvDialect(fileConfig.getDelimiter().charAt(0),
+            quote == null || quote.isEmpty() ? '"' : quote.charAt(0),
+            escape == null || escape.isEmpty() ? NO_ESCAPE : escape.charAt(0));
+    }
+
+    /**
+     * Whether every character is ASCII, as scanning the raw bytes of a plain file requires.
+     */
+    boolean isSingleByte() {
+        return delimiter <= 0x7F && quote <= 0x7F && escape <= 0x7F;
+    }
+
+    boolean hasEscape() {
+        return escape != NO_ESCAPE && escape != quote;
+    }
+
+    /**
+     * The character an escape sequence stands for.
+     */
+    static byte unescape(byte escaped) {
+        return switch (escaped) {
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case 'b' -> '\b';
+            case 'f' -> '\f';
+            default -> escaped;
+        };
+    }
+}
@@ -1,88 +1,91 @@
 package com.clickhouse.service;
 
 import com.clickhouse.client.ClickHouseClient;
+import com.clickhouse.client.ClickHouseCursor;
 import com.clickhouse.client.ClickHouseNode;
 import com.clickhouse.client.ClickHouseRecord;
-import com.clickhouse.client.ClickHouseResponse;
-import com.clickhouse.client.ClickHouseValue;
 import com.clickhouse.model.ClickHouseConnection;
 import com.clickhouse.model.ColumnSelection;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.FileReader;
-import java.io.Reader;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Logger;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class DataPreviewService {
-    private static final Logger logger = Logger.getLogger(DataPreviewService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(DataPreviewService.class);
+    private static final int PREVIEW_ROWS = 100;
 
-    public List<List<String>> previewClickHouseData(ClickHouseConnection config, String table, 
-                                                  ColumnSelection columns) throws Exception {
-        logger.info("Previewing ClickHouse data for table: " + table);
-        logger.info("Columns: " + columns.getColumns());
-        try (ClickHouseClient client = createClient(config)) {
-            String query = String.format("SELECT %s FROM %s LIMIT 100", 
-                String.join(", ", columns.getColumns()), 
-                table);
-            logger.info("Executing query: " + query);
-            ClickHouseResponse response = client.query(query).executeAndWait();
-            
-            List<List<String>> previewData = new ArrayList<>();
-            for (ClickHouseRecord record : response.records()) {
-                List<String> row = new ArrayList<>();
-                for (int i = 0; i < columns.getColumns().size(); i++) {
-                    row.add(record.get(i).asString());
-                }
-                previewData.add(row);
+    @Autowired
+    private ClickHouseService clickHouseService;
+
+    /**
+     * Fetches up to {@value #PREVIEW_ROWS} rows without holding a request thread while ClickHouse answers.
+     * Cancelling the returned future cancels the query.
+     */
+    public CompletableFuture<List<List<String>>> previewClickHouseData(ClickHouseConnection config, String table,
+                                                                       ColumnSelection columns) {
+        logger.debug("Previewing ClickHouse table {} columns {}", table, columns.getColumns());
+        // The filter is pushed down; its LIMIT is capped to the preview size
+        String query = QueryFilters.select(columns.getColumns(), table, null, columns.getFilter(),
+            null, PREVIEW_ROWS);
+        CompletableFuture<List<List<String>>> preview = clickHouseService.queryAsync(config, "preview", query);
+        preview.whenComplete((rows, error) -> {
+            if (error != null) {
+                logger.error("Error previewing ClickHouse table {}: {}", table, error.getMessage());
+            } else {
+                logger.debug("Retrieved {} preview records from {}", rows.size(), table);
             }
-            logger.info("Retrieved " + previewData.size() + " records");
-            return previewData;
-        } catch (Exception e) {
-            logger.severe("Error previewing ClickHouse data: " + e.getMessage());
-            e.printStackTrace();
-            throw new Exception("Failed to preview data: " + e.getMessage());
-        }
+        });
+        return preview;
     }
 
     public List<Map<String, String>> previewFileData(String filePath, String delimiter, List<String> columns) throws Exception {
-        try (Reader reader = new FileReader(filePath)) {
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.builder()
-                .setDelimiter(delimiter.charAt(0))
-                .setHeader()
-                .setTrim(true)  // Remove extra spaces
-                .build()
-                .parse(reader);
+        if (ParquetFooter.isParquet(Paths.get(filePath))) {
+            throw new Exception("Preview is not supported for Parquet files");
+        }
+        try (RecordCursor scanner = RecordCursor.open(Paths.get(filePath), delimiter.charAt(0))) {
+            if (!scanner.next()) {
+                throw new Exception("File is empty");
+            }
+            List<String> headerNames = new ArrayList<>();
+            for (int i = 0; i < scanner.fieldCount(); i++) {
+                headerNames.add(scanner.field(i).trim());  // Remove extra spaces
+            }
+            
+            int[] fieldIndexes = new int[columns.size()];
+            for (int i = 0; i < fieldIndexes.length; i++) {
+                fieldIndexes[i] = headerNames.indexOf(columns.get(i));
+                if (fieldIndexes[i] < 0) {
+                    throw new Exception("Column not found: " + columns.get(i) + ". Available columns: " + headerNames);
+                }
+            }
             
             List<Map<String, String>> previewData = new ArrayList<>();
             int count = 0;
             
-            for (CSVRecord record : records) {
-                if (count >= 100) break;
-                
+            while (count < PREVIEW_ROWS && scanner.next()) {
+                // Only the requested fields are decoded
                 Map<String, String> row = new HashMap<>();
-                for (String column : columns) {
-                    try {
-                        row.put(column, record.get(column).trim());
-                    } catch (IllegalArgumentException e) {
-                        logger.severe("Column not found: " + column + ". Available columns: " + record.getHeaderNames());
-                        throw new Exception("Column not found: " + column + ". Available columns: " + record.getHeaderNames());
-                    }
+                for (int i = 0; i < fieldIndexes.length; i++) {
+                    String value = fieldIndexes[i] < scanner.fieldCount() ? scanner.field(fieldIndexes[i]).trim() : "";
+                    row.put(columns.get(i), value);
                 }
                 previewData.add(row);
                 count++;
             }
             
-            logger.info("Successfully previewed " + count + " records from file");
+            logger.debug("Previewed {} records from {}", count, filePath);
             return previewData;
         } catch (Exception e) {
-            logger.severe("Error previewing file data: " + e.getMessage());
+            logger.warn("Error previewing file {}: {}", filePath, e.getMessage());
             throw new Exception("Failed to preview file data: " + e.getMessage());
         }
     }
@@ -93,31 +96,23 @@ public class DataPreviewService {
             String columnList = columns.isEmpty() ? "*" : String.join(", ", columns);
             String sql = String.format("SELECT %s FROM %s LIMIT 100", columnList, tableName);
             
-            ClickHouseResponse response = client.query(sql).executeAndWait();
-            for (ClickHouseRecord record : response.records()) {
-                Map<String, Object> row = new HashMap<>();
-                List<String> columnNames = record.getColumnNames();
-                for (int i = 0; i < columnNames.size(); i++) {
-                    row.put(columnNames.get(i), record.getValue(i));
+            try (ClickHouseCursor cursor = client.query(sql).fetchSize(PREVIEW_ROWS).execute()) {
+                List<String> columnNames = cursor.getColumnNames();
+                for (ClickHouseRecord record : cursor) {
+                    Map<String, Object> row = new HashMap<>();
+                    for (int i = 0; i < columnNames.size(); i++) {
+                        row.put(columnNames.get(i), record.get(i).asString());
+                    }
+                    preview.add(row);
                 }
-                preview.add(row);
             }
         } catch (Exception e) {
-            logger.severe("Error previewing ClickHouse data: " + e.getMessage());
+            logger.error("Error previewing ClickHouse table {}", tableName, e);
             throw new RuntimeException("Failed to preview data", e);
         }
         return preview;
     }
 
-    private ClickHouseClient createClient(ClickHouseConnection config) {
-        return ClickHouseClient.builder()
-            .node(ClickHouseNode.of(config.getHost(), Map.of("port", String.valueOf(config.getPort()))))
-            .database(config.getDatabase())
-            .username(config.getUser())
-            .password(config.getJwtToken())
-            .build();
-    }
-
     private ClickHouseClient createClient() {
         return ClickHouseClient.builder()
             .node(ClickHouseNode.of("localhost", Map.of("port", "8123")))
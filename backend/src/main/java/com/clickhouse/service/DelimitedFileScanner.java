@@ -0,0 +1,345 @@
+package com.clickhouse.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Cursor over the records of a delimited text file, backed by memory-mapped windows of the file.
+ * Delimiters, quotes and line breaks are located on the raw bytes; a field is only decoded to a
+ * {@link String} when {@link #field(int)} is called for it, so reading a few columns of a wide file
+ * does not pay for decoding the rest. Quoting follows the file's {@link CsvDialect}.
+ */
+final class DelimitedFileScanner implements RecordCursor {
+    private static final long WINDOW_SIZE = 64L << 20;
+    // Largest window FileChannel.map accepts
+    private static final long MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    // Field flags: doubled quotes and escape sequences left to collapse on decoding
+    private static final byte QUOTES_DOUBLED = 1;
+    private static final byte ESCAPES = 2;
+
+    private final FileChannel channel;
+    private final byte delimiter;
+    private final byte quote;
+    private final boolean hasEscape;
+    private final byte escape;
+    private final long end;
+    private final long maxWindowSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+    private long windowSize;
+
+    private long position;
+    private long recordStart;
+    private long recordEnd;
+    private long lineNumber;
+    private long nextLineNumber = 1;
+
+    private int fieldCount;
+    private boolean blankLine;
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private byte[] fieldFlags = new byte[16];
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Opens a scanner over the whole file, skipping a UTF-8 byte order mark if present.
+     */
+    DelimitedFileScanner(Path path, char delimiter) throws IOException {
+        this(path, CsvDialect.rfc4180(delimiter), 0, -1);
+    }
+
+    DelimitedFileScanner(Path path, char delimiter, long start, long end) throws IOException {
+        this(path, CsvDialect.rfc4180(delimiter), start, end);
+    }
+
+    /**
+     * Opens a scanner over the byte range {@code [start, end)}, which must begin on a record boundary.
+     * An {@code end} of -1 means the end of the file.
+     */
+    DelimitedFileScanner(Path path, CsvDialect dialect, long start, long end) throws IOException {
+        this(path, dialect, start, end, MAX_WINDOW_SIZE);
+    }
+
+    /**
+     * As {@link #DelimitedFileScanner(Path, CsvDialect, long, long)}, failing on records longer than
+     * {@code maxWindowSize} bytes.
+     */
+    DelimitedFileScanner(Path path, CsvDialect dialect, long start, long end, long maxWindowSize)
+            throws IOException {
+        if (!dialect.isSingleByte()) {
+            throw new IllegalArgumentException("Only single-byte delimiter, quote and escape characters are supported: "
+                + dialect);
+        }
+        this.delimiter = (byte) dialect.delimiter();
+        this.quote = (byte) dialect.quote();
+        this.hasEscape = dialect.hasEscape();
+        this.escape = (byte) dialect.escape();
+        this.maxWindowSize = Math.min(maxWindowSize, MAX_WINDOW_SIZE);
+        this.windowSize = Math.min(WINDOW_SIZE, this.maxWindowSize);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = end < 0 ? channel.size() : Math.min(end, channel.size());
+        this.position = start;
+        if (start == 0 && this.end >= 3) {
+            map(0);
+            if (byteAt(0) == (byte) 0xEF && byteAt(1) == (byte) 0xBB && byteAt(2) == (byte) 0xBF) {
+                position = 3;
+            }
+        }
+    }
+
+    /**
+     * Advances to the next non-empty record.
+     *
+     * @return false at the end of the range
+     */
+    @Override
+    public boolean next() throws IOException {
+        while (position < end) {
+            if (!scanRecord()) {
+                // Record crosses the mapped window: remap starting at the record and retry
+                if (recordStart == windowStart) {
+                    if (windowSize >= maxWindowSize) {
+                        throw new IOException(String.format(
+                            "Record on line %d at byte %d is longer than %d bytes, check for an unterminated quote",
+                            lineNumber, recordStart, maxWindowSize));
+                    }
+                    windowSize = Math.min(windowSize * 2, maxWindowSize);
+                }
+                map(recordStart);
+                position = recordStart;
+                continue;
+            }
+            if (blankLine) {
+                continue;
+            }
+            return true;
+        }
+        fieldCount = 0;
+        return false;
+    }
+
+    @Override
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    @Override
+    public String field(int index) {
+        if (index >= fieldCount) {
+            throw new IllegalArgumentException(String.format(
+                "Line %d has %d fields, field %d requested", lineNumber, fieldCount, index + 1));
+        }
+        int start = fieldStarts[index];
+        int length = fieldEnds[index] - start;
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        window.get(start, scratch, 0, length);
+        byte flags = fieldFlags[index];
+        if (flags != 0) {
+            // Collapse doubled quotes inside a quoted field and escape sequences
+            int out = 0;
+            for (int i = 0; i < length; i++) {
+                byte b = scratch[i];
+                if ((flags & ESCAPES) != 0 && b == escape && i + 1 < length) {
+                    scratch[out++] = CsvDialect.unescape(scratch[++i]);
+                    continue;
+                }
+                scratch[out++] = b;
+                if ((flags & QUOTES_DOUBLED) != 0 && b == quote) {
+                    i++;
+                }
+            }
+            length = out;
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long lineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public long recordStart() {
+        return recordStart;
+    }
+
+    @Override
+    public long position() {
+        return recordEnd;
+    }
+
+    /**
+     * Scans one record starting at {@link #position}.
+     *
+     * @return false if the record runs past the mapped window before the range ends
+     */
+    private boolean scanRecord() throws IOException {
+        if (window == null || position < windowStart || position >= windowStart + windowLimit) {
+            map(position);
+        }
+        recordStart = position;
+        lineNumber = nextLineNumber;
+        long lines = 0;
+        fieldCount = 0;
+        int limit = (int) Math.min(windowLimit, end - windowStart);
+        boolean atRangeEnd = windowStart + limit == end;
+        int i = (int) (position - windowStart);
+
+        while (true) {
+            int fieldStart = i;
+            int fieldEnd;
+            byte flags = 0;
+            if (i < limit && window.get(i) == quote) {
+                fieldStart = ++i;
+                while (true) {
+                    if (i >= limit) {
+                        if (atRangeEnd) {
+                            throw new IOException("Unterminated quoted field starting on line " + lineNumber);
+                        }
+                        return false;
+                    }
+                    byte b = window.get(i);
+                    if (hasEscape && b == escape) {
+                        if (i + 1 >= limit) {
+                            if (atRangeEnd) {
+                                throw new IOException("Unterminated quoted field starting on line " + lineNumber);
+                            }
+                            return false;
+                        }
+                        if (window.get(i + 1) == '\n') {
+                            lines++;
+                        }
+                        flags |= ESCAPES;
+                        i += 2;
+                        continue;
+                    }
+                    if (b == quote) {
+                        if (i + 1 < limit && window.get(i + 1) == quote) {
+                            flags |= QUOTES_DOUBLED;
+                            i += 2;
+                            continue;
+                        }
+                        if (i + 1 >= limit && !atRangeEnd) {
+                            return false;
+                        }
+                        break;
+                    }
+                    if (b == '\n') {
+                        lines++;
+                    }
+                    i++;
+                }
+                fieldEnd = i++;
+                if (i < limit) {
+                    byte b = window.get(i);
+                    if (b != delimiter && b != '\n' && b != '\r') {
+                        throw new IOException(String.format(
+                            "Invalid character after closing quote on line %d", lineNumber + lines));
+                    }
+                }
+            } else {
+                while (i < limit) {
+                    byte b = window.get(i);
+                    if (b == delimiter || b == '\n' || b == '\r') {
+                        break;
+                    }
+                    if (hasEscape && b == escape) {
+                        if (i + 1 < limit) {
+                            if (window.get(i + 1) == '\n') {
+                                lines++;
+                            }
+                            flags |= ESCAPES;
+                            i += 2;
+                            continue;
+                        }
+                        if (!atRangeEnd) {
+                            return false;
+                        }
+                    }
+                    i++;
+                }
+                if (i >= limit && !atRangeEnd) {
+                    return false;
+                }
+                fieldEnd = i;
+            }
+            addField(fieldStart, fieldEnd, flags);
+
+            if (i >= limit) {
+                break;
+            }
+            byte b = window.get(i);
+            if (b == delimiter) {
+                i++;
+                if (i >= limit && !atRangeEnd) {
+                    return false;
+                }
+                if (i >= limit) {
+                    addField(i, i, (byte) 0);
+                    break;
+                }
+                continue;
+            }
+            // Line break: \n, \r or \r\n
+            if (b == '\r') {
+                if (i + 1 >= limit && !atRangeEnd) {
+                    return false;
+                }
+                if (i + 1 < limit && window.get(i + 1) == '\n') {
+                    i++;
+                }
+            }
+            i++;
+            lines++;
+            break;
+        }
+        // A single empty, unquoted field is an empty line
+        int first = (int) (recordStart - windowStart);
+        blankLine = fieldCount == 1 && fieldStarts[0] == first && fieldEnds[0] == first;
+        position = windowStart + i;
+        recordEnd = position;
+        nextLineNumber = lineNumber + lines;
+        return true;
+    }
+
+    private void addField(int start, int end, byte flags) {
+        if (fieldCount == fieldStarts.length) {
+            int size = fieldCount * 2;
+            fieldStarts = Arrays.copyOf(fieldStarts, size);
+            fieldEnds = Arrays.copyOf(fieldEnds, size);
+            fieldFlags = Arrays.copyOf(fieldFlags, size);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldFlags[fieldCount] = flags;
+        fieldCount++;
+    }
+
+    private byte byteAt(int index) {
+        return window.get(index);
+    }
+
+    private void map(long start) throws IOException {
+        long size = Math.min(windowSize, end - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowLimit = (int) size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
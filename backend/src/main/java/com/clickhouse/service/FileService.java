@@ -1,28 +1,49 @@
 package com.clickhouse.service;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
+import com.clickhouse.config.ValidationReportConfig;
+import com.clickhouse.model.ColumnStats;
+import com.clickhouse.model.CompressionCodec;
+import com.clickhouse.model.FileValidationReport;
+import com.clickhouse.model.TableSchema;
+import com.clickhouse.model.ValidationMode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.Reader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.logging.Logger;
 
 @Service
 public class FileService {
-    private static final Logger logger = Logger.getLogger(FileService.class.getName());
-    private static final String UPLOAD_DIR = "uploads";
+    private static final Logger logger = LoggerFactory.getLogger(FileService.class);
+    static final String UPLOAD_DIR = "uploads";
+    private static final long SAMPLE_HEAD_BYTES = 64L << 20;
+    private static final long SAMPLE_TAIL_BYTES = 8L << 20;
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+    private static final int MAX_LOW_CARDINALITY_KEYS = 2;
 
-    public FileService() {
+    // Bounded, since reports of files that are never imported or deleted would otherwise pile up
+    private final Cache<String, FileValidationReport> reports;
+
+    public FileService(ValidationReportConfig properties) {
+        this.reports = Caffeine.newBuilder()
+            .expireAfterAccess(properties.getExpireAfterAccess())
+            .maximumSize(properties.getMaximumSize())
+            .build();
         createUploadDirectory();
     }
 
@@ -30,7 +51,7 @@ public class FileService {
         try {
             Files.createDirectories(Paths.get(UPLOAD_DIR));
         } catch (IOException e) {
-            logger.severe("Could not create upload directory: " + e.getMessage());
+            logger.error("Could not create upload directory {}: {}", UPLOAD_DIR, e.getMessage());
         }
     }
 
@@ -55,42 +76,233 @@ public class FileService {
 
             return destinationFile.toString();
         } catch (IOException e) {
-            logger.severe("Error saving uploaded file: " + e.getMessage());
+            logger.error("Error saving uploaded file: {}", e.getMessage());
             throw new Exception("Failed to store file: " + e.getMessage());
         }
     }
 
     public List<String> getFileHeaders(String filePath, String delimiter) throws Exception {
-        try (FileReader reader = new FileReader(filePath);
-             CSVParser parser = CSVFormat.DEFAULT.builder()
-                 .setDelimiter(delimiter.charAt(0))
-                 .setHeader()
-                 .build()
-                 .parse(reader)) {
-            
-            return new ArrayList<>(parser.getHeaderNames());
+        Path path = Paths.get(filePath);
+        if (ParquetFooter.isParquet(path)) {
+            try {
+                return new ArrayList<>(ParquetFooter.read(path).columnNames());
+            } catch (IOException e) {
+                logger.warn("Error reading Parquet schema of {}: {}", filePath, e.getMessage());
+                throw new Exception("Failed to read file headers: " + e.getMessage());
+            }
+        }
+        try (RecordCursor scanner = RecordCursor.open(path, delimiter.charAt(0))) {
+            if (!scanner.next()) {
+                return new ArrayList<>();
+            }
+            return new ArrayList<>(Arrays.asList(scanner.fields()));
         } catch (IOException e) {
-            logger.severe("Error reading file headers: " + e.getMessage());
+            logger.warn("Error reading headers of {}: {}", filePath, e.getMessage());
             throw new Exception("Failed to read file headers: " + e.getMessage());
         }
     }
 
     public void deleteFile(String filePath) {
         try {
+            reports.invalidate(filePath);
             Files.deleteIfExists(Paths.get(filePath));
         } catch (IOException e) {
-            logger.warning("Error deleting file: " + e.getMessage());
+            logger.warn("Error deleting file {}: {}", filePath, e.getMessage());
         }
     }
 
     public void validateFileFormat(String filePath, String delimiter) throws IOException {
-        try (FileReader fileReader = new FileReader(filePath);
-             CSVParser csvParser = CSVFormat.DEFAULT.builder()
-                 .setDelimiter(delimiter.charAt(0))
-                 .build()
-                 .parse(fileReader)) {
-            // Just try to parse the file to validate its format
-            csvParser.getRecords();
+        validateFileFormat(filePath, delimiter, ValidationMode.FULL);
+    }
+
+    /**
+     * Checks the structure of the file in one streaming pass and collects per-column statistics.
+     * In {@link ValidationMode#SAMPLE} mode only the head and tail of large files are scanned;
+     * compressed files cannot be read from the middle, so only their head is sampled.
+     * Parquet files are described from their footer, typed by the Parquet schema.
+     * The report is kept for later use by the import and returned by {@link #getValidationReport}.
+     */
+    public FileValidationReport validateFileFormat(String filePath, String delimiter, ValidationMode mode)
+            throws IOException {
+        Path path = Paths.get(filePath);
+        if (ParquetFooter.isParquet(path)) {
+            FileValidationReport report = describeParquet(filePath, path, mode);
+            reports.put(filePath, report);
+            return report;
+        }
+        long fileSize = Files.size(path);
+        boolean sample = mode == ValidationMode.SAMPLE && fileSize > SAMPLE_HEAD_BYTES + SAMPLE_TAIL_BYTES;
+        boolean compressed = RecordCursor.detectCompression(path) != CompressionCodec.NONE;
+
+        FileValidationReport report = new FileValidationReport();
+        report.setFilePath(filePath);
+        report.setMode(mode);
+        report.setFileSize(fileSize);
+
+        List<ColumnProfile> profiles = new ArrayList<>();
+        try (RecordCursor scanner = RecordCursor.open(path, delimiter.charAt(0))) {
+            if (scanner.next()) {
+                for (String name : scanner.fields()) {
+                    profiles.add(new ColumnProfile(name));
+                }
+                long headLimit = sample ? SAMPLE_HEAD_BYTES : Long.MAX_VALUE;
+                while (scanner.position() < headLimit && scanner.next()) {
+                    observeRecord(scanner, profiles, report, scanner.lineNumber());
+                }
+            }
+            report.setBytesScanned(sample ? scanner.position() : fileSize);
+        }
+
+        if (sample && !compressed) {
+            long tailStart = nextLineStart(path, fileSize - SAMPLE_TAIL_BYTES);
+            int headMismatches = report.getMismatches().size();
+            try (DelimitedFileScanner scanner = new DelimitedFileScanner(path, delimiter.charAt(0), tailStart, -1)) {
+                while (scanner.next()) {
+                    // Numbered from the start of the tail until the lines before it are counted
+                    observeRecord(scanner, profiles, report, scanner.lineNumber());
+                }
+            } catch (IOException e) {
+                // The tail may start inside a multi-line quoted field; what was scanned is still a valid sample
+                logger.debug("Stopped scanning sampled tail of {}: {}", filePath, e.getMessage());
+            }
+            List<FileValidationReport.ColumnCountMismatch> tailMismatches =
+                report.getMismatches().subList(headMismatches, report.getMismatches().size());
+            if (!tailMismatches.isEmpty()) {
+                // Only paid for when the tail has something to report
+                long linesBefore = countLineBreaks(path, tailStart);
+                for (FileValidationReport.ColumnCountMismatch mismatch : tailMismatches) {
+                    mismatch.setLineNumber(linesBefore + mismatch.getLineNumber());
+                }
+            }
+            report.setBytesScanned(report.getBytesScanned() + fileSize - tailStart);
+        }
+
+        report.setColumnCount(profiles.size());
+        for (ColumnProfile profile : profiles) {
+            report.getColumns().add(profile.toStats());
+        }
+        reports.put(filePath, report);
+        return report;
+    }
+
+    private FileValidationReport describeParquet(String filePath, Path path, ValidationMode mode) throws IOException {
+        ParquetFooter footer = ParquetFooter.read(path);
+        FileValidationReport report = new FileValidationReport();
+        report.setFilePath(filePath);
+        report.setMode(mode);
+        report.setFileSize(Files.size(path));
+        report.setBytesScanned(footer.footerSize());
+        report.setRecordCount(footer.rowCount());
+        report.setColumnCount(footer.columns().size());
+        for (ParquetFooter.Column column : footer.columns()) {
+            ColumnStats stats = new ColumnStats();
+            stats.setName(column.name());
+            stats.setInferredType(column.clickHouseType());
+            report.getColumns().add(stats);
+        }
+        return report;
+    }
+
+    public FileValidationReport getValidationReport(String filePath) {
+        return reports.getIfPresent(filePath);
+    }
+
+    /**
+     * Proposes ClickHouse column types and a sorting key for the selected columns, based on the
+     * statistics collected by validation. Files that were not validated yet are sampled first.
+     */
+    public TableSchema inferSchema(String filePath, String delimiter, List<String> columns) throws IOException {
+        FileValidationReport report = reports.getIfPresent(filePath);
+        if (report == null) {
+            report = validateFileFormat(filePath, delimiter, ValidationMode.SAMPLE);
+        }
+        Map<String, ColumnStats> statsByName = new HashMap<>();
+        for (ColumnStats stats : report.getColumns()) {
+            statsByName.put(stats.getName(), stats);
+        }
+
+        TableSchema schema = new TableSchema();
+        List<String> lowCardinalityKeys = new ArrayList<>();
+        String timeKey = null;
+        for (String column : columns) {
+            ColumnStats stats = statsByName.get(column);
+            String type = stats != null ? stats.getInferredType() : "String";
+            schema.getColumnTypes().put(column, type);
+            // Nullable columns cannot be part of the sorting key
+            if (type.equals("LowCardinality(String)") && lowCardinalityKeys.size() < MAX_LOW_CARDINALITY_KEYS) {
+                lowCardinalityKeys.add(column);
+            } else if (timeKey == null && (type.equals("Date") || type.startsWith("DateTime"))) {
+                timeKey = column;
+            }
+        }
+        // Coarse, low-cardinality columns first, then time, so ranges on either prune granules
+        List<String> orderBy = new ArrayList<>(lowCardinalityKeys);
+        if (timeKey != null) {
+            orderBy.add(timeKey);
+        }
+        if (!orderBy.isEmpty()) {
+            schema.setOrderBy("(" + String.join(", ", orderBy) + ")");
+        }
+        return schema;
+    }
+
+    private void observeRecord(RecordCursor scanner, List<ColumnProfile> profiles,
+                               FileValidationReport report, long lineNumber) {
+        report.setRecordCount(report.getRecordCount() + 1);
+        int fieldCount = scanner.fieldCount();
+        if (fieldCount != profiles.size()) {
+            report.setMismatchCount(report.getMismatchCount() + 1);
+            if (report.getMismatches().size() < MAX_REPORTED_MISMATCHES) {
+                report.getMismatches().add(new FileValidationReport.ColumnCountMismatch(
+                    lineNumber, scanner.recordStart(), fieldCount));
+            }
+        }
+        for (int i = 0; i < Math.min(fieldCount, profiles.size()); i++) {
+            profiles.get(i).observe(scanner.field(i));
+        }
+    }
+
+    private long nextLineStart(Path path, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            long position = offset;
+            while (channel.read(buffer.clear(), position) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position++;
+                    if (buffer.get() == '\n') {
+                        return position;
+                    }
+                }
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Counts the {@code \n} bytes before {@code end}, which is the number of lines before it when
+     * {@code end} starts a line.
+     */
+    private static long countLineBreaks(Path path, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            long position = 0;
+            long lines = 0;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] == '\n') {
+                        lines++;
+                    }
+                }
+                position += read;
+            }
+            return lines;
         }
     }
-} 
\ No newline at end of file
+}
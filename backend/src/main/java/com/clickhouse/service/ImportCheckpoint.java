@@ -0,0 +1,183 @@
+package com.clickhouse.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Tracks which ranges of a source file an import has committed, and names each batch with a deduplication
+ * token derived from the file and the batch's range. Ranges are byte offsets for plain files and record
+ * ordinals for compressed ones, whose byte offsets are only accurate to the read buffer; either way they
+ * identify a batch exactly, and committing a range that overlaps one committed before is an error. Batches
+ * inserted in parallel finish out of order, so only the committed prefix of the file is recorded; on resume,
+ * batches committed past it are sent again with the same tokens and dropped by the server. When a checkpoint
+ * file is given, the prefix is saved to it after every advance, and a later import of the same, unchanged
+ * file into the same table starts where it ended.
+ */
+final class ImportCheckpoint {
+    private static final Logger logger = LoggerFactory.getLogger(ImportCheckpoint.class);
+
+    private final Path file;
+    private final String sourceId;
+    private final String table;
+    // Batch size and parse parallelism, which decide where batches are cut and so their tokens
+    private final String layout;
+    // Start of each committed range past the prefix, to its {end, rows}
+    private final TreeMap<Long, long[]> committedAhead = new TreeMap<>();
+    private long committedOffset = -1;
+    private long committedRows;
+    private boolean resumed;
+
+    private ImportCheckpoint(Path file, String sourceId, String table, String layout) {
+        this.file = file;
+        this.sourceId = sourceId;
+        this.table = table;
+        this.layout = layout;
+    }
+
+    /**
+     * Opens the checkpoint of importing {@code source} into {@code table}, resuming from {@code file} if it
+     * was written for the same file contents and table.
+     *
+     * @param file where the committed prefix is saved, or {@code null} to keep it in memory only
+     * @throws IllegalStateException if the checkpoint was written with a different batch size or parse
+     *         parallelism: batches would be cut differently, and rows already committed sent again under
+     *         new tokens
+     */
+    static ImportCheckpoint open(Path file, Path source, String table, int batchSize,
+                                 int parseParallelism) throws IOException {
+        // The identity changes when the file is replaced or modified, which invalidates both offsets and tokens
+        String identity = source.toAbsolutePath().normalize() + "|" + Files.size(source) + "|"
+            + Files.getLastModifiedTime(source).toMillis();
+        String sourceId = UUID.nameUUIDFromBytes(identity.getBytes(StandardCharsets.UTF_8)).toString();
+        String layout = batchSize + "/" + parseParallelism;
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, sourceId, table, layout);
+        if (file == null || !Files.exists(file)) {
+            return checkpoint;
+        }
+
+        Properties saved = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            saved.load(reader);
+        }
+        if (!sourceId.equals(saved.getProperty("source")) || !table.equals(saved.getProperty("table"))) {
+            logger.warn("Ignoring checkpoint {}: it was written for a different file or table", file);
+            return checkpoint;
+        }
+        if (!layout.equals(saved.getProperty("layout"))) {
+            throw new IllegalStateException(String.format(
+                "Checkpoint %s was written with batch size/parse parallelism %s, not %s; resume with the same "
+                    + "settings or delete the checkpoint and truncate the table", file, saved.getProperty("layout"),
+                layout));
+        }
+        try {
+            checkpoint.committedOffset = Long.parseLong(saved.getProperty("committedOffset"));
+            checkpoint.committedRows = Long.parseLong(saved.getProperty("committedRows"));
+            checkpoint.resumed = true;
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring unreadable checkpoint {}: {}", file, e.getMessage());
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Sets where the data starts, unless the import is resumed, in which case it continues from the
+     * saved offset.
+     */
+    synchronized void begin(long dataStart) {
+        if (!resumed) {
+            committedOffset = dataStart;
+            committedRows = 0;
+        }
+    }
+
+    synchronized boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * Offset up to which every record has been committed.
+     */
+    synchronized long committedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * Number of records before {@link #committedOffset()}.
+     */
+    synchronized long committedRows() {
+        return committedRows;
+    }
+
+    /**
+     * A token that is the same for the same batch of the same file on every attempt and every run.
+     */
+    String deduplicationToken(long start, long end) {
+        return sourceId + "-" + start + "-" + end;
+    }
+
+    /**
+     * Records the range {@code [start, end)} holding {@code rows} records as committed, saving the
+     * checkpoint if the committed prefix grew.
+     *
+     * @throws IllegalStateException if the range overlaps one already committed, which means two batches
+     *         were given the same token and the server dropped one of them
+     */
+    synchronized void commit(long start, long end, long rows) throws IOException {
+        Map.Entry<Long, long[]> before = committedAhead.floorEntry(start);
+        Long after = committedAhead.higherKey(start);
+        if (start >= end || start < committedOffset || (before != null && before.getValue()[0] > start)
+                || (after != null && after < end)) {
+            throw new IllegalStateException(String.format(
+                "Batch range [%d, %d) overlaps a committed range; committed prefix ends at %d",
+                start, end, committedOffset));
+        }
+        committedAhead.put(start, new long[] {end, rows});
+        boolean advanced = false;
+        Map.Entry<Long, long[]> next;
+        while ((next = committedAhead.firstEntry()) != null && next.getKey() <= committedOffset) {
+            committedAhead.pollFirstEntry();
+            committedOffset = next.getValue()[0];
+            committedRows += next.getValue()[1];
+            advanced = true;
+        }
+        if (advanced && file != null) {
+            save();
+        }
+    }
+
+    /**
+     * Removes the checkpoint file once the whole file has been imported.
+     */
+    void complete() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void save() throws IOException {
+        Properties state = new Properties();
+        state.setProperty("source", sourceId);
+        state.setProperty("table", table);
+        state.setProperty("layout", layout);
+        state.setProperty("committedOffset", Long.toString(committedOffset));
+        state.setProperty("committedRows", Long.toString(committedRows));
+        // Written aside and moved into place, so a crash never leaves a torn checkpoint
+        Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(partial, StandardCharsets.UTF_8)) {
+            state.store(writer, null);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,238 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.IngestionConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs ingestion jobs on a fixed set of worker threads instead of one thread per request.
+ * Waiting jobs are ordered by priority, then submission order, and a job is only started while
+ * its ClickHouse host is below the per-host limit, so one busy server cannot take every worker.
+ * Submissions beyond the queue bound are rejected rather than buffered.
+ */
+@Service
+public class IngestionJobScheduler implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobScheduler.class);
+
+    @FunctionalInterface
+    public interface Job {
+        void run() throws Exception;
+    }
+
+    private static final class ScheduledJob {
+        final String taskId;
+        final String hostKey;
+        final int priority;
+        final long sequence;
+        final Job job;
+        Thread runner;
+        volatile boolean cancelled;
+
+        ScheduledJob(String taskId, String hostKey, int priority, long sequence, Job job) {
+            this.taskId = taskId;
+            this.hostKey = hostKey;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+        }
+    }
+
+    private final IngestionConfig properties;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final TreeSet<ScheduledJob> queue = new TreeSet<>(
+        Comparator.<ScheduledJob>comparingInt(job -> -job.priority).thenComparingLong(job -> job.sequence));
+    private final Map<String, ScheduledJob> jobs = new HashMap<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread[] workers;
+    private volatile boolean shutdown;
+
+    public IngestionJobScheduler(IngestionConfig properties) {
+        this.properties = properties;
+        this.workers = new Thread[Math.max(1, properties.getMaxConcurrentJobs())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::work, "ingestion-job-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues a job for execution. Higher priorities start first.
+     *
+     * @throws RejectedExecutionException if the queue is full or a job with this id already exists
+     */
+    public void submit(String taskId, String hostKey, int priority, Job job) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("Scheduler is shut down");
+            }
+            if (queue.size() >= properties.getMaxQueuedJobs()) {
+                throw new RejectedExecutionException(
+                    "Job queue is full (" + properties.getMaxQueuedJobs() + " waiting)");
+            }
+            if (jobs.containsKey(taskId)) {
+                throw new RejectedExecutionException("Job already exists: " + taskId);
+            }
+            ScheduledJob scheduled = new ScheduledJob(taskId, hostKey, priority, sequence.incrementAndGet(), job);
+            jobs.put(taskId, scheduled);
+            queue.add(scheduled);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a waiting job from the queue, or interrupts it if it is already running.
+     *
+     * @return false if no such job is queued or running
+     */
+    public boolean cancel(String taskId) {
+        lock.lock();
+        try {
+            ScheduledJob job = jobs.get(taskId);
+            if (job == null) {
+                return false;
+            }
+            job.cancelled = true;
+            if (job.runner != null) {
+                job.runner.interrupt();
+            } else {
+                queue.remove(job);
+                jobs.remove(taskId);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Whether {@link #cancel} was called for a job that is still queued or running. A job whose work
+     * fails after being interrupted should be reported as cancelled rather than failed.
+     */
+    public boolean isCancelled(String taskId) {
+        lock.lock();
+        try {
+            ScheduledJob job = jobs.get(taskId);
+            return job != null && job.cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queuedJobs() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int runningJobs() {
+        lock.lock();
+        try {
+            return jobs.size() - queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ingestion.jobs.queued", this, IngestionJobScheduler::queuedJobs)
+            .description("Jobs waiting for a worker")
+            .register(registry);
+        Gauge.builder("ingestion.jobs.active", this, IngestionJobScheduler::runningJobs)
+            .description("Jobs currently running")
+            .register(registry);
+    }
+
+    private void work() {
+        while (!shutdown) {
+            ScheduledJob job;
+            try {
+                job = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                job.job.run();
+            } catch (Exception e) {
+                if (job.cancelled) {
+                    logger.info("Ingestion job {} cancelled", job.taskId);
+                } else {
+                    logger.warn("Ingestion job {} failed", job.taskId, e);
+                }
+            } finally {
+                finish(job);
+                // Do not let a cancellation interrupt leak into the next job
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Waits for the highest priority job whose host is below its concurrency limit.
+     */
+    private ScheduledJob take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Iterator<ScheduledJob> waiting = queue.iterator();
+                while (waiting.hasNext()) {
+                    ScheduledJob job = waiting.next();
+                    if (runningPerHost.getOrDefault(job.hostKey, 0) < properties.getMaxJobsPerHost()) {
+                        waiting.remove();
+                        runningPerHost.merge(job.hostKey, 1, Integer::sum);
+                        job.runner = Thread.currentThread();
+                        return job;
+                    }
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void finish(ScheduledJob job) {
+        lock.lock();
+        try {
+            job.runner = null;
+            jobs.remove(job.taskId);
+            runningPerHost.computeIfPresent(job.hostKey, (host, running) -> running > 1 ? running - 1 : null);
+            // A slot freed up for this host
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.ClickHouseConnection;
+import com.clickhouse.model.CompressionCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the ClickHouse round trips and the CSV hot loops. Latency timers publish
+ * percentile histograms so p99 can be computed server-side in Prometheus. Meters for
+ * ClickHouse traffic are tagged with the endpoint as {@code host:port}; CSV parsing is
+ * host-independent and carries no host tag.
+ */
+@Component
+public class IngestionMetrics {
+    private final MeterRegistry registry;
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records one ClickHouse query, e.g. {@code get_tables} or {@code create_table}.
+     */
+    public void recordQuery(String operation, ClickHouseConnection config, long nanos, boolean success) {
+        Timer.builder("clickhouse.query")
+            .description("ClickHouse query latency")
+            .tag("operation", operation)
+            .tag("host", host(config))
+            .tag("outcome", success ? "success" : "error")
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one batch INSERT and, when it succeeded, the rows and bytes it carried.
+     */
+    public void recordInsert(ClickHouseConnection config, String format, long nanos, int rows, int bytes,
+                             boolean success) {
+        String host = host(config);
+        Timer.builder("clickhouse.insert.batch")
+            .description("Batch insert latency")
+            .tag("host", host)
+            .tag("format", format)
+            .tag("outcome", success ? "success" : "error")
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            return;
+        }
+        DistributionSummary.builder("clickhouse.insert.batch.rows")
+            .description("Rows per inserted batch")
+            .tag("host", host)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(rows);
+        DistributionSummary.builder("clickhouse.insert.batch.bytes")
+            .description("Encoded bytes per inserted batch")
+            .baseUnit("bytes")
+            .tag("host", host)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(bytes);
+        rowCounter("import", host).increment(rows);
+    }
+
+    /**
+     * Records parsing and encoding one batch of CSV records for import.
+     */
+    public void recordParseBatch(long nanos) {
+        Timer.builder("csv.parse.batch")
+            .description("Time to parse and encode one insert batch")
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records reading {@code rows} rows from ClickHouse and writing them to a CSV file.
+     */
+    public void recordWriteBatch(ClickHouseConnection config, String operation, long nanos, int rows) {
+        String host = host(config);
+        Timer.builder("csv.write.batch")
+            .description("Time to fetch and write one block of exported rows")
+            .tag("operation", operation)
+            .tag("host", host)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(nanos, TimeUnit.NANOSECONDS);
+        rowCounter(operation, host).increment(rows);
+    }
+
+    /**
+     * Counts bytes exchanged with ClickHouse as they went over the wire, i.e. after compression.
+     */
+    public void recordWireBytes(ClickHouseConnection config, String direction, CompressionCodec codec, long bytes) {
+        Counter.builder("clickhouse.http.wire.bytes")
+            .description("HTTP body bytes exchanged with ClickHouse")
+            .baseUnit("bytes")
+            .tag("host", host(config))
+            .tag("direction", direction)
+            .tag("codec", codec.name().toLowerCase(Locale.ROOT))
+            .register(registry)
+            .increment(bytes);
+    }
+
+    private Counter rowCounter(String operation, String host) {
+        return Counter.builder("ingestion.rows")
+            .description("Rows moved between ClickHouse and flat files")
+            .tag("operation", operation)
+            .tag("host", host)
+            .register(registry);
+    }
+
+    static String host(ClickHouseConnection config) {
+        return config.getHost() + ":" + config.getPort();
+    }
+}
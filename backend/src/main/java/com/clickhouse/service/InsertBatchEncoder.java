@@ -0,0 +1,324 @@
+package com.clickhouse.service;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Encodes rows of text values into an INSERT body that ClickHouse can parse without any SQL.
+ * When every target column has a binary codec the batch is written as {@code RowBinary};
+ * otherwise the whole batch falls back to escaped {@code TabSeparated}, which the server
+ * parses for any column type. Values the server would reject in text input, such as out-of-range
+ * numbers or blanks in non-Nullable columns, are rejected with an {@link IllegalArgumentException}
+ * rather than encoded; blanks in Nullable columns are written as NULL.
+ */
+class InsertBatchEncoder {
+    static final String ROW_BINARY = "RowBinary";
+    static final String TAB_SEPARATED = "TabSeparated";
+
+    private final List<ColumnCodec> codecs;
+    private final boolean binary;
+    private final Buffer buffer = new Buffer(1 << 16);
+    private int rowCount;
+    // Byte range of the source file the rows were read from
+    private long sourceStart;
+    private long sourceEnd;
+
+    private InsertBatchEncoder(List<ColumnCodec> codecs, boolean binary) {
+        this.codecs = codecs;
+        this.binary = binary;
+    }
+
+    /**
+     * Creates an encoder for the given ClickHouse column types, in insert order.
+     */
+    static InsertBatchEncoder forTypes(List<String> types) {
+        List<ColumnCodec> codecs = new ArrayList<>(types.size());
+        boolean binary = true;
+        for (String type : types) {
+            ColumnCodec codec = ColumnCodec.of(type);
+            codecs.add(codec);
+            binary &= codec.kind != Kind.UNSUPPORTED;
+        }
+        return new InsertBatchEncoder(codecs, binary);
+    }
+
+    /**
+     * Returns a fresh, empty encoder for the same column layout.
+     */
+    InsertBatchEncoder newInstance() {
+        return new InsertBatchEncoder(codecs, binary);
+    }
+
+    String format() {
+        return binary ? ROW_BINARY : TAB_SEPARATED;
+    }
+
+    void writeRow(String[] values) {
+        if (binary) {
+            for (int i = 0; i < codecs.size(); i++) {
+                codecs.get(i).writeBinary(buffer, values[i]);
+            }
+        } else {
+            for (int i = 0; i < codecs.size(); i++) {
+                if (i > 0) {
+                    buffer.write('\t');
+                }
+                ColumnCodec codec = codecs.get(i);
+                writeEscaped(buffer, codec.isNull(values[i]) ? null : values[i]);
+            }
+            buffer.write('\n');
+        }
+        rowCount++;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    int byteCount() {
+        return buffer.size();
+    }
+
+    byte[] array() {
+        return buffer.array();
+    }
+
+    long sourceStart() {
+        return sourceStart;
+    }
+
+    long sourceEnd() {
+        return sourceEnd;
+    }
+
+    void setSourceRange(long start, long end) {
+        this.sourceStart = start;
+        this.sourceEnd = end;
+    }
+
+    void reset() {
+        buffer.reset();
+        rowCount = 0;
+        sourceStart = 0;
+        sourceEnd = 0;
+    }
+
+    private static void writeEscaped(Buffer out, String value) {
+        if (value == null) {
+            out.write('\\');
+            out.write('N');
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            switch (b) {
+                case '\\' -> { out.write('\\'); out.write('\\'); }
+                case '\t' -> { out.write('\\'); out.write('t'); }
+                case '\n' -> { out.write('\\'); out.write('n'); }
+                case '\r' -> { out.write('\\'); out.write('r'); }
+                default -> out.write(b);
+            }
+        }
+    }
+
+    private enum Kind {
+        STRING, FIXED_STRING, INT8, INT16, INT32, INT64, UINT8, UINT16, UINT32, UINT64,
+        FLOAT32, FLOAT64, BOOL, DATE, DATE32, DATETIME, UNSUPPORTED
+    }
+
+    private static final class ColumnCodec {
+        // Date32 covers 1900-01-01 to 2299-12-31
+        private static final long DATE32_MIN_DAY = LocalDate.of(1900, 1, 1).toEpochDay();
+        private static final long DATE32_MAX_DAY = LocalDate.of(2299, 12, 31).toEpochDay();
+
+        private final Kind kind;
+        private final boolean nullable;
+        private final int fixedLength;
+        private final ZoneId zone;
+
+        private ColumnCodec(Kind kind, boolean nullable, int fixedLength, ZoneId zone) {
+            this.kind = kind;
+            this.nullable = nullable;
+            this.fixedLength = fixedLength;
+            this.zone = zone;
+        }
+
+        static ColumnCodec of(String type) {
+            String t = type.trim();
+            boolean nullable = false;
+            while (true) {
+                if (t.startsWith("LowCardinality(") && t.endsWith(")")) {
+                    t = t.substring("LowCardinality(".length(), t.length() - 1).trim();
+                } else if (t.startsWith("Nullable(") && t.endsWith(")")) {
+                    t = t.substring("Nullable(".length(), t.length() - 1).trim();
+                    nullable = true;
+                } else {
+                    break;
+                }
+            }
+            if (t.startsWith("FixedString(") && t.endsWith(")")) {
+                int length = Integer.parseInt(t.substring("FixedString(".length(), t.length() - 1).trim());
+                return new ColumnCodec(Kind.FIXED_STRING, nullable, length, null);
+            }
+            if (t.startsWith("DateTime(") && t.endsWith(")")) {
+                // Only an explicit time zone lets us produce the same timestamp the server would parse
+                String zone = t.substring("DateTime(".length(), t.length() - 1).trim().replace("'", "");
+                return new ColumnCodec(Kind.DATETIME, nullable, 0, ZoneId.of(zone));
+            }
+            Kind kind = switch (t) {
+                case "String" -> Kind.STRING;
+                case "Int8" -> Kind.INT8;
+                case "Int16" -> Kind.INT16;
+                case "Int32" -> Kind.INT32;
+                case "Int64" -> Kind.INT64;
+                case "UInt8" -> Kind.UINT8;
+                case "UInt16" -> Kind.UINT16;
+                case "UInt32" -> Kind.UINT32;
+                case "UInt64" -> Kind.UINT64;
+                case "Float32" -> Kind.FLOAT32;
+                case "Float64" -> Kind.FLOAT64;
+                case "Bool" -> Kind.BOOL;
+                case "Date" -> Kind.DATE;
+                case "Date32" -> Kind.DATE32;
+                default -> Kind.UNSUPPORTED;
+            };
+            return new ColumnCodec(kind, nullable, 0, null);
+        }
+
+        /**
+         * Whether the value is written as NULL, in either format.
+         */
+        boolean isNull(String value) {
+            return nullable && (value == null || value.isEmpty());
+        }
+
+        void writeBinary(Buffer out, String value) {
+            if (nullable) {
+                if (isNull(value)) {
+                    out.write(1);
+                    return;
+                }
+                out.write(0);
+            }
+            if (value == null) {
+                value = "";
+            }
+            try {
+                if (kind == Kind.STRING || kind == Kind.FIXED_STRING) {
+                    writeString(out, value);
+                    return;
+                }
+                // The server rejects these in text input too; in RowBinary they would silently become 0
+                if (value.isBlank()) {
+                    throw new IllegalArgumentException("empty value in a non-Nullable column");
+                }
+                String v = value.trim();
+                switch (kind) {
+                    case INT8 -> out.write((int) parseInRange(v, Byte.MIN_VALUE, Byte.MAX_VALUE));
+                    case UINT8 -> out.write((int) parseInRange(v, 0, 0xFF));
+                    case INT16 -> out.writeLittleEndian(parseInRange(v, Short.MIN_VALUE, Short.MAX_VALUE), 2);
+                    case UINT16 -> out.writeLittleEndian(parseInRange(v, 0, 0xFFFF), 2);
+                    case INT32 -> out.writeLittleEndian(parseInRange(v, Integer.MIN_VALUE, Integer.MAX_VALUE), 4);
+                    case UINT32 -> out.writeLittleEndian(parseInRange(v, 0, 0xFFFFFFFFL), 4);
+                    case INT64 -> out.writeLittleEndian(Long.parseLong(v), 8);
+                    // Rejects a minus sign, unlike parsing as signed and reinterpreting
+                    case UINT64 -> out.writeLittleEndian(Long.parseUnsignedLong(v), 8);
+                    case FLOAT32 -> out.writeLittleEndian(Float.floatToRawIntBits(Float.parseFloat(checkFloat(v))), 4);
+                    case FLOAT64 -> out.writeLittleEndian(Double.doubleToRawLongBits(Double.parseDouble(checkFloat(v))), 8);
+                    case BOOL -> out.write(parseBoolean(v) ? 1 : 0);
+                    case DATE -> out.writeLittleEndian(checkRange(LocalDate.parse(v).toEpochDay(), 0, 0xFFFF), 2);
+                    case DATE32 -> out.writeLittleEndian(
+                        checkRange(LocalDate.parse(v).toEpochDay(), DATE32_MIN_DAY, DATE32_MAX_DAY), 4);
+                    case DATETIME -> out.writeLittleEndian(checkRange(parseDateTime(v, zone), 0, 0xFFFFFFFFL), 4);
+                    default -> throw new IllegalStateException("No binary codec for column kind " + kind);
+                }
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cannot encode value '" + value + "' as " + kind + ": " + e.getMessage(), e);
+            }
+        }
+
+        private void writeString(Buffer out, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (kind == Kind.STRING) {
+                out.writeVarInt(bytes.length);
+                out.write(bytes, 0, bytes.length);
+                return;
+            }
+            if (bytes.length > fixedLength) {
+                throw new IllegalArgumentException("Value too long for FixedString(" + fixedLength + "): " + value);
+            }
+            out.write(bytes, 0, bytes.length);
+            for (int i = bytes.length; i < fixedLength; i++) {
+                out.write(0);
+            }
+        }
+
+        private static long parseInRange(String v, long min, long max) {
+            return checkRange(Long.parseLong(v), min, max);
+        }
+
+        private static long checkRange(long value, long min, long max) {
+            if (value < min || value > max) {
+                throw new IllegalArgumentException("out of range [" + min + ", " + max + "]");
+            }
+            return value;
+        }
+
+        private static String checkFloat(String v) {
+            // Java also accepts type suffixes and hex floats, which ClickHouse does not
+            char last = v.charAt(v.length() - 1);
+            if (last == 'f' || last == 'F' || last == 'd' || last == 'D' || v.contains("x") || v.contains("X")) {
+                throw new NumberFormatException("not a decimal number");
+            }
+            return v;
+        }
+
+        private static boolean parseBoolean(String v) {
+            return switch (v.toLowerCase(Locale.ROOT)) {
+                case "1", "true", "t", "yes", "y", "on", "enable" -> true;
+                case "0", "false", "f", "no", "n", "off", "disable" -> false;
+                default -> throw new IllegalArgumentException("not a boolean");
+            };
+        }
+
+        private static long parseDateTime(String v, ZoneId zone) {
+            if (v.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(v);
+            }
+            return LocalDateTime.parse(v.replace(' ', 'T')).atZone(zone).toEpochSecond();
+        }
+    }
+
+    /**
+     * Growable byte buffer that exposes its backing array, so batches can be sent without a copy.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+
+        void writeLittleEndian(long value, int bytes) {
+            for (int i = 0; i < bytes; i++) {
+                write((int) (value >>> (8 * i)) & 0xFF);
+            }
+        }
+
+        void writeVarInt(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.clickhouse.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through one in every {@code rate} events, so debug logging on per-batch paths
+ * stays readable and cheap at high throughput.
+ */
+final class LogSampler {
+    private final long rate;
+    private final AtomicLong events = new AtomicLong();
+
+    LogSampler(long rate) {
+        this.rate = Math.max(1, rate);
+    }
+
+    boolean sample() {
+        return events.getAndIncrement() % rate == 0;
+    }
+}
@@ -0,0 +1,373 @@
+package com.clickhouse.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the schema and row count from the footer of a Parquet file, without decoding any data pages.
+ * The footer is a Thrift {@code FileMetaData} struct in the compact protocol; only the fields needed
+ * here are decoded and everything else is skipped.
+ */
+final class ParquetFooter {
+    private static final byte[] MAGIC = "PAR1".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_FOOTER_SIZE = 64 << 20;
+
+    // Thrift compact protocol type ids
+    private static final int TYPE_BOOLEAN_TRUE = 1;
+    private static final int TYPE_BOOLEAN_FALSE = 2;
+    private static final int TYPE_BYTE = 3;
+    private static final int TYPE_I16 = 4;
+    private static final int TYPE_I32 = 5;
+    private static final int TYPE_I64 = 6;
+    private static final int TYPE_DOUBLE = 7;
+    private static final int TYPE_BINARY = 8;
+    private static final int TYPE_LIST = 9;
+    private static final int TYPE_SET = 10;
+    private static final int TYPE_MAP = 11;
+    private static final int TYPE_STRUCT = 12;
+    private static final int TYPE_UUID = 13;
+
+    // Parquet physical types
+    private static final int BOOLEAN = 0;
+    private static final int INT32 = 1;
+    private static final int INT64 = 2;
+    private static final int INT96 = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+    private static final int FIXED_LEN_BYTE_ARRAY = 7;
+
+    // Parquet converted types
+    private static final int UTF8 = 0;
+    private static final int LIST = 3;
+    private static final int DECIMAL = 5;
+    private static final int DATE = 6;
+    private static final int TIMESTAMP_MILLIS = 9;
+    private static final int TIMESTAMP_MICROS = 10;
+    private static final int UINT_8 = 11;
+    private static final int UINT_16 = 12;
+    private static final int UINT_32 = 13;
+    private static final int UINT_64 = 14;
+    private static final int INT_8 = 15;
+    private static final int INT_16 = 16;
+
+    private static final int OPTIONAL = 1;
+
+    /**
+     * A top-level column and the ClickHouse type its values are read as.
+     */
+    record Column(String name, String clickHouseType) {
+    }
+
+    private static final class SchemaElement {
+        int type = -1;
+        int typeLength;
+        int repetition;
+        String name;
+        int numChildren;
+        int convertedType = -1;
+        int scale;
+        int precision;
+    }
+
+    private final List<Column> columns;
+    private final long rowCount;
+    private final int footerSize;
+
+    private ParquetFooter(List<Column> columns, long rowCount, int footerSize) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.footerSize = footerSize;
+    }
+
+    List<Column> columns() {
+        return columns;
+    }
+
+    List<String> columnNames() {
+        return columns.stream().map(Column::name).toList();
+    }
+
+    long rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Size of the footer in bytes, including the trailing length and magic.
+     */
+    int footerSize() {
+        return footerSize;
+    }
+
+    /**
+     * Checks for the {@code PAR1} magic at the start of the file.
+     */
+    static boolean isParquet(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(MAGIC.length);
+            while (head.hasRemaining() && channel.read(head) > 0) {
+            }
+            return !head.hasRemaining() && head.flip().equals(ByteBuffer.wrap(MAGIC));
+        }
+    }
+
+    static ParquetFooter read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2L * MAGIC.length + 4) {
+                throw new IOException("Not a Parquet file: " + path);
+            }
+            ByteBuffer tail = readFully(channel, size - 8, 8).order(ByteOrder.LITTLE_ENDIAN);
+            int length = tail.getInt();
+            if (!tail.slice().equals(ByteBuffer.wrap(MAGIC))) {
+                throw new IOException("Not a Parquet file: " + path);
+            }
+            if (length <= 0 || length > MAX_FOOTER_SIZE || length > size - 8 - MAGIC.length) {
+                throw new IOException("Corrupt Parquet footer length " + length + " in " + path);
+            }
+            ByteBuffer footer = readFully(channel, size - 8 - length, length);
+            try {
+                return parseFileMetaData(footer, length + 8);
+            } catch (RuntimeException e) {
+                throw new IOException("Corrupt Parquet footer in " + path + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ParquetFooter parseFileMetaData(ByteBuffer in, int footerSize) {
+        List<SchemaElement> schema = new ArrayList<>();
+        long rowCount = 0;
+        int fieldId = 0;
+        while (true) {
+            int header = in.get() & 0xFF;
+            int type = header & 0x0F;
+            if (type == 0) {
+                break;
+            }
+            fieldId = nextFieldId(in, header, fieldId);
+            if (fieldId == 2 && type == TYPE_LIST) {
+                int listHeader = in.get() & 0xFF;
+                int count = listSize(in, listHeader);
+                for (int i = 0; i < count; i++) {
+                    schema.add(readSchemaElement(in));
+                }
+            } else if (fieldId == 3 && type == TYPE_I64) {
+                rowCount = readVarLong(in);
+            } else {
+                skip(in, type);
+            }
+        }
+        if (schema.isEmpty()) {
+            throw new IllegalStateException("missing schema");
+        }
+
+        List<Column> columns = new ArrayList<>();
+        int[] next = {1};
+        for (int i = 0; i < schema.get(0).numChildren; i++) {
+            SchemaElement element = schema.get(next[0]);
+            columns.add(new Column(element.name, clickHouseType(schema, next)));
+        }
+        return new ParquetFooter(List.copyOf(columns), rowCount, footerSize);
+    }
+
+    private static SchemaElement readSchemaElement(ByteBuffer in) {
+        SchemaElement element = new SchemaElement();
+        int fieldId = 0;
+        while (true) {
+            int header = in.get() & 0xFF;
+            int type = header & 0x0F;
+            if (type == 0) {
+                return element;
+            }
+            fieldId = nextFieldId(in, header, fieldId);
+            switch (fieldId) {
+                case 1 -> element.type = (int) readVarLong(in);
+                case 2 -> element.typeLength = (int) readVarLong(in);
+                case 3 -> element.repetition = (int) readVarLong(in);
+                case 4 -> element.name = readString(in);
+                case 5 -> element.numChildren = (int) readVarLong(in);
+                case 6 -> element.convertedType = (int) readVarLong(in);
+                case 7 -> element.scale = (int) readVarLong(in);
+                case 8 -> element.precision = (int) readVarLong(in);
+                default -> skip(in, type);
+            }
+        }
+    }
+
+    /**
+     * Maps the element at {@code next[0]} and its subtree to a ClickHouse type, advancing past them.
+     * Groups other than single-element lists are mapped to String, which ClickHouse will reject on insert;
+     * such columns need a type override.
+     */
+    private static String clickHouseType(List<SchemaElement> schema, int[] next) {
+        SchemaElement element = schema.get(next[0]++);
+        String type;
+        if (element.numChildren > 0) {
+            type = null;
+            if (element.convertedType == LIST && element.numChildren == 1) {
+                // <list-repetition> group <name> (LIST) { repeated group list { <element> } }
+                SchemaElement repeated = schema.get(next[0]);
+                if (repeated.numChildren == 1) {
+                    next[0]++;
+                    type = "Array(" + clickHouseType(schema, next) + ")";
+                }
+            }
+            if (type == null) {
+                skipChildren(schema, next, element.numChildren);
+                type = "String";
+            }
+        } else {
+            type = primitiveType(element);
+        }
+        return element.repetition == OPTIONAL && !type.startsWith("Array(") ? "Nullable(" + type + ")" : type;
+    }
+
+    private static void skipChildren(List<SchemaElement> schema, int[] next, int children) {
+        for (int i = 0; i < children; i++) {
+            SchemaElement child = schema.get(next[0]++);
+            skipChildren(schema, next, child.numChildren);
+        }
+    }
+
+    private static String primitiveType(SchemaElement element) {
+        if (element.convertedType == DECIMAL) {
+            return "Decimal(" + element.precision + ", " + element.scale + ")";
+        }
+        return switch (element.type) {
+            case BOOLEAN -> "Bool";
+            case INT32 -> switch (element.convertedType) {
+                case DATE -> "Date32";
+                case UINT_8 -> "UInt8";
+                case UINT_16 -> "UInt16";
+                case UINT_32 -> "UInt32";
+                case INT_8 -> "Int8";
+                case INT_16 -> "Int16";
+                default -> "Int32";
+            };
+            case INT64 -> switch (element.convertedType) {
+                case TIMESTAMP_MILLIS -> "DateTime64(3)";
+                case TIMESTAMP_MICROS -> "DateTime64(6)";
+                case UINT_64 -> "UInt64";
+                default -> "Int64";
+            };
+            case INT96 -> "DateTime64(9)";
+            case FLOAT -> "Float32";
+            case DOUBLE -> "Float64";
+            case FIXED_LEN_BYTE_ARRAY -> element.convertedType == UTF8
+                ? "String"
+                : "FixedString(" + element.typeLength + ")";
+            default -> "String";
+        };
+    }
+
+    private static int nextFieldId(ByteBuffer in, int header, int previous) {
+        int delta = header >>> 4;
+        return delta != 0 ? previous + delta : (int) zigzag(readVarint(in));
+    }
+
+    private static int listSize(ByteBuffer in, int header) {
+        int size = header >>> 4;
+        return size == 15 ? (int) readVarint(in) : size;
+    }
+
+    private static void skip(ByteBuffer in, int type) {
+        switch (type) {
+            case TYPE_BOOLEAN_TRUE, TYPE_BOOLEAN_FALSE -> {
+            }
+            case TYPE_BYTE -> in.get();
+            case TYPE_I16, TYPE_I32, TYPE_I64 -> readVarint(in);
+            case TYPE_DOUBLE -> in.position(in.position() + 8);
+            case TYPE_BINARY -> {
+                // The length comes first, so the skip starts after it
+                int length = (int) readVarint(in);
+                in.position(in.position() + length);
+            }
+            case TYPE_UUID -> in.position(in.position() + 16);
+            case TYPE_LIST, TYPE_SET -> {
+                int header = in.get() & 0xFF;
+                int count = listSize(in, header);
+                int elementType = header & 0x0F;
+                for (int i = 0; i < count; i++) {
+                    skipElement(in, elementType);
+                }
+            }
+            case TYPE_MAP -> {
+                int count = (int) readVarint(in);
+                if (count > 0) {
+                    int types = in.get() & 0xFF;
+                    for (int i = 0; i < count; i++) {
+                        skipElement(in, types >>> 4);
+                        skipElement(in, types & 0x0F);
+                    }
+                }
+            }
+            case TYPE_STRUCT -> {
+                int fieldId = 0;
+                while (true) {
+                    int header = in.get() & 0xFF;
+                    int fieldType = header & 0x0F;
+                    if (fieldType == 0) {
+                        break;
+                    }
+                    fieldId = nextFieldId(in, header, fieldId);
+                    skip(in, fieldType);
+                }
+            }
+            default -> throw new IllegalStateException("unknown Thrift type " + type);
+        }
+    }
+
+    /**
+     * Skips a collection element; unlike struct fields, booleans in collections take a byte.
+     */
+    private static void skipElement(ByteBuffer in, int type) {
+        if (type == TYPE_BOOLEAN_TRUE || type == TYPE_BOOLEAN_FALSE) {
+            in.get();
+        } else {
+            skip(in, type);
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        return zigzag(readVarint(in));
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("varint too long");
+    }
+
+    private static long zigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -1,22 +1,106 @@
 package com.clickhouse.service;
 
+import com.clickhouse.config.IngestionConfig;
+import com.clickhouse.model.ProgressSnapshot;
+import com.clickhouse.model.TaskState;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
+
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Tracks ingestion tasks from submission to completion. Finished tasks stay queryable
+ * for {@code ingestion.jobs.progress-retention} before they are dropped. Per-task rates are served by
+ * the progress API rather than as meters, whose series would never be removed from scraping backends;
+ * rows across all tasks are counted by {@code ingestion.rows}.
+ */
 @Service
-public class ProgressService {
-    private final Map<String, Integer> progressMap = new ConcurrentHashMap<>();
+public class ProgressService implements MeterBinder {
+    private final IngestionConfig properties;
+    private final Map<String, TaskProgress> progressMap = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService reaper;
+
+    public ProgressService(IngestionConfig properties) {
+        this.properties = properties;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, properties.getProgressRetention().toSeconds() / 2);
+        reaper.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.SECONDS);
+    }
 
-    public void updateProgress(String taskId, int progress) {
+    /**
+     * Registers a newly submitted task in the {@link TaskState#QUEUED} state.
+     */
+    public TaskProgress register(String taskId) {
+        TaskProgress progress = new TaskProgress(taskId);
         progressMap.put(taskId, progress);
+        return progress;
+    }
+
+    /**
+     * @return false if the task is unknown or already finished, e.g. was cancelled while queued
+     */
+    public boolean markRunning(String taskId) {
+        TaskProgress progress = progressMap.get(taskId);
+        return progress != null && progress.start();
     }
 
-    public int getProgress(String taskId) {
-        return progressMap.getOrDefault(taskId, 0);
+    public void markCompleted(String taskId) {
+        finish(taskId, TaskState.COMPLETED, null);
+    }
+
+    public void markFailed(String taskId, String error) {
+        finish(taskId, TaskState.FAILED, error);
+    }
+
+    public void markCancelled(String taskId) {
+        finish(taskId, TaskState.CANCELLED, null);
+    }
+
+    /**
+     * @return the current progress of the task, or {@code null} if it is unknown or has expired
+     */
+    public ProgressSnapshot getProgress(String taskId) {
+        TaskProgress progress = progressMap.get(taskId);
+        return progress != null ? progress.snapshot() : null;
     }
 
     public void removeProgress(String taskId) {
         progressMap.remove(taskId);
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ingestion.batches.in_flight", progressMap,
+                tasks -> tasks.values().stream().mapToLong(TaskProgress::batchesInFlight).sum())
+            .description("Insert batches queued or being sent, across all tasks")
+            .register(registry);
+    }
+
+    private void finish(String taskId, TaskState state, String error) {
+        TaskProgress progress = progressMap.get(taskId);
+        if (progress != null) {
+            progress.finish(state, error);
+        }
+    }
+
+    private void removeExpired() {
+        long cutoff = System.currentTimeMillis() - properties.getProgressRetention().toMillis();
+        progressMap.values().removeIf(progress -> progress.isFinished() && progress.getFinishedAtMillis() < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+}
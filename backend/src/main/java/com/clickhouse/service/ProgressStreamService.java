@@ -0,0 +1,147 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.IngestionConfig;
+import com.clickhouse.model.ProgressSnapshot;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes progress snapshots to clients over Server-Sent Events instead of having them poll.
+ * Each subscription is sampled on a timer; sends run on a small separate pool, and a tick
+ * that finds the previous send to the same client still in progress is dropped, so a slow
+ * client only ever sees fewer, fresher snapshots. Ingestion threads never touch the emitters.
+ */
+@Service
+public class ProgressStreamService {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressStreamService.class);
+    private static final Duration MIN_INTERVAL = Duration.ofMillis(100);
+
+    private final IngestionConfig properties;
+    private final ProgressService progressService;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService senders;
+
+    public ProgressStreamService(IngestionConfig properties, ProgressService progressService) {
+        this.properties = properties;
+        this.progressService = progressService;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-stream-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadIds = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(Math.max(1, properties.getProgressStreamSenderThreads()),
+            runnable -> {
+                Thread thread = new Thread(runnable, "progress-stream-sender-" + threadIds.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Opens a stream of {@code progress} events, each carrying the snapshots of the given tasks.
+     * The stream completes once every task has finished or expired.
+     *
+     * @param interval time between snapshots, or {@code null} for the configured default
+     */
+    public SseEmitter subscribe(List<String> taskIds, Duration interval) {
+        Duration period = interval != null ? interval : properties.getProgressStreamInterval();
+        if (period.compareTo(MIN_INTERVAL) < 0) {
+            period = MIN_INTERVAL;
+        }
+        SseEmitter emitter = new SseEmitter(properties.getProgressStreamTimeout().toMillis());
+        Subscription subscription = new Subscription(List.copyOf(taskIds), emitter);
+        subscription.tick = ticker.scheduleWithFixedDelay(subscription::tick, 0, period.toMillis(),
+            TimeUnit.MILLISECONDS);
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    }
+
+    private final class Subscription {
+        private final List<String> taskIds;
+        private final SseEmitter emitter;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile ScheduledFuture<?> tick;
+        private volatile boolean cancelled;
+
+        Subscription(List<String> taskIds, SseEmitter emitter) {
+            this.taskIds = taskIds;
+            this.emitter = emitter;
+        }
+
+        void tick() {
+            if (cancelled) {
+                // Cancelled before the schedule handle was published
+                cancel();
+                return;
+            }
+            if (!sending.compareAndSet(false, true)) {
+                // Previous snapshot is still being written: coalesce into the next tick
+                return;
+            }
+            try {
+                senders.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                sending.set(false);
+            }
+        }
+
+        private void send() {
+            try {
+                List<ProgressSnapshot> snapshots = new ArrayList<>(taskIds.size());
+                boolean done = true;
+                for (String taskId : taskIds) {
+                    ProgressSnapshot snapshot = progressService.getProgress(taskId);
+                    if (snapshot != null) {
+                        snapshots.add(snapshot);
+                        done &= snapshot.getState().isTerminal();
+                    }
+                }
+                emitter.send(SseEmitter.event().name("progress").data(snapshots, MediaType.APPLICATION_JSON));
+                if (done) {
+                    cancel();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client went away
+                logger.debug("Progress stream closed: {}", e.getMessage());
+                cancel();
+            } finally {
+                sending.set(false);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> scheduled = tick;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        senders.shutdownNow();
+    }
+}
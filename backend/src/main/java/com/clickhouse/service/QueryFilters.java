@@ -0,0 +1,211 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.QueryFilter;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Builds SELECT statements with a {@link QueryFilter} pushed down, so ClickHouse can prune parts and
+ * granules by the WHERE predicate and stop reading at the LIMIT. User-supplied expressions are checked
+ * lexically: they must be a single balanced expression without statement separators or comments, and
+ * the WHERE predicate is parenthesised so it cannot change the meaning of the rest of the statement.
+ * Subqueries are rejected, so an expression can only read the table it is applied to. The same checks
+ * cover the other expressions and type names requests interpolate into SQL.
+ */
+final class QueryFilters {
+    // Keywords that would end an ORDER BY list and start another clause
+    private static final Set<String> ORDER_BY_STOP_WORDS = Set.of(
+        "LIMIT", "OFFSET", "FETCH", "FORMAT", "SETTINGS", "INTO", "UNION", "INTERSECT", "EXCEPT",
+        "SELECT", "FROM", "WHERE", "PREWHERE", "GROUP", "HAVING", "WINDOW", "QUALIFY");
+    // Keywords that would end a table's ORDER BY key and start another part of CREATE TABLE
+    private static final Set<String> TABLE_ORDER_BY_STOP_WORDS = Set.of(
+        "PARTITION", "PRIMARY", "SAMPLE", "TTL", "SETTINGS", "ENGINE", "COMMENT", "AS", "EMPTY");
+    private static final Pattern TYPE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*\\s*(?:\\((.*)\\))?",
+        Pattern.DOTALL);
+
+    private QueryFilters() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if any part of the filter is out of range or not a single expression
+     */
+    static void validate(QueryFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        if (filter.getLimit() != null && filter.getLimit() < 0) {
+            throw new IllegalArgumentException("Invalid filter: limit must not be negative");
+        }
+        if (filter.getOffset() != null && filter.getOffset() < 0) {
+            throw new IllegalArgumentException("Invalid filter: offset must not be negative");
+        }
+        if (filter.getSample() != null && !(filter.getSample() > 0 && filter.getSample() <= 1)) {
+            throw new IllegalArgumentException("Invalid filter: sample must be a ratio in (0, 1]");
+        }
+        if (hasText(filter.getWhere())) {
+            checkExpression("filter where", filter.getWhere(), Set.of());
+        }
+        if (hasText(filter.getOrderBy())) {
+            checkExpression("filter orderBy", filter.getOrderBy(), ORDER_BY_STOP_WORDS);
+        }
+    }
+
+    /**
+     * Checks a single expression, such as a sharding key, that is interpolated into a query.
+     *
+     * @throws IllegalArgumentException naming {@code name} if it is not a single expression
+     */
+    static void validateExpression(String name, String expression) {
+        checkExpression(name, expression, Set.of());
+    }
+
+    /**
+     * Checks the sorting key of a table created by an import.
+     *
+     * @throws IllegalArgumentException naming {@code name} if it is not a single key expression
+     */
+    static void validateTableOrderBy(String name, String orderBy) {
+        checkExpression(name, orderBy, TABLE_ORDER_BY_STOP_WORDS);
+    }
+
+    /**
+     * Checks a column type such as {@code Nullable(DateTime('UTC'))}: a type name, optionally followed by
+     * one parenthesised list of arguments.
+     *
+     * @throws IllegalArgumentException naming {@code name} if it is not a type name
+     */
+    static void validateTypeName(String name, String type) {
+        Matcher matcher = TYPE_NAME.matcher(type.trim());
+        if (!matcher.matches()) {
+            throw invalid(name, "not a type name");
+        }
+        // Balanced arguments mean the opening parenthesis is closed by the last character
+        if (matcher.group(1) != null) {
+            checkExpression(name, matcher.group(1), Set.of());
+        }
+    }
+
+    /**
+     * Whether the result has a global order or row window, so it cannot be split into hash ranges
+     * that are read concurrently.
+     */
+    static boolean requiresSingleStream(QueryFilter filter) {
+        return filter != null
+            && (filter.getLimit() != null || filter.getOffset() != null || hasText(filter.getOrderBy()));
+    }
+
+    /**
+     * Builds {@code SELECT columns FROM table [SAMPLE] [join] [WHERE] [ORDER BY] [LIMIT] [OFFSET]}.
+     *
+     * @param join      a {@code JOIN ... ON ...} clause following the sampled table, or {@code null}
+     * @param condition an extra predicate ANDed with the filter's, or {@code null}
+     * @param maxRows   upper bound on the LIMIT, or {@code 0} for none
+     */
+    static String select(List<String> columns, String table, String join, QueryFilter filter,
+                         String condition, long maxRows) {
+        validate(filter);
+        StringBuilder query = new StringBuilder("SELECT ")
+            .append(String.join(", ", columns))
+            .append(" FROM ").append(table);
+        if (filter != null && filter.getSample() != null) {
+            query.append(" SAMPLE ").append(BigDecimal.valueOf(filter.getSample()).stripTrailingZeros().toPlainString());
+        }
+        if (join != null) {
+            query.append(join);
+        }
+
+        String where = filter != null && hasText(filter.getWhere()) ? "(" + filter.getWhere().trim() + ")" : null;
+        if (where != null && condition != null) {
+            query.append(" WHERE ").append(where).append(" AND ").append(condition);
+        } else if (where != null || condition != null) {
+            query.append(" WHERE ").append(where != null ? where : condition);
+        }
+
+        if (filter != null && hasText(filter.getOrderBy())) {
+            query.append(" ORDER BY ").append(filter.getOrderBy().trim());
+        }
+        Long limit = filter != null ? filter.getLimit() : null;
+        if (maxRows > 0) {
+            limit = limit != null ? Math.min(limit, maxRows) : maxRows;
+        }
+        if (limit != null) {
+            query.append(" LIMIT ").append(limit);
+        }
+        if (filter != null && filter.getOffset() != null) {
+            query.append(" OFFSET ").append(filter.getOffset());
+        }
+        return query.toString();
+    }
+
+    private static void checkExpression(String name, String sql, Set<String> stopWords) {
+        int depth = 0;
+        char quote = 0;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i += 2;
+                    continue;
+                }
+                if (c == quote) {
+                    // A doubled quote is an escaped quote
+                    if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                        i += 2;
+                        continue;
+                    }
+                    quote = 0;
+                }
+                i++;
+                continue;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                if (--depth < 0) {
+                    throw invalid(name, "unbalanced parentheses");
+                }
+            } else if (c == ';') {
+                throw invalid(name, "multiple statements are not allowed");
+            } else if (c == '#' || sql.startsWith("--", i) || sql.startsWith("/*", i)) {
+                throw invalid(name, "comments are not allowed");
+            } else if (Character.isLetter(c) || c == '_') {
+                int end = i;
+                while (end < sql.length() && (Character.isLetterOrDigit(sql.charAt(end)) || sql.charAt(end) == '_')) {
+                    end++;
+                }
+                String word = sql.substring(i, end).toUpperCase(Locale.ROOT);
+                if (word.equals("SELECT")) {
+                    throw invalid(name, "subqueries are not allowed");
+                }
+                if (depth == 0 && stopWords.contains(word)) {
+                    throw invalid(name, word + " is not allowed here");
+                }
+                i = end;
+                continue;
+            }
+            i++;
+        }
+        if (quote != 0) {
+            throw invalid(name, "unterminated quoted string");
+        }
+        if (depth != 0) {
+            throw invalid(name, "unbalanced parentheses");
+        }
+    }
+
+    private static IllegalArgumentException invalid(String name, String reason) {
+        return new IllegalArgumentException("Invalid " + name + ": " + reason);
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+}
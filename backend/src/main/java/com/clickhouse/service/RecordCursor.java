@@ -0,0 +1,93 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.CompressionCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Forward-only cursor over the records of a delimited file.
+ */
+interface RecordCursor extends Closeable {
+
+    /**
+     * Opens a cursor over the whole file. Plain files are memory-mapped; gzip, zstd and lz4 files,
+     * recognised by their magic bytes, are decompressed as a stream.
+     */
+    static RecordCursor open(Path path, char delimiter) throws IOException {
+        return open(path, CsvDialect.rfc4180(delimiter));
+    }
+
+    static RecordCursor open(Path path, CsvDialect dialect) throws IOException {
+        CompressionCodec codec = detectCompression(path);
+        return codec == CompressionCodec.NONE
+            ? new DelimitedFileScanner(path, dialect, 0, -1)
+            : new CompressedRecordCursor(path, dialect, codec);
+    }
+
+    /**
+     * Identifies the compression of a file from its first bytes.
+     */
+    static CompressionCodec detectCompression(Path path) throws IOException {
+        byte[] magic;
+        try (InputStream in = Files.newInputStream(path)) {
+            magic = in.readNBytes(4);
+        }
+        if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return CompressionCodec.GZIP;
+        }
+        if (magic.length == 4) {
+            int word = (magic[0] & 0xFF) | (magic[1] & 0xFF) << 8 | (magic[2] & 0xFF) << 16 | (magic[3] & 0xFF) << 24;
+            if (word == 0xFD2FB528) {
+                return CompressionCodec.ZSTD;
+            }
+            if (word == 0x184D2204) {
+                return CompressionCodec.LZ4;
+            }
+        }
+        return CompressionCodec.NONE;
+    }
+
+    /**
+     * Advances to the next non-empty record.
+     *
+     * @return false at the end of the input
+     */
+    boolean next() throws IOException;
+
+    int fieldCount();
+
+    /**
+     * Decodes field {@code index} of the current record.
+     */
+    String field(int index);
+
+    /**
+     * Decodes every field of the current record.
+     */
+    default String[] fields() {
+        String[] values = new String[fieldCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = field(i);
+        }
+        return values;
+    }
+
+    /**
+     * Physical line on which the current record starts, counting from 1.
+     */
+    long lineNumber();
+
+    /**
+     * Byte offset in the file at which the current record starts.
+     */
+    long recordStart();
+
+    /**
+     * Byte offset in the file just past the current record.
+     */
+    long position();
+}
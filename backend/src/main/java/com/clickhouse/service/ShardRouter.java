@@ -0,0 +1,133 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.ClickHouseConnection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Routes insert batches for a {@code Distributed} table straight to the local tables of its shards, so every
+ * shard is written over its own connections instead of all rows passing through one node and being forwarded.
+ * Only tables sharded by {@code rand()}, or without a sharding key, are routed: any shard may own any row of
+ * those. A deterministic sharding key can only be evaluated by the server, so such tables are inserted into
+ * through the Distributed table as before. Shards receive batches in proportion to their weight; the shard
+ * is picked from the batch's source offset, so a batch sent again after a retry or resume goes to the shard
+ * that may already hold it and is deduplicated there.
+ */
+final class ShardRouter {
+
+    /**
+     * @param connection the shard's replicas, with the first as host and the rest as replicas
+     */
+    record Shard(int number, ClickHouseConnection connection) {
+    }
+
+    private final String localTable;
+    private final List<Shard> shards;
+    private final Shard[] slots;
+
+    ShardRouter(String localTable, List<Shard> shards, List<Integer> weights) {
+        this.localTable = localTable;
+        this.shards = List.copyOf(shards);
+        List<Shard> expanded = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            for (int w = 0; w < weights.get(i); w++) {
+                expanded.add(shards.get(i));
+            }
+        }
+        if (expanded.isEmpty()) {
+            throw new IllegalArgumentException("No shard has a positive weight");
+        }
+        this.slots = expanded.toArray(new Shard[0]);
+    }
+
+    String localTable() {
+        return localTable;
+    }
+
+    List<Shard> shards() {
+        return shards;
+    }
+
+    /**
+     * The shard the batch read from {@code sourceOffset} goes to.
+     */
+    Shard shardFor(long sourceOffset) {
+        // Batch offsets are spaced by the batch size, so they are mixed before taking the slot
+        long mixed = sourceOffset * 0x9E3779B97F4A7C15L;
+        return slots[(int) Math.floorMod(mixed ^ (mixed >>> 32), (long) slots.length)];
+    }
+
+    /**
+     * Splits the arguments of a {@code Distributed(cluster, database, table[, sharding_key[, policy]])}
+     * engine, as found in {@code system.tables.engine_full}.
+     *
+     * @return the arguments as written, or {@code null} if the engine is not Distributed
+     */
+    static List<String> parseDistributedEngine(String engineFull) {
+        String engine = engineFull.trim();
+        if (!engine.startsWith("Distributed(")) {
+            return null;
+        }
+        List<String> arguments = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = "Distributed(".length();
+        for (int i = start; i < engine.length(); i++) {
+            char c = engine.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if ((c == ')' || c == ']') && depth > 0) {
+                depth--;
+            } else if (depth == 0 && (c == ',' || c == ')')) {
+                arguments.add(engine.substring(start, i).trim());
+                start = i + 1;
+                if (c == ')') {
+                    return arguments;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether rows of a table with these engine arguments may go to any shard.
+     */
+    static boolean isRandomlySharded(List<String> engineArguments) {
+        if (engineArguments.size() < 4) {
+            return true;
+        }
+        String key = engineArguments.get(3).replace(" ", "").toLowerCase(Locale.ROOT);
+        return key.equals("rand()");
+    }
+
+    /**
+     * Strips the quotes from an identifier or string literal argument.
+     */
+    static String unquote(String argument) {
+        if (argument.length() >= 2) {
+            char first = argument.charAt(0);
+            if ((first == '\'' || first == '"' || first == '`') && argument.charAt(argument.length() - 1) == first) {
+                return argument.substring(1, argument.length() - 1).replace("\\" + first, String.valueOf(first));
+            }
+        }
+        return argument;
+    }
+
+    static String quoteLiteral(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+
+    static String quoteIdentifier(String name) {
+        return "`" + name.replace("\\", "\\\\").replace("`", "\\`") + "`";
+    }
+}
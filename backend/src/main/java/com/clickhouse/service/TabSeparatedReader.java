@@ -0,0 +1,99 @@
+package com.clickhouse.service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader for ClickHouse {@code TabSeparated} output.
+ * Rows are read one at a time from the underlying stream and unescaped into a reused row buffer,
+ * so memory use stays constant regardless of the size of the result set.
+ */
+class TabSeparatedReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedReader reader;
+    private final List<String> row = new ArrayList<>();
+    private final StringBuilder field = new StringBuilder();
+
+    TabSeparatedReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Advances to the next row. An empty line is a row with one empty value, as ClickHouse writes
+     * an empty string in a single-column result.
+     *
+     * @return the row values, or {@code null} at end of stream. The returned list is reused by the next call.
+     */
+    List<String> next() throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            return null;
+        }
+
+        row.clear();
+        parseLine(line, row, field);
+        return row;
+    }
+
+    /**
+     * Splits one {@code TabSeparated} line into unescaped values, appending them to {@code row}.
+     * {@code \N} is read as {@code null}.
+     *
+     * @param scratch reused buffer for values that contain escapes
+     */
+    static void parseLine(String line, List<String> row, StringBuilder scratch) {
+        int start = 0;
+        int tab;
+        while ((tab = line.indexOf('\t', start)) >= 0) {
+            row.add(unescape(line, start, tab, scratch));
+            start = tab + 1;
+        }
+        row.add(unescape(line, start, line.length(), scratch));
+    }
+
+    private static String unescape(String line, int start, int end, StringBuilder field) {
+        if (end - start == 2 && line.charAt(start) == '\\' && line.charAt(start + 1) == 'N') {
+            return null;
+        }
+        // Only this field is searched, so a wide line is scanned once rather than once per field
+        int backslash = start;
+        while (backslash < end && line.charAt(backslash) != '\\') {
+            backslash++;
+        }
+        if (backslash == end) {
+            return line.substring(start, end);
+        }
+        field.setLength(0);
+        field.append(line, start, backslash);
+        for (int i = backslash; i < end; i++) {
+            char c = line.charAt(i);
+            if (c != '\\' || i + 1 == end) {
+                field.append(c);
+                continue;
+            }
+            char escaped = line.charAt(++i);
+            switch (escaped) {
+                case 'n' -> field.append('\n');
+                case 't' -> field.append('\t');
+                case 'r' -> field.append('\r');
+                case 'b' -> field.append('\b');
+                case 'f' -> field.append('\f');
+                case '0' -> field.append('\0');
+                default -> field.append(escaped);
+            }
+        }
+        return field.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
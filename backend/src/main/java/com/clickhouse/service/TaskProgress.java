@@ -0,0 +1,178 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.ProgressSnapshot;
+import com.clickhouse.model.TaskState;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters for one ingestion task. Parser and insert threads update the striped counters
+ * without contending with each other; rates and ETA are only derived when a snapshot is taken.
+ * A wide gap between rows read and rows written, with batches piling up in flight, means the
+ * task is waiting on the network or ClickHouse rather than on parsing.
+ */
+public class TaskProgress {
+    /** Throughput is measured over at least this window between snapshots. */
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final String taskId;
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder batchesInFlight = new LongAdder();
+    private volatile long totalBytes = -1;
+    // Moves forward only; the first terminal state sticks, whether cancellation or failure gets there first
+    private final AtomicReference<TaskState> state = new AtomicReference<>(TaskState.QUEUED);
+    private volatile String error;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile long finishedAtMillis;
+
+    // Last rate sample, guarded by this
+    private long sampleNanos;
+    private long sampleRows;
+    private long sampleBytes;
+    private double rowsPerSecond;
+    private double bytesPerSecond;
+
+    TaskProgress(String taskId) {
+        this.taskId = taskId;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public TaskState getState() {
+        return state.get();
+    }
+
+    long batchesInFlight() {
+        return batchesInFlight.sum();
+    }
+
+    public void addRowsRead(long rows) {
+        rowsRead.add(rows);
+    }
+
+    public void addRowsWritten(long rows) {
+        rowsWritten.add(rows);
+    }
+
+    public void addBytesProcessed(long bytes) {
+        bytesProcessed.add(bytes);
+    }
+
+    public void batchStarted() {
+        batchesInFlight.increment();
+    }
+
+    public void batchFinished() {
+        batchesInFlight.decrement();
+    }
+
+    /**
+     * Sets the number of bytes the task will process in total, enabling percentage and ETA.
+     */
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    /**
+     * @return false if the task already finished, e.g. was cancelled while queued
+     */
+    synchronized boolean start() {
+        if (!state.compareAndSet(TaskState.QUEUED, TaskState.RUNNING)) {
+            return false;
+        }
+        long now = System.nanoTime();
+        startNanos = now;
+        sampleNanos = now;
+        return true;
+    }
+
+    /**
+     * Moves the task to {@code finalState} unless it has already finished.
+     *
+     * @return false if another terminal state was set first
+     */
+    boolean finish(TaskState finalState, String message) {
+        long now = System.nanoTime();
+        // Locked so a snapshot never sees the terminal state without its end time and error
+        synchronized (this) {
+            TaskState current;
+            do {
+                current = state.get();
+                if (current.isTerminal()) {
+                    return false;
+                }
+            } while (!state.compareAndSet(current, finalState));
+            endNanos = now;
+            finishedAtMillis = System.currentTimeMillis();
+            error = message;
+            return true;
+        }
+    }
+
+    boolean isFinished() {
+        return state.get().isTerminal();
+    }
+
+    long getFinishedAtMillis() {
+        return finishedAtMillis;
+    }
+
+    public synchronized ProgressSnapshot snapshot() {
+        ProgressSnapshot snapshot = new ProgressSnapshot();
+        long written = rowsWritten.sum();
+        long bytes = bytesProcessed.sum();
+        long total = totalBytes;
+        TaskState current = state.get();
+
+        snapshot.setTaskId(taskId);
+        snapshot.setState(current);
+        snapshot.setRowsRead(rowsRead.sum());
+        snapshot.setRowsWritten(written);
+        snapshot.setBytesProcessed(bytes);
+        snapshot.setTotalBytes(total);
+        snapshot.setBatchesInFlight((int) batchesInFlight.sum());
+        snapshot.setError(error);
+
+        if (startNanos == 0) {
+            // Never started, e.g. cancelled while queued
+            return snapshot;
+        }
+        boolean finished = current.isTerminal();
+        long now = finished ? endNanos : System.nanoTime();
+        long elapsedNanos = now - startNanos;
+        snapshot.setElapsedMillis(elapsedNanos / 1_000_000);
+
+        if (finished) {
+            // Report the average over the whole run once it is over
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            rowsPerSecond = written / seconds;
+            bytesPerSecond = bytes / seconds;
+        } else if (now - sampleNanos >= RATE_WINDOW_NANOS) {
+            double seconds = (now - sampleNanos) / 1e9;
+            rowsPerSecond = (written - sampleRows) / seconds;
+            bytesPerSecond = (bytes - sampleBytes) / seconds;
+            sampleNanos = now;
+            sampleRows = written;
+            sampleBytes = bytes;
+        }
+        snapshot.setRowsPerSecond(rowsPerSecond);
+        snapshot.setMegabytesPerSecond(bytesPerSecond / (1 << 20));
+
+        if (current == TaskState.COMPLETED) {
+            snapshot.setPercentComplete(100);
+            snapshot.setEtaSeconds(0L);
+        } else if (total > 0) {
+            snapshot.setPercentComplete(Math.min(100.0, bytes * 100.0 / total));
+            if (!finished && bytesPerSecond > 0) {
+                snapshot.setEtaSeconds((long) Math.ceil(Math.max(0, total - bytes) / bytesPerSecond));
+            }
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,139 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ChunkedUploadConfig;
+import com.clickhouse.model.UploadStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private ChunkedUploadService service;
+
+    private ChunkedUploadService newService(Duration sessionTimeout) {
+        ChunkedUploadConfig properties = new ChunkedUploadConfig();
+        properties.setSessionTimeout(sessionTimeout);
+        service = new ChunkedUploadService(properties, dir);
+        return service;
+    }
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void skipsResentBytesAndChecksTheChecksum() throws IOException {
+        ChunkedUploadService uploads = newService(Duration.ofHours(1));
+        String uploadId = uploads.init("data.csv", 8).getUploadId();
+        assertEquals(5, uploads.writeChunk(uploadId, 0, body("a,b\n1")).getReceivedBytes());
+        // The client resends from offset 3 after losing the response
+        assertEquals(8, uploads.writeChunk(uploadId, 3, body("\n1,x\n")).getReceivedBytes());
+        assertThrows(IllegalStateException.class, () -> uploads.writeChunk(uploadId, 12, body("2,y\n")));
+
+        UploadStatus status = uploads.complete(uploadId,
+            "eccc6303d8ede5e5ec22d288b8350193f9eb907c93f49c78d5b1ff0af7ecd450");
+        assertTrue(status.isComplete());
+        assertEquals("a,b\n1,x\n", Files.readString(Path.of(status.getFilePath())));
+    }
+
+    @Test
+    void answersStatusWhileAChunkIsBeingReceived() throws Exception {
+        ChunkedUploadService uploads = newService(Duration.ofHours(1));
+        String uploadId = uploads.init("data.csv", -1).getUploadId();
+        CountDownLatch firstBytesRead = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slowBody = new InputStream() {
+            private int sent;
+
+            @Override
+            public int read() throws IOException {
+                if (sent == 4) {
+                    firstBytesRead.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return sent < 8 ? "a,b\n1,x\n".charAt(sent++) : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int c = read();
+                if (c < 0) {
+                    return -1;
+                }
+                b[off] = (byte) c;
+                return 1;
+            }
+        };
+        CompletableFuture<UploadStatus> writing = CompletableFuture.supplyAsync(() -> {
+            try {
+                return uploads.writeChunk(uploadId, 0, slowBody);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(firstBytesRead.await(5, TimeUnit.SECONDS));
+
+        assertEquals(4, CompletableFuture.supplyAsync(() -> uploads.status(uploadId))
+            .get(5, TimeUnit.SECONDS).getReceivedBytes());
+        assertThrows(IllegalStateException.class, () -> uploads.writeChunk(uploadId, 4, body("2,y\n")));
+        assertThrows(IllegalStateException.class, () -> uploads.complete(uploadId, null));
+
+        release.countDown();
+        assertEquals(8, writing.get(5, TimeUnit.SECONDS).getReceivedBytes());
+        assertTrue(uploads.complete(uploadId, null).isComplete());
+    }
+
+    @Test
+    void abortsAbandonedUploadsAndDeletesOldPartialFiles() throws Exception {
+        ChunkedUploadService uploads = newService(Duration.ofMillis(50));
+        String uploadId = uploads.init("data.csv", -1).getUploadId();
+        uploads.writeChunk(uploadId, 0, body("a,b\n"));
+        Path partial = dir.resolve(uploadId + ".partial");
+        assertTrue(Files.exists(partial));
+        // Left behind by an earlier run
+        Path orphan = dir.resolve("0a1b2c.partial");
+        Files.writeString(orphan, "x");
+        Files.setLastModifiedTime(orphan, FileTime.from(Instant.now().minusSeconds(60)));
+
+        Thread.sleep(100);
+        Path fresh = dir.resolve("3d4e5f.partial");
+        Files.writeString(fresh, "x");
+        uploads.removeAbandoned();
+
+        assertFalse(Files.exists(partial));
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(fresh));
+        assertThrows(IllegalArgumentException.class, () -> uploads.status(uploadId));
+        assertThrows(IllegalArgumentException.class, () -> uploads.writeChunk(uploadId, 4, body("1,x\n")));
+    }
+}
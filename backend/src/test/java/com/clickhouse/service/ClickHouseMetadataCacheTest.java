@@ -0,0 +1,50 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.MetadataCacheConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClickHouseMetadataCacheTest {
+    private final ClickHouseMetadataCache cache = new ClickHouseMetadataCache(new MetadataCacheConfig());
+
+    private static ClickHouseConnection connection(String token) {
+        ClickHouseConnection connection = new ClickHouseConnection();
+        connection.setHost("localhost");
+        connection.setPort(8123);
+        connection.setUser("default");
+        connection.setDatabase("default");
+        connection.setJwtToken(token);
+        return connection;
+    }
+
+    @Test
+    void sharesEntriesBetweenRequestsWithTheSameCredentials() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ClickHouseMetadataCache.Loader<List<String>> loader = () -> {
+            loads.incrementAndGet();
+            return List.of("events");
+        };
+        assertEquals(List.of("events"), cache.getTables(connection("token-a"), loader));
+        assertEquals(List.of("events"), cache.getTables(connection("token-a"), loader));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void doesNotServeEntriesToOtherCredentials() throws Exception {
+        cache.getTables(connection("valid"), () -> List.of("events"));
+
+        // The server would reject this token, so the load fails instead of returning the cached listing
+        assertThrows(SecurityException.class, () -> cache.getTables(connection("revoked"), () -> {
+            throw new SecurityException("Authentication failed");
+        }));
+        assertThrows(SecurityException.class, () -> cache.getTables(connection(null), () -> {
+            throw new SecurityException("Authentication failed");
+        }));
+    }
+}
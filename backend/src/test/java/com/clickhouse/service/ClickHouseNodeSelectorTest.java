@@ -0,0 +1,195 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Selects among stand-in nodes that answer {@code /ping}, plus a port nothing listens on.
+ */
+class ClickHouseNodeSelectorTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<ClickHouseNodeSelector> selectors = new ArrayList<>();
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private int first;
+    private int second;
+    private int closed;
+
+    @BeforeEach
+    void startServers() throws IOException {
+        first = startServer();
+        second = startServer();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closed = socket.getLocalPort();
+        }
+    }
+
+    @AfterEach
+    void stopServers() {
+        releaseSlow.countDown();
+        selectors.forEach(ClickHouseNodeSelector::shutdown);
+        servers.forEach(server -> server.stop(0));
+    }
+
+    private int startServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        servers.add(server);
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (exchange.getRequestURI().getPath().equals("/slow")) {
+            slowStarted.countDown();
+            try {
+                releaseSlow.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+    }
+
+    private ClickHouseNodeSelector selector(ClickHouseConfig config) {
+        ClickHouseNodeSelector selector = new ClickHouseNodeSelector(config, new ClickHouseTransportRegistry(config));
+        selectors.add(selector);
+        return selector;
+    }
+
+    private static ClickHouseConnection connection(int port, int... replicas) {
+        ClickHouseConnection connection = new ClickHouseConnection();
+        connection.setHost("127.0.0.1");
+        connection.setPort(port);
+        connection.setUser("default");
+        List<String> hosts = new ArrayList<>();
+        for (int replica : replicas) {
+            hosts.add("127.0.0.1:" + replica);
+        }
+        connection.setReplicas(hosts);
+        return connection;
+    }
+
+    private static List<Integer> ports(List<ClickHouseConnection> candidates) {
+        return candidates.stream().map(ClickHouseConnection::getPort).toList();
+    }
+
+    @Test
+    void rotatesOverHealthyNodes() {
+        ClickHouseNodeSelector selector = selector(new ClickHouseConfig());
+        ClickHouseConnection config = connection(first, second);
+
+        assertEquals(List.of(first, second), ports(selector.candidates(config)));
+        assertEquals(List.of(second, first), ports(selector.candidates(config)));
+        assertEquals(List.of(first, second), ports(selector.candidates(config)));
+        ClickHouseConnection single = connection(first);
+        assertEquals(List.of(single), selector.candidates(single));
+    }
+
+    @Test
+    void failsOverToTheNextNodeAndTriesTheDownNodeLast() throws Exception {
+        ClickHouseConfig properties = new ClickHouseConfig();
+        properties.setConnectTimeout(Duration.ofSeconds(2));
+        ClickHouseTransportRegistry registry = new ClickHouseTransportRegistry(properties);
+        ClickHouseNodeSelector selector = new ClickHouseNodeSelector(properties, registry);
+        selectors.add(selector);
+        ClickHouseConnection config = connection(closed, first);
+        List<Integer> tried = new ArrayList<>();
+
+        int status = selector.execute(config, node -> {
+            tried.add(node.getPort());
+            HttpRequest ping = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + node.getPort() + "/ping"))
+                .GET().build();
+            return registry.transportFor(node).send(ping, HttpResponse.BodyHandlers.discarding()).statusCode();
+        });
+
+        assertEquals(200, status);
+        assertEquals(List.of(closed, first), tried);
+        // Still down on the next rotation, which would otherwise put it first
+        assertEquals(List.of(first, closed), ports(selector.candidates(config)));
+        assertEquals(List.of(first, closed), ports(selector.candidates(config)));
+    }
+
+    @Test
+    void pingsABusyNodeOutsideItsConnectionSlots() throws Exception {
+        ClickHouseConfig properties = new ClickHouseConfig();
+        properties.setMaxConnectionsPerEndpoint(1);
+        properties.setHealthCheckInterval(Duration.ofMillis(50));
+        ClickHouseTransportRegistry registry = new ClickHouseTransportRegistry(properties);
+        ClickHouseNodeSelector selector = new ClickHouseNodeSelector(properties, registry);
+        selectors.add(selector);
+        ClickHouseConnection config = connection(first, second);
+        ClickHouseConnection busy = selector.candidates(config).get(0);
+        assertEquals(first, busy.getPort());
+
+        // The node's only connection slot stays taken by a long query
+        CompletableFuture<HttpResponse<Void>> slow = registry.transportFor(busy).sendAsync(
+            HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + first + "/slow")).GET().build(),
+            HttpResponse.BodyHandlers.discarding());
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        selector.report(busy, new ConnectException("refused"));
+        assertEquals(List.of(second, first), ports(selector.candidates(config)));
+        assertEquals(List.of(second, first), ports(selector.candidates(config)));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        boolean backUp = false;
+        while (!backUp && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+            // Back up means it is rotated first again on one of two consecutive calls
+            backUp = selector.candidates(config).get(0).getPort() == first
+                || selector.candidates(config).get(0).getPort() == first;
+        }
+        assertTrue(backUp, "the ping waited behind the busy slot");
+        assertFalse(slow.isDone());
+        releaseSlow.countDown();
+        assertEquals(200, slow.get(5, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    void forgetsTheRotationsOfIdleTopologies() throws Exception {
+        ClickHouseConfig properties = new ClickHouseConfig();
+        properties.setHealthCheckInterval(Duration.ofMillis(20));
+        properties.setIdleEvictionTimeout(Duration.ofMillis(1));
+        ClickHouseNodeSelector selector = selector(properties);
+        for (int i = 0; i < 50; i++) {
+            selector.candidates(connection(first, second, 20_000 + i));
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<List<?>, ?> rotations = (Map<List<?>, ?>) ReflectionTestUtils.getField(selector, "rotations");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!rotations.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(rotations.isEmpty(), rotations.size() + " rotations left");
+    }
+}
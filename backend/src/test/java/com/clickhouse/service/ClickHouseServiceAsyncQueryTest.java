@@ -0,0 +1,171 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs non-blocking queries against a stand-in server allowing one connection, so a second query waits
+ * for the first to finish.
+ */
+class ClickHouseServiceAsyncQueryTest {
+
+    private HttpServer server;
+    private ClickHouseNodeSelector nodeSelector;
+    private ClickHouseService service;
+    private ClickHouseConnection connection;
+
+    private final List<String> queries = new CopyOnWriteArrayList<>();
+    private final List<String> kills = new CopyOnWriteArrayList<>();
+    private final Map<String, String> queryIds = new ConcurrentHashMap<>();
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private final CountDownLatch killed = new CountDownLatch(1);
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        ClickHouseConfig config = new ClickHouseConfig();
+        config.setMaxConnectionsPerEndpoint(1);
+        ClickHouseTransportRegistry registry = new ClickHouseTransportRegistry(config);
+        nodeSelector = new ClickHouseNodeSelector(config, registry);
+        service = new ClickHouseService();
+        ReflectionTestUtils.setField(service, "transportRegistry", registry);
+        ReflectionTestUtils.setField(service, "nodeSelector", nodeSelector);
+        ReflectionTestUtils.setField(service, "metrics", new IngestionMetrics(new SimpleMeterRegistry()));
+
+        connection = new ClickHouseConnection();
+        connection.setHost("127.0.0.1");
+        connection.setPort(server.getAddress().getPort());
+        connection.setUser("default");
+        connection.setDatabase("default");
+    }
+
+    @AfterEach
+    void stopServer() {
+        releaseSlow.countDown();
+        server.stop(0);
+        nodeSelector.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        if (query.startsWith("KILL QUERY")) {
+            kills.add(query);
+            killed.countDown();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        queries.add(query);
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        for (String parameter : rawQuery != null ? rawQuery.split("&") : new String[0]) {
+            String[] pair = parameter.split("=", 2);
+            if (pair[0].equals("query_id")) {
+                queryIds.put(query, URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write("1\ta\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            if (query.startsWith("SELECT slow")) {
+                slowStarted.countDown();
+                releaseSlow.await(10, TimeUnit.SECONDS);
+            }
+            out.write("2\tb\\tc\n3\t\\N\n".getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    @Test
+    void collectsTheRowsOfAQuery() throws Exception {
+        List<List<String>> rows = service.queryAsync(connection, "test", "SELECT fast").get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(List.of("1", "a"), List.of("2", "b\tc"), Arrays.asList("3", null)), rows);
+        assertEquals(List.of("SELECT fast FORMAT TabSeparated"), queries);
+    }
+
+    @Test
+    void doesNotSendAQueryCancelledWhileWaitingForAConnection() throws Exception {
+        CompletableFuture<List<List<String>>> slow = service.queryAsync(connection, "test", "SELECT slow");
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<List<List<String>>> queued = service.queryAsync(connection, "test", "SELECT queued");
+
+        queued.cancel(true);
+        releaseSlow.countDown();
+        assertEquals(3, slow.get(5, TimeUnit.SECONDS).size());
+        // Queued after the cancelled query, so it only runs once that one has given up its turn
+        service.queryAsync(connection, "test", "SELECT fast").get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("SELECT slow FORMAT TabSeparated", "SELECT fast FORMAT TabSeparated"), queries);
+        assertTrue(kills.isEmpty(), "nothing to kill, saw " + kills);
+    }
+
+    @Test
+    void killsARunningQueryWithoutWaitingForAConnection() throws Exception {
+        CompletableFuture<List<List<String>>> slow = service.queryAsync(connection, "test", "SELECT slow");
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        // Takes the connection as soon as the slow query gives it up, and holds it until released
+        CompletableFuture<List<List<String>>> next = service.queryAsync(connection, "test", "SELECT slow next");
+
+        slow.cancel(true);
+
+        assertTrue(killed.await(5, TimeUnit.SECONDS), "KILL QUERY was not sent");
+        String queryId = queryIds.get("SELECT slow FORMAT TabSeparated");
+        assertEquals(List.of("KILL QUERY WHERE query_id = '" + queryId + "' ASYNC"), kills);
+        assertThrows(Exception.class, () -> slow.get(1, TimeUnit.SECONDS));
+        releaseSlow.countDown();
+        assertEquals(3, next.get(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    void failsWhenTheServerRejectsTheQuery() {
+        server.removeContext("/");
+        server.createContext("/", exchange -> {
+            byte[] body = "Code: 60. Table default.missing does not exist".getBytes(StandardCharsets.UTF_8);
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(404, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> service.queryAsync(connection, "test", "SELECT * FROM missing").get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause().getMessage().contains("status code: 404"), error.getCause().getMessage());
+    }
+}
@@ -0,0 +1,130 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.config.IngestionConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.clickhouse.model.ColumnSelection;
+import com.clickhouse.model.FlatFileConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClickHouseServiceExportTest {
+    private static final Pattern RANGE = Pattern.compile("% (\\d+) = (\\d+)");
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private ExecutorService exportExecutor;
+    private ClickHouseNodeSelector nodeSelector;
+    private ClickHouseService service;
+    private ClickHouseConnection connection;
+    private final IngestionConfig ingestionConfig = new IngestionConfig();
+
+    private final Set<String> ranges = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        ClickHouseConfig httpConfig = new ClickHouseConfig();
+        ClickHouseTransportRegistry registry = new ClickHouseTransportRegistry(httpConfig);
+        nodeSelector = new ClickHouseNodeSelector(httpConfig, registry);
+        exportExecutor = Executors.newFixedThreadPool(16);
+        service = new ClickHouseService();
+        ReflectionTestUtils.setField(service, "transportRegistry", registry);
+        ReflectionTestUtils.setField(service, "nodeSelector", nodeSelector);
+        ReflectionTestUtils.setField(service, "exportExecutor", exportExecutor);
+        ReflectionTestUtils.setField(service, "ingestionConfig", ingestionConfig);
+        ReflectionTestUtils.setField(service, "httpConfig", httpConfig);
+        ReflectionTestUtils.setField(service, "metrics", new IngestionMetrics(new SimpleMeterRegistry()));
+
+        connection = new ClickHouseConnection();
+        connection.setHost("127.0.0.1");
+        connection.setPort(server.getAddress().getPort());
+        connection.setUser("default");
+        connection.setDatabase("default");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        exportExecutor.shutdownNow();
+        nodeSelector.shutdown();
+    }
+
+    /**
+     * Answers each hash range query with one row naming the range.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+        try {
+            Matcher range = RANGE.matcher(query);
+            String response = "";
+            if (range.find()) {
+                ranges.add(range.group(1) + "/" + range.group(2));
+                response = range.group(2) + "\tpart\n";
+                Thread.sleep(20);
+            }
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrent.decrementAndGet();
+        }
+    }
+
+    @Test
+    void capsTheNumberOfRangesOfAnExport() throws Exception {
+        ingestionConfig.setMaxExportParallelism(4);
+        Path target = dir.resolve("out.csv");
+        FlatFileConfig fileConfig = new FlatFileConfig();
+        fileConfig.setFilePath(target.toString());
+        fileConfig.setDelimiter(",");
+        fileConfig.setExportParallelism(10_000);
+        ColumnSelection columns = new ColumnSelection();
+        columns.setColumns(List.of("id", "name"));
+
+        String result = service.exportToFile(connection, "t", columns, fileConfig, new TaskProgress("export"));
+
+        assertTrue(result.startsWith("Successfully exported 4 records"), result);
+        assertEquals(Set.of("4/0", "4/1", "4/2", "4/3"), ranges);
+        assertTrue(maxConcurrent.get() <= 4, "at most 4 concurrent requests, saw " + maxConcurrent.get());
+        assertEquals(List.of("id,name", "0,part", "1,part", "2,part", "3,part"),
+            Files.readAllLines(target, StandardCharsets.UTF_8));
+    }
+}
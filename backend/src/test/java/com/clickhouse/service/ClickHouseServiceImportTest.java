@@ -0,0 +1,314 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ClickHouseConfig;
+import com.clickhouse.config.IngestionConfig;
+import com.clickhouse.config.MetadataCacheConfig;
+import com.clickhouse.config.ValidationReportConfig;
+import com.clickhouse.model.ClickHouseConnection;
+import com.clickhouse.model.ColumnSelection;
+import com.clickhouse.model.FlatFileConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Imports files into a stand-in server that keeps what a MergeTree table with a deduplication window
+ * would: rows of inserts whose token it has not seen before.
+ */
+class ClickHouseServiceImportTest {
+
+    @TempDir
+    Path dir;
+
+    private HttpServer server;
+    private ExecutorService parseExecutor;
+    private ClickHouseNodeSelector nodeSelector;
+    private ClickHouseService service;
+    private ClickHouseConnection connection;
+    private final IngestionConfig ingestionConfig = new IngestionConfig();
+
+    private final Set<String> tokens = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicInteger inserts = new AtomicInteger();
+    private volatile int failInsertsAfter = Integer.MAX_VALUE;
+    private final List<byte[]> parquetBodies = new CopyOnWriteArrayList<>();
+    // Parquet inserts that are committed but answered with an error, as when the response is lost
+    private final AtomicInteger lostParquetResponses = new AtomicInteger();
+    private final AtomicInteger maxInsertWorkers = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        ClickHouseConfig config = new ClickHouseConfig();
+        ClickHouseTransportRegistry registry = new ClickHouseTransportRegistry(config);
+        nodeSelector = new ClickHouseNodeSelector(config, registry);
+        ingestionConfig.setParseThreads(4);
+        parseExecutor = Executors.newFixedThreadPool(ingestionConfig.getParseThreads());
+        service = new ClickHouseService();
+        ReflectionTestUtils.setField(service, "transportRegistry", registry);
+        ReflectionTestUtils.setField(service, "ingestionConfig", ingestionConfig);
+        ReflectionTestUtils.setField(service, "httpConfig", config);
+        ReflectionTestUtils.setField(service, "nodeSelector", nodeSelector);
+        ReflectionTestUtils.setField(service, "fileService", new FileService(new ValidationReportConfig()));
+        ReflectionTestUtils.setField(service, "csvParseExecutor", parseExecutor);
+        ReflectionTestUtils.setField(service, "metrics", new IngestionMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "metadataCache", new ClickHouseMetadataCache(new MetadataCacheConfig()));
+
+        connection = new ClickHouseConnection();
+        connection.setHost("127.0.0.1");
+        connection.setPort(server.getAddress().getPort());
+        connection.setUser("default");
+        connection.setDatabase("default");
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+        parseExecutor.shutdownNow();
+        nodeSelector.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        String rawQuery = exchange.getRequestURI().getRawQuery();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                String[] pair = parameter.split("=", 2);
+                parameters.put(pair[0], URLDecoder.decode(pair[1], StandardCharsets.UTF_8));
+            }
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String query = parameters.getOrDefault("query", new String(body, StandardCharsets.UTF_8));
+        int status = 200;
+        String response = "";
+        if (query.startsWith("INSERT")) {
+            // Workers are named clickhouse-insert-<pipeline>-<worker>, the latest pipeline being this import's
+            Map<Integer, Long> workers = new HashMap<>();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("clickhouse-insert-")) {
+                    String[] name = thread.getName().split("-");
+                    workers.merge(Integer.parseInt(name[2]), 1L, Long::sum);
+                }
+            }
+            workers.keySet().stream().max(Integer::compare).ifPresent(pipeline ->
+                maxInsertWorkers.accumulateAndGet(workers.get(pipeline).intValue(), Math::max));
+            if (inserts.incrementAndGet() > failInsertsAfter) {
+                status = 400;
+            } else if (query.endsWith("FORMAT Parquet")) {
+                parquetBodies.add(body);
+                if (tokens.add(parameters.get("insert_deduplication_token"))) {
+                    Path received = Files.write(dir.resolve("received.parquet"), body);
+                    rows.addAndGet(ParquetFooter.read(received).rowCount());
+                }
+                if (lostParquetResponses.getAndDecrement() > 0) {
+                    status = 500;
+                }
+            } else if (tokens.add(parameters.get("insert_deduplication_token"))) {
+                rows.addAndGet(countRows(body));
+            }
+        } else if (query.startsWith("SELECT table, name, type")) {
+            response = "t\tid\tInt64\nt\tname\tString\n";
+        } else if (query.startsWith("DESCRIBE")) {
+            response = "id\tInt64\nname\tString\n";
+        }
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Counts RowBinary rows of an Int64 followed by a String.
+     */
+    private static long countRows(byte[] body) {
+        long count = 0;
+        int i = 0;
+        while (i < body.length) {
+            i += 8;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = body[i++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            i += length;
+            count++;
+        }
+        return count;
+    }
+
+    private void writeRows(Writer writer, int count) throws IOException {
+        writer.write("id,name\n");
+        for (int i = 0; i < count; i++) {
+            writer.write(i + ",name-" + i + "\n");
+        }
+    }
+
+    private FlatFileConfig fileConfig(Path file, int batchSize, int parseParallelism) {
+        FlatFileConfig fileConfig = new FlatFileConfig();
+        fileConfig.setFilePath(file.toString());
+        fileConfig.setDelimiter(",");
+        fileConfig.setInferSchema(false);
+        fileConfig.setBatchSize(batchSize);
+        fileConfig.setParseParallelism(parseParallelism);
+        fileConfig.setInsertParallelism(3);
+        fileConfig.setRetryBackoffMillis(1);
+        return fileConfig;
+    }
+
+    private ColumnSelection columns() {
+        ColumnSelection columns = new ColumnSelection();
+        columns.setColumns(List.of("id", "name"));
+        return columns;
+    }
+
+    @Test
+    void importsEveryBatchOfASmallGzipFile() throws Exception {
+        // Far smaller than the read buffer, so every batch is read within the same compressed bytes
+        Path file = dir.resolve("data.csv.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+            writeRows(writer, 2000);
+        }
+
+        service.importFromFile(connection, "t", columns(), fileConfig(file, 50, 1), new TaskProgress("gzip"));
+
+        assertEquals(40, tokens.size());
+        assertEquals(2000, rows.get());
+    }
+
+    @Test
+    void resumesAGzipImportFromTheCheckpoint() throws Exception {
+        Path file = dir.resolve("data.csv.gz");
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+            writeRows(writer, 2000);
+        }
+        Path checkpoint = dir.resolve("import.checkpoint");
+        FlatFileConfig fileConfig = fileConfig(file, 50, 1);
+        fileConfig.setCheckpointPath(checkpoint.toString());
+
+        failInsertsAfter = 10;
+        assertThrows(Exception.class,
+            () -> service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("first")));
+        assertTrue(Files.exists(checkpoint));
+
+        failInsertsAfter = Integer.MAX_VALUE;
+        service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("resumed"));
+        assertEquals(2000, rows.get());
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void resumesAPlainImportParsedInChunks() throws Exception {
+        Path file = dir.resolve("data.csv");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRows(writer, 5000);
+        }
+        Path checkpoint = dir.resolve("import.checkpoint");
+        FlatFileConfig fileConfig = fileConfig(file, 100, 4);
+        fileConfig.setCheckpointPath(checkpoint.toString());
+
+        failInsertsAfter = 10;
+        assertThrows(Exception.class,
+            () -> service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("first")));
+
+        failInsertsAfter = Integer.MAX_VALUE;
+        service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("resumed"));
+        assertEquals(5000, rows.get());
+        assertFalse(Files.exists(checkpoint));
+    }
+
+    @Test
+    void importsACarriageReturnOnlyFileInParallel() throws Exception {
+        Path file = dir.resolve("data.csv");
+        StringBuilder content = new StringBuilder("id,name\r");
+        for (int i = 0; i < 1000; i++) {
+            content.append(i).append(",'name\r").append(i).append("'\r");
+        }
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        FlatFileConfig fileConfig = fileConfig(file, 100, 4);
+        fileConfig.setQuote("'");
+
+        service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("cr"));
+        assertEquals(1000, rows.get());
+    }
+
+    @Test
+    void retriesAParquetInsertUnderTheSameToken() throws Exception {
+        Path file = ParquetFiles.write(dir.resolve("data.parquet"), 700,
+            ParquetFiles.Element.group("schema", ParquetFiles.REQUIRED, 2, -1),
+            ParquetFiles.Element.leaf("id", 2, ParquetFiles.REQUIRED, -1),
+            ParquetFiles.Element.leaf("name", 6, ParquetFiles.REQUIRED, 0));
+        lostParquetResponses.set(2);
+
+        String result = service.importFromFile(connection, "t", columns(), fileConfig(file, 100, 1),
+            new TaskProgress("parquet"));
+
+        assertEquals("Successfully imported 700 records from " + file, result);
+        assertEquals(3, parquetBodies.size());
+        for (byte[] body : parquetBodies) {
+            assertArrayEquals(Files.readAllBytes(file), body);
+        }
+        assertEquals(1, tokens.size());
+        assertEquals(700, rows.get());
+    }
+
+    @Test
+    void capsTheParallelismRequestedForAnImport() throws Exception {
+        Path file = dir.resolve("data.csv");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeRows(writer, 2000);
+        }
+        ingestionConfig.setMaxInsertParallelism(2);
+        ingestionConfig.setMaxInFlightBatches(2);
+        ingestionConfig.setParseThreads(2);
+        FlatFileConfig fileConfig = fileConfig(file, 100, 10_000);
+        fileConfig.setInsertParallelism(10_000);
+        fileConfig.setMaxInFlightBatches(10_000);
+
+        service.importFromFile(connection, "t", columns(), fileConfig, new TaskProgress("capped"));
+
+        assertEquals(2000, rows.get());
+        assertEquals(2, maxInsertWorkers.get());
+    }
+}
@@ -0,0 +1,39 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnProfileTest {
+
+    private static String infer(String... values) {
+        ColumnProfile profile = new ColumnProfile("c");
+        for (String value : values) {
+            profile.observe(value);
+        }
+        return profile.inferredType();
+    }
+
+    @Test
+    void infersNumbers() {
+        assertEquals("Int64", infer("0", "12", "-7", "+3"));
+        assertEquals("Float64", infer("0.5", "-0.25", "1e3", "7"));
+        assertEquals("Nullable(Int64)", infer("1", "", "2"));
+    }
+
+    @Test
+    void keepsNumbersWithLeadingZerosAsText() {
+        assertEquals("String", infer("02134", "10001", "94105"));
+        assertEquals("String", infer("1.5", "-01.5"));
+        assertEquals("String", infer("12", "+007"));
+    }
+
+    @Test
+    void storesTimestampsWithoutAnOffsetInUtc() {
+        assertEquals("Date", infer("2024-03-31", "2024-02-29"));
+        // 02:30 does not exist in most European zones on 2024-03-31
+        assertEquals("DateTime('UTC')", infer("2024-03-31 02:30:00", "2024-10-27T02:30:00"));
+        assertEquals("Nullable(DateTime('UTC'))", infer("2024-03-31 02:30:00", ""));
+        assertEquals("String", infer("2024-03-31 02:30:00", "2024-03-31 02:30:00+02:00"));
+    }
+}
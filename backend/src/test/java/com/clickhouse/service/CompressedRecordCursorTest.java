@@ -0,0 +1,101 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.CompressionCodec;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompressedRecordCursorTest {
+    private static final String CONTENT = "﻿id,name,note\r\n"
+        + "1,\"a,b\",\"line\nbreak\"\n"
+        + "\n"
+        + "2,\"say \"\"hi\"\"\",été\n"
+        + "3,,\n";
+
+    @TempDir
+    Path dir;
+
+    private Path write(String name, CompressionCodec codec, String content) throws IOException {
+        Path file = dir.resolve(name);
+        try (OutputStream out = CompressionStreams.compress(codec, Files.newOutputStream(file))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    private record Record(long line, String[] fields) {
+    }
+
+    private static List<Record> readAll(Path file, CsvDialect dialect) throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (RecordCursor cursor = RecordCursor.open(file, dialect)) {
+            while (cursor.next()) {
+                records.add(new Record(cursor.lineNumber(), cursor.fields()));
+            }
+        }
+        return records;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = {"GZIP", "ZSTD", "LZ4"})
+    void readsTheSameRecordsAsThePlainFile(CompressionCodec codec) throws IOException {
+        Path compressed = write("data.csv" + codec.getFileExtension(), codec, CONTENT);
+        assertEquals(codec, RecordCursor.detectCompression(compressed));
+        try (RecordCursor cursor = RecordCursor.open(compressed, ',')) {
+            assertInstanceOf(CompressedRecordCursor.class, cursor);
+        }
+
+        List<Record> records = readAll(compressed, CsvDialect.rfc4180(','));
+        List<Record> plain = readAll(write("data.csv", CompressionCodec.NONE, CONTENT), CsvDialect.rfc4180(','));
+
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[] {"id", "name", "note"}, records.get(0).fields());
+        assertArrayEquals(new String[] {"1", "a,b", "line\nbreak"}, records.get(1).fields());
+        assertArrayEquals(new String[] {"2", "say \"hi\"", "été"}, records.get(2).fields());
+        assertArrayEquals(new String[] {"3", "", ""}, records.get(3).fields());
+        assertEquals(List.of(1L, 2L, 5L, 6L), records.stream().map(Record::line).toList());
+        for (int i = 0; i < plain.size(); i++) {
+            assertArrayEquals(plain.get(i).fields(), records.get(i).fields(), "record " + i);
+            assertEquals(plain.get(i).line(), records.get(i).line(), "line of record " + i);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = {"GZIP", "ZSTD", "LZ4"})
+    void honoursTheQuoteAndEscapeOfTheDialect(CompressionCodec codec) throws IOException {
+        Path compressed = write("data.csv" + codec.getFileExtension(), codec, "'a;b';c\\;d\n'it''s';x\n");
+
+        List<Record> records = readAll(compressed, new CsvDialect(';', '\'', '\\'));
+
+        assertArrayEquals(new String[] {"a;b", "c;d"}, records.get(0).fields());
+        assertArrayEquals(new String[] {"it's", "x"}, records.get(1).fields());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = CompressionCodec.class, names = {"GZIP", "ZSTD", "LZ4"})
+    void reportsATruncatedStream(CompressionCodec codec) throws IOException {
+        StringBuilder content = new StringBuilder("id,name\n");
+        for (int i = 0; i < 50_000; i++) {
+            content.append(i).append(",name-").append(i).append('\n');
+        }
+        Path compressed = write("data.csv" + codec.getFileExtension(), codec, content.toString());
+        byte[] bytes = Files.readAllBytes(compressed);
+        Files.write(compressed, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> readAll(compressed, CsvDialect.rfc4180(',')));
+    }
+}
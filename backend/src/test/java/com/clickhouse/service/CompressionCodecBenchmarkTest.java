@@ -0,0 +1,74 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.CompressionCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures each HTTP compression codec on a {@code TabSeparated} export body: bytes on the wire, time to
+ * compress (what the server or an insert worker spends) and to decompress as a stream, and the resulting
+ * wall time to move the body over a 1 Gbit/s link when decompression keeps up with the network. Run with
+ * {@code mvn test -Dbenchmarks=true -Dtest=CompressionCodecBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class CompressionCodecBenchmarkTest {
+    private static final int ROWS = 500_000;
+    private static final int ROUNDS = 3;
+    private static final double LINK_BYTES_PER_SECOND = 1e9 / 8;
+
+    @Test
+    void compareCodecsOnAnExportBody() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < ROWS; i++) {
+            body.append(i).append('\t')
+                .append("user-").append(i % 5000).append('\t')
+                .append("2024-01-").append(10 + i % 20).append(' ').append(10 + i % 12).append(":00:00\t")
+                .append(i * 0.125).append('\t')
+                .append(i % 3 == 0 ? "click" : i % 3 == 1 ? "view" : "purchase").append('\n');
+        }
+        byte[] plain = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("%-5s %12s %7s %12s %12s %14s%n",
+            "codec", "wire bytes", "ratio", "compress", "decompress", "1 Gbit/s wall");
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            byte[] wire = null;
+            long compressNanos = Long.MAX_VALUE;
+            long decompressNanos = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(plain.length / 4);
+                try (OutputStream out = CompressionStreams.compress(codec, compressed)) {
+                    out.write(plain);
+                }
+                compressNanos = Math.min(compressNanos, System.nanoTime() - start);
+                wire = compressed.toByteArray();
+
+                start = System.nanoTime();
+                byte[] restored;
+                try (InputStream in = CompressionStreams.decompress(codec, new ByteArrayInputStream(wire))) {
+                    restored = in.readAllBytes();
+                }
+                decompressNanos = Math.min(decompressNanos, System.nanoTime() - start);
+                assertArrayEquals(plain, restored, codec + " should round-trip");
+            }
+
+            double transferMillis = wire.length / LINK_BYTES_PER_SECOND * 1000;
+            System.out.printf("%-5s %,12d %6.1fx %9.1f ms %9.1f ms %11.1f ms%n", codec, wire.length,
+                (double) plain.length / wire.length, compressNanos / 1e6, decompressNanos / 1e6,
+                Math.max(transferMillis, decompressNanos / 1e6));
+            if (codec != CompressionCodec.NONE) {
+                assertTrue(wire.length < plain.length / 2, codec + " should at least halve the body");
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvChunkerTest {
+    private static final CsvDialect CSV = CsvDialect.rfc4180(',');
+
+    @TempDir
+    Path dir;
+
+    private Path write(String content) throws IOException {
+        Path file = dir.resolve("data.csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static long headerEnd(Path file, CsvDialect dialect) throws IOException {
+        try (DelimitedFileScanner header = new DelimitedFileScanner(file, dialect, 0, -1)) {
+            header.next();
+            return header.position();
+        }
+    }
+
+    /**
+     * Scans every chunk on its own and counts the records, checking the chunks are contiguous.
+     */
+    private static long countRecords(Path file, List<CsvChunker.Chunk> chunks, long dataStart,
+                                     CsvDialect dialect) throws IOException {
+        long expectedStart = dataStart;
+        long records = 0;
+        for (CsvChunker.Chunk chunk : chunks) {
+            assertEquals(expectedStart, chunk.start());
+            try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, chunk.start(), chunk.end())) {
+                while (scanner.next()) {
+                    assertEquals(2, scanner.fieldCount(), "record " + records);
+                    records++;
+                }
+            }
+            expectedStart = chunk.end();
+        }
+        assertEquals(Files.size(file), expectedStart);
+        return records;
+    }
+
+    @Test
+    void returnsOneChunkForSmallFilesWhateverTheLineBreaks() throws IOException {
+        for (String lineBreak : List.of("\n", "\r\n", "\r")) {
+            Path file = write("a,b" + lineBreak + "1,x" + lineBreak + "2,y");
+            long dataStart = headerEnd(file, CSV);
+            List<CsvChunker.Chunk> chunks = CsvChunker.split(file, dataStart, 4, CSV);
+            assertEquals(List.of(new CsvChunker.Chunk(dataStart, Files.size(file))), chunks);
+            assertEquals(2, countRecords(file, chunks, dataStart, CSV));
+        }
+    }
+
+    @Test
+    void returnsNoChunksForAHeaderOnlyFile() throws IOException {
+        Path file = write("a,b");
+        assertEquals(List.of(), CsvChunker.split(file, headerEnd(file, CSV), 4, CSV));
+    }
+
+    @Test
+    void splitsLargeFilesOnRecordBoundaries() throws IOException {
+        CsvDialect dialect = new CsvDialect(',', '\'', '\\');
+        Path file = dir.resolve("large.csv");
+        int rows = 400_000;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,text\r");
+            for (int i = 0; i < rows; i++) {
+                // Line breaks inside quotes and after escapes must not end a record
+                String text = switch (i % 4) {
+                    case 0 -> "'multi\rline\r\nvalue " + i + "'";
+                    case 1 -> "escaped\\\rbreak\\'quote " + i;
+                    case 2 -> "'it''s \\' quoted " + i + "'";
+                    default -> "plain value number " + i;
+                };
+                writer.write(i + "," + text + (i % 2 == 0 ? "\r" : "\r\n"));
+            }
+        }
+        long dataStart = headerEnd(file, dialect);
+        List<CsvChunker.Chunk> chunks = CsvChunker.split(file, dataStart, 4, dialect);
+        assertTrue(chunks.size() > 1, "expected several chunks, got " + chunks.size());
+        assertEquals(rows, countRecords(file, chunks, dataStart, dialect));
+    }
+
+    @Test
+    void ignoresQuotesInsideUnquotedFields() throws IOException {
+        Path file = dir.resolve("stray.csv");
+        int rows = 400_000;
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,text\n");
+            // Only a quote at the start of a field opens a quoted field, so this one is literal
+            writer.write("ab\"c,x\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write(i + ",\"multi\nline value " + i + "\"\n");
+            }
+        }
+        long dataStart = headerEnd(file, CSV);
+        List<CsvChunker.Chunk> chunks = CsvChunker.split(file, dataStart, 4, CSV);
+        assertTrue(chunks.size() > 1, "expected several chunks, got " + chunks.size());
+        assertEquals(rows + 1, countRecords(file, chunks, dataStart, CSV));
+    }
+}
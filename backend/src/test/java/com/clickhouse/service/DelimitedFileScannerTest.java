@@ -0,0 +1,168 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DelimitedFileScannerTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(String content) throws IOException {
+        Path file = dir.resolve("data.csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String[]> readAll(Path file, CsvDialect dialect) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, 0, -1)) {
+            while (scanner.next()) {
+                records.add(scanner.fields());
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void decodesEscapeSequences() throws IOException {
+        CsvDialect dialect = new CsvDialect(',', '"', '\\');
+        Path file = write("a\\,b,\"q\\\"uote\",tab\\there\n\"line\\\nbreak\",\\\\,end\n");
+        List<String[]> records = readAll(file, dialect);
+        assertEquals(2, records.size());
+        assertArrayEquals(new String[] {"a,b", "q\"uote", "tab\there"}, records.get(0));
+        assertArrayEquals(new String[] {"line\nbreak", "\\", "end"}, records.get(1));
+    }
+
+    @Test
+    void usesTheConfiguredQuote() throws IOException {
+        CsvDialect dialect = new CsvDialect(';', '\'', CsvDialect.NO_ESCAPE);
+        List<String[]> records = readAll(write("'a;b';'it''s'\r\"c\";d\r"), dialect);
+        assertArrayEquals(new String[] {"a;b", "it's"}, records.get(0));
+        assertArrayEquals(new String[] {"\"c\"", "d"}, records.get(1));
+    }
+
+    @Test
+    void tracksLinesAndOffsetsAcrossQuotedLineBreaks() throws IOException {
+        String header = "\uFEFFid,note\r\n";
+        String first = "1,\"two\r\nlines\"\r\n";
+        String blank = "\r\n";
+        String second = "2,\"été\"";
+        Path file = write(header + first + blank + second);
+        long firstStart = utf8Length(header);
+        long secondStart = firstStart + utf8Length(first + blank);
+
+        try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, ',')) {
+            assertTrue(scanner.next());
+            assertArrayEquals(new String[] {"id", "note"}, scanner.fields());
+            assertEquals(1, scanner.lineNumber());
+            assertEquals(3, scanner.recordStart());
+            assertEquals(firstStart, scanner.position());
+
+            assertTrue(scanner.next());
+            assertArrayEquals(new String[] {"1", "two\r\nlines"}, scanner.fields());
+            assertEquals(2, scanner.lineNumber());
+            assertEquals(firstStart, scanner.recordStart());
+
+            assertTrue(scanner.next());
+            assertArrayEquals(new String[] {"2", "été"}, scanner.fields());
+            assertEquals(5, scanner.lineNumber());
+            assertEquals(secondStart, scanner.recordStart());
+            assertEquals(Files.size(file), scanner.position());
+            assertThrows(IllegalArgumentException.class, () -> scanner.field(2));
+
+            assertFalse(scanner.next());
+        }
+    }
+
+    @Test
+    void readsTheSameRecordsWhenSplitOnRecordBoundaries() throws IOException {
+        StringBuilder content = new StringBuilder("id,name\n");
+        for (int i = 0; i < 200; i++) {
+            content.append(i).append(i % 7 == 0 ? ",\"multi\nline, " + i + "\"" : ",name-" + i).append('\n');
+        }
+        Path file = write(content.toString());
+        CsvDialect dialect = CsvDialect.rfc4180(',');
+        List<String[]> whole = readAll(file, dialect);
+        List<Long> boundaries = new ArrayList<>();
+        try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, 0, -1)) {
+            while (scanner.next()) {
+                boundaries.add(scanner.position());
+            }
+        }
+
+        long split = boundaries.get(boundaries.size() / 3);
+        long secondSplit = boundaries.get(2 * boundaries.size() / 3);
+        List<String[]> pieces = new ArrayList<>();
+        for (long[] range : new long[][] {{0, split}, {split, secondSplit}, {secondSplit, -1}}) {
+            try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, range[0], range[1])) {
+                while (scanner.next()) {
+                    pieces.add(scanner.fields());
+                }
+                if (range[1] >= 0) {
+                    assertEquals(range[1], scanner.position());
+                }
+            }
+        }
+
+        assertEquals(201, whole.size());
+        assertEquals(whole.size(), pieces.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertArrayEquals(whole.get(i), pieces.get(i), "record " + i);
+        }
+    }
+
+    @Test
+    void rejectsAnUnterminatedQuote() throws IOException {
+        Path file = write("id,note\n1,\"never closed\n2,x\n");
+
+        IOException error = assertThrows(IOException.class, () -> readAll(file, CsvDialect.rfc4180(',')));
+        assertTrue(error.getMessage().contains("line 2"), error.getMessage());
+    }
+
+    @Test
+    void failsOnARecordLongerThanTheLargestWindow() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append(i).append(",short\n");
+        }
+        long longStart = content.length();
+        content.append("100,\"").append("x".repeat(300)).append("\"\n");
+        Path file = write(content.toString());
+        CsvDialect dialect = CsvDialect.rfc4180(',');
+
+        long records = 0;
+        try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, 0, longStart, 256)) {
+            while (scanner.next()) {
+                records++;
+            }
+        }
+        assertEquals(100, records);
+
+        IOException error = assertThrows(IOException.class, () -> {
+            try (DelimitedFileScanner scanner = new DelimitedFileScanner(file, dialect, 0, -1, 256)) {
+                while (scanner.next()) {
+                    assertTrue(scanner.recordStart() < longStart);
+                }
+            }
+        });
+        assertTrue(error.getMessage().contains("line 101 at byte " + longStart), error.getMessage());
+    }
+
+    private static long utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,65 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.ValidationReportConfig;
+import com.clickhouse.model.FileValidationReport;
+import com.clickhouse.model.ValidationMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileServiceTest {
+    private static final byte[] LINE = "1,a\n".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    private final FileService fileService = new FileService(new ValidationReportConfig());
+
+    @Test
+    void numbersMismatchesInTheSampledTailFromTheStartOfTheFile() throws IOException {
+        // Past the sampled head and tail, so the middle of the file is skipped
+        int lines = (80 << 20) / LINE.length;
+        int badHeadLine = 3;
+        int badTailLine = lines - 10;
+        Path file = dir.resolve("data.csv");
+        byte[] badLine = "1,a,extra\n".getBytes(StandardCharsets.UTF_8);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            out.write("id,name\n".getBytes(StandardCharsets.UTF_8));
+            for (int line = 2; line <= lines; line++) {
+                out.write(line == badHeadLine || line == badTailLine ? badLine : LINE);
+            }
+        }
+
+        FileValidationReport report = fileService.validateFileFormat(file.toString(), ",", ValidationMode.SAMPLE);
+
+        assertTrue(report.getBytesScanned() < Files.size(file));
+        assertEquals(2, report.getMismatchCount());
+        List<Long> lineNumbers = report.getMismatches().stream()
+            .map(FileValidationReport.ColumnCountMismatch::getLineNumber)
+            .toList();
+        assertEquals(List.of((long) badHeadLine, (long) badTailLine), lineNumbers);
+    }
+
+    @Test
+    void forgetsTheReportOfADeletedFile() throws IOException {
+        Path file = Files.writeString(dir.resolve("data.csv"), "id,name\n1,a\n2\n");
+        FileValidationReport report = fileService.validateFileFormat(file.toString(), ",", ValidationMode.FULL);
+        assertEquals(3, report.getMismatches().get(0).getLineNumber());
+        assertNotNull(fileService.getValidationReport(file.toString()));
+
+        fileService.deleteFile(file.toString());
+        assertNull(fileService.getValidationReport(file.toString()));
+    }
+}
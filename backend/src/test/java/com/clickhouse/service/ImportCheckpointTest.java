@@ -0,0 +1,96 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImportCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    private Path source() throws Exception {
+        Path source = dir.resolve("data.csv");
+        if (!Files.exists(source)) {
+            Files.writeString(source, "a,b\n1,x\n2,y\n");
+        }
+        return source;
+    }
+
+    @Test
+    void advancesThePrefixOverRangesCommittedOutOfOrder() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(null, source(), "t", 100, 1);
+        checkpoint.begin(4);
+        checkpoint.commit(20, 30, 2);
+        checkpoint.commit(10, 20, 3);
+        assertEquals(4, checkpoint.committedOffset());
+        checkpoint.commit(4, 10, 1);
+        assertEquals(30, checkpoint.committedOffset());
+        assertEquals(6, checkpoint.committedRows());
+    }
+
+    @Test
+    void failsOnOverlappingRanges() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(null, source(), "t", 100, 1);
+        checkpoint.begin(0);
+        checkpoint.commit(0, 10, 1);
+        checkpoint.commit(20, 30, 1);
+        assertThrows(IllegalStateException.class, () -> checkpoint.commit(0, 10, 1));
+        assertThrows(IllegalStateException.class, () -> checkpoint.commit(5, 15, 1));
+        assertThrows(IllegalStateException.class, () -> checkpoint.commit(20, 25, 1));
+        assertThrows(IllegalStateException.class, () -> checkpoint.commit(15, 21, 1));
+        assertThrows(IllegalStateException.class, () -> checkpoint.commit(12, 12, 0));
+        checkpoint.commit(10, 20, 1);
+        assertEquals(30, checkpoint.committedOffset());
+    }
+
+    @Test
+    void tokensIdentifyTheRange() throws Exception {
+        ImportCheckpoint checkpoint = ImportCheckpoint.open(null, source(), "t", 100, 1);
+        ImportCheckpoint again = ImportCheckpoint.open(null, source(), "t", 100, 1);
+        assertEquals(checkpoint.deduplicationToken(0, 10), again.deduplicationToken(0, 10));
+        assertNotEquals(checkpoint.deduplicationToken(0, 10), checkpoint.deduplicationToken(0, 11));
+    }
+
+    @Test
+    void resumesFromTheSavedPrefix() throws Exception {
+        Path file = dir.resolve("import.checkpoint");
+        ImportCheckpoint first = ImportCheckpoint.open(file, source(), "t", 100, 2);
+        first.begin(4);
+        first.commit(4, 8, 1);
+        first.commit(12, 16, 1);
+
+        ImportCheckpoint resumed = ImportCheckpoint.open(file, source(), "t", 100, 2);
+        resumed.begin(4);
+        assertTrue(resumed.isResumed());
+        assertEquals(8, resumed.committedOffset());
+        assertEquals(1, resumed.committedRows());
+
+        ImportCheckpoint otherTable = ImportCheckpoint.open(file, source(), "u", 100, 2);
+        otherTable.begin(4);
+        assertFalse(otherTable.isResumed());
+        assertEquals(4, otherTable.committedOffset());
+
+        resumed.complete();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void refusesToResumeWithDifferentBatching() throws Exception {
+        Path file = dir.resolve("import.checkpoint");
+        ImportCheckpoint first = ImportCheckpoint.open(file, source(), "t", 100, 2);
+        first.begin(4);
+        first.commit(4, 8, 1);
+
+        assertThrows(IllegalStateException.class, () -> ImportCheckpoint.open(file, source(), "t", 50, 2));
+        assertThrows(IllegalStateException.class, () -> ImportCheckpoint.open(file, source(), "t", 100, 4));
+    }
+}
@@ -0,0 +1,211 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class InsertBatchEncoderTest {
+
+    private static byte[] encode(String type, String value) {
+        InsertBatchEncoder encoder = InsertBatchEncoder.forTypes(List.of(type));
+        encoder.writeRow(new String[] {value});
+        return Arrays.copyOf(encoder.array(), encoder.byteCount());
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static void assertRejected(String type, String value) {
+        assertThrows(IllegalArgumentException.class, () -> encode(type, value), type + " <- '" + value + "'");
+    }
+
+    @Test
+    void picksRowBinaryOnlyWhenEveryColumnHasACodec() {
+        assertEquals(InsertBatchEncoder.ROW_BINARY, InsertBatchEncoder.forTypes(List.of("Int32", "String")).format());
+        assertEquals(InsertBatchEncoder.TAB_SEPARATED,
+            InsertBatchEncoder.forTypes(List.of("Int32", "Decimal(10, 2)")).format());
+    }
+
+    @Test
+    void encodesStrings() {
+        assertArrayEquals(bytes(3, 'a', 'b', 'c'), encode("String", "abc"));
+        assertArrayEquals(bytes(0), encode("String", ""));
+        byte[] utf8 = "é".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(bytes(2, utf8[0] & 0xFF, utf8[1] & 0xFF), encode("LowCardinality(String)", "é"));
+        assertArrayEquals(bytes('a', 'b', 0, 0), encode("FixedString(4)", "ab"));
+        assertArrayEquals(bytes('a', 'b', 'c', 'd'), encode("FixedString(4)", "abcd"));
+        assertRejected("FixedString(4)", "abcde");
+    }
+
+    @Test
+    void encodesSignedIntegersAtTheirBounds() {
+        assertArrayEquals(bytes(0x80), encode("Int8", "-128"));
+        assertArrayEquals(bytes(0x7F), encode("Int8", "127"));
+        assertRejected("Int8", "128");
+        assertRejected("Int8", "-129");
+
+        assertArrayEquals(bytes(0x00, 0x80), encode("Int16", "-32768"));
+        assertArrayEquals(bytes(0xFF, 0x7F), encode("Int16", "32767"));
+        assertRejected("Int16", "32768");
+
+        assertArrayEquals(bytes(0x00, 0x00, 0x00, 0x80), encode("Int32", "-2147483648"));
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0x7F), encode("Int32", " 2147483647 "));
+        assertRejected("Int32", "2147483648");
+
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x7F), encode("Int64", "9223372036854775807"));
+        assertRejected("Int64", "9223372036854775808");
+        assertRejected("Int64", "1.5");
+        assertRejected("Int64", "abc");
+    }
+
+    @Test
+    void encodesUnsignedIntegersAtTheirBounds() {
+        assertArrayEquals(bytes(0xFF), encode("UInt8", "255"));
+        assertRejected("UInt8", "256");
+        assertRejected("UInt8", "-1");
+
+        assertArrayEquals(bytes(0xFF, 0xFF), encode("UInt16", "65535"));
+        assertRejected("UInt16", "65536");
+
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0xFF), encode("UInt32", "4294967295"));
+        assertRejected("UInt32", "4294967296");
+        assertRejected("UInt32", "-1");
+
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF), encode("UInt64", "18446744073709551615"));
+        assertRejected("UInt64", "18446744073709551616");
+        assertRejected("UInt64", "-1");
+    }
+
+    @Test
+    void encodesFloats() {
+        assertArrayEquals(bytes(0x00, 0x00, 0xC0, 0x3F), encode("Float32", "1.5"));
+        assertArrayEquals(bytes(0, 0, 0, 0, 0, 0, 0xF8, 0x3F), encode("Float64", "1.5"));
+        assertArrayEquals(bytes(0, 0, 0, 0, 0, 0, 0xF0, 0x7F), encode("Float64", "Infinity"));
+        assertRejected("Float64", "1.5d");
+        assertRejected("Float32", "0x1p3");
+        assertRejected("Float64", "one");
+    }
+
+    @Test
+    void encodesBooleans() {
+        for (String value : List.of("1", "true", "TRUE", "yes", "on")) {
+            assertArrayEquals(bytes(1), encode("Bool", value), value);
+        }
+        for (String value : List.of("0", "false", "no", "off")) {
+            assertArrayEquals(bytes(0), encode("Bool", value), value);
+        }
+        assertRejected("Bool", "maybe");
+        assertRejected("Bool", "2");
+    }
+
+    @Test
+    void encodesDatesWithinTheirRanges() {
+        assertArrayEquals(bytes(0, 0), encode("Date", "1970-01-01"));
+        assertArrayEquals(bytes(0xFF, 0xFF), encode("Date", "2149-06-06"));
+        assertRejected("Date", "1969-12-31");
+        assertRejected("Date", "2149-06-07");
+        assertRejected("Date", "2024-02-30");
+
+        // -25567 days: 1900-01-01
+        assertArrayEquals(bytes(0x21, 0x9C, 0xFF, 0xFF), encode("Date32", "1900-01-01"));
+        assertRejected("Date32", "1899-12-31");
+        assertRejected("Date32", "2300-01-01");
+    }
+
+    @Test
+    void encodesDateTimesInTheColumnZone() {
+        assertArrayEquals(bytes(0x3C, 0, 0, 0), encode("DateTime('UTC')", "1970-01-01 00:01:00"));
+        // One hour ahead of UTC, so the same wall time is an hour earlier
+        assertArrayEquals(bytes(0x3C, 0, 0, 0), encode("DateTime('Etc/GMT-1')", "1970-01-01 01:01:00"));
+        assertArrayEquals(bytes(0xFF, 0xFF, 0xFF, 0xFF), encode("DateTime('UTC')", "4294967295"));
+        assertRejected("DateTime('UTC')", "1969-12-31 23:59:59");
+        assertRejected("DateTime('UTC')", "4294967296");
+    }
+
+    @Test
+    void rejectsBlanksUnlessTheColumnIsNullable() {
+        for (String type : List.of("Int32", "UInt8", "Float64", "Bool", "Date", "DateTime('UTC')")) {
+            assertRejected(type, "");
+            assertRejected(type, "  ");
+            assertRejected(type, null);
+        }
+        assertArrayEquals(bytes(1), encode("Nullable(Int32)", ""));
+        assertArrayEquals(bytes(1), encode("Nullable(Int32)", null));
+        assertArrayEquals(bytes(0, 7, 0, 0, 0), encode("Nullable(Int32)", "7"));
+        assertArrayEquals(bytes(1), encode("LowCardinality(Nullable(String))", ""));
+        assertRejected("Nullable(Int8)", "300");
+    }
+
+    @Test
+    void escapesTabSeparatedFallback() {
+        InsertBatchEncoder encoder = InsertBatchEncoder.forTypes(List.of("Decimal(10, 2)", "String"));
+        encoder.writeRow(new String[] {"1.25", "a\tb\\c\nd"});
+        encoder.writeRow(new String[] {null, "x"});
+        assertEquals("1.25\ta\\tb\\\\c\\nd\n\\N\tx\n",
+            new String(encoder.array(), 0, encoder.byteCount(), StandardCharsets.UTF_8));
+        assertEquals(2, encoder.rowCount());
+    }
+
+    @Test
+    void writesBlankNullableValuesAsNullInBothFormats() {
+        String[][] rows = {{"", "", ""}, {"a", "7", "b"}, {"", "-1", ""}};
+        InsertBatchEncoder binary = InsertBatchEncoder.forTypes(
+            List.of("Nullable(String)", "Nullable(Int64)", "String"));
+        // The Decimal column has no binary codec, so the same columns go out as TabSeparated
+        InsertBatchEncoder text = InsertBatchEncoder.forTypes(
+            List.of("Nullable(String)", "Nullable(Int64)", "String", "Decimal(10, 2)"));
+        for (String[] row : rows) {
+            binary.writeRow(row);
+            text.writeRow(new String[] {row[0], row[1], row[2], "1.5"});
+        }
+        assertEquals(InsertBatchEncoder.ROW_BINARY, binary.format());
+        assertEquals(InsertBatchEncoder.TAB_SEPARATED, text.format());
+
+        List<List<String>> fromBinary = new ArrayList<>();
+        byte[] body = Arrays.copyOf(binary.array(), binary.byteCount());
+        ByteBuffer in = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        while (in.hasRemaining()) {
+            String name = in.get() == 1 ? null : readString(in);
+            String number = in.get() == 1 ? null : Long.toString(in.getLong());
+            fromBinary.add(Arrays.asList(name, number, readString(in)));
+        }
+        List<List<String>> fromText = new ArrayList<>();
+        for (String line : new String(text.array(), 0, text.byteCount(), StandardCharsets.UTF_8).split("\n")) {
+            List<String> row = new ArrayList<>();
+            TabSeparatedReader.parseLine(line, row, new StringBuilder());
+            fromText.add(row.subList(0, 3));
+        }
+
+        assertEquals(List.of(Arrays.asList(null, null, ""), List.of("a", "7", "b"), Arrays.asList(null, "-1", "")),
+            fromBinary);
+        assertEquals(fromBinary, fromText);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,85 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares encoding insert batches as RowBinary with the quoted {@code INSERT ... VALUES} statement that
+ * was URL-encoded into the query string before. Only the client side is measured: encoding time and the
+ * bytes sent. The larger win, the server no longer parsing SQL literals, needs a real server to measure.
+ * Run with {@code mvn test -Dbenchmarks=true -Dtest=InsertEncodingBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class InsertEncodingBenchmarkTest {
+    private static final int ROWS = 200_000;
+    private static final int BATCH_SIZE = 1000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareRowBinaryWithValuesSql() {
+        String[][] rows = new String[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new String[] {Integer.toString(i), "name-" + i, Double.toString(i * 0.25), "2024-01-15"};
+        }
+        List<String> types = List.of("Int64", "String", "Float64", "Date");
+
+        long valuesNanos = Long.MAX_VALUE;
+        long rowBinaryNanos = Long.MAX_VALUE;
+        long valuesBytes = 0;
+        long rowBinaryBytes = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            valuesBytes = encodeAsValues(rows);
+            valuesNanos = Math.min(valuesNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            rowBinaryBytes = encodeAsRowBinary(rows, types);
+            rowBinaryNanos = Math.min(rowBinaryNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("VALUES SQL: %,d rows/s, %,d bytes; RowBinary: %,d rows/s, %,d bytes%n",
+            ROWS * 1_000_000_000L / valuesNanos, valuesBytes, ROWS * 1_000_000_000L / rowBinaryNanos, rowBinaryBytes);
+        assertTrue(rowBinaryBytes < valuesBytes / 2, "RowBinary should send less than half the bytes");
+    }
+
+    /**
+     * The encoding the import used before RowBinary: every value quoted, joined into one statement per batch.
+     */
+    private static long encodeAsValues(String[][] rows) {
+        long bytes = 0;
+        List<String> values = new ArrayList<>(BATCH_SIZE);
+        for (String[] row : rows) {
+            List<String> rowValues = new ArrayList<>(row.length);
+            for (String value : row) {
+                rowValues.add("'" + value.replace("'", "''") + "'");
+            }
+            values.add("(" + String.join(", ", rowValues) + ")");
+            if (values.size() >= BATCH_SIZE) {
+                bytes += URLEncoder.encode("INSERT INTO t (id, name, score, day) VALUES " + String.join(", ", values),
+                    StandardCharsets.UTF_8).length();
+                values.clear();
+            }
+        }
+        return bytes;
+    }
+
+    private static long encodeAsRowBinary(String[][] rows, List<String> types) {
+        long bytes = 0;
+        InsertBatchEncoder batch = InsertBatchEncoder.forTypes(types);
+        for (String[] row : rows) {
+            batch.writeRow(row);
+            if (batch.rowCount() >= BATCH_SIZE) {
+                bytes += batch.byteCount();
+                batch.reset();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+package com.clickhouse.service;
+
+import ch.qos.logback.classic.Level;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.LoggerFactory;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares listing tables with the logging {@code getTables} did before, every table name and the whole
+ * response body logged at INFO through java.util.logging to a console that flushes every record, against
+ * the current SLF4J summary at DEBUG with INFO enabled. Output goes to a null stream, so only formatting
+ * and handler overhead is measured, not the terminal. Run with
+ * {@code mvn test -Dbenchmarks=true -Dtest=LoggingOverheadBenchmarkTest}.
+ */
+@EnabledIfSystemProperty(named = "benchmarks", matches = "true")
+class LoggingOverheadBenchmarkTest {
+    private static final int TABLES = 20_000;
+    private static final int CALLS = 20;
+    private static final int ROUNDS = 5;
+
+    @Test
+    void compareTableListingLogging() {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < TABLES; i++) {
+            response.append("events_").append(i).append('\n');
+        }
+        String body = response.toString();
+
+        java.util.logging.Logger julLogger = java.util.logging.Logger.getLogger("benchmark.jul");
+        julLogger.setUseParentHandlers(false);
+        Handler console = new StreamHandler(OutputStream.nullOutputStream(), new SimpleFormatter()) {
+            @Override
+            public synchronized void publish(LogRecord record) {
+                // Like ConsoleHandler
+                super.publish(record);
+                flush();
+            }
+        };
+        julLogger.addHandler(console);
+        ch.qos.logback.classic.Logger slf4jLogger =
+            (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("benchmark.slf4j");
+        slf4jLogger.setLevel(Level.INFO);
+
+        long beforeNanos = Long.MAX_VALUE;
+        long afterNanos = Long.MAX_VALUE;
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int call = 0; call < CALLS; call++) {
+                    julLogger.info("Response body: " + body);
+                    List<String> tables = new ArrayList<>();
+                    for (String line : body.split("\n")) {
+                        if (!line.trim().isEmpty()) {
+                            tables.add(line.trim());
+                            julLogger.info("Found table: " + line.trim());
+                        }
+                    }
+                    julLogger.info("Found " + tables.size() + " tables");
+                    assertEquals(TABLES, tables.size());
+                }
+                beforeNanos = Math.min(beforeNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int call = 0; call < CALLS; call++) {
+                    List<String> tables = new ArrayList<>();
+                    for (String line : body.split("\n")) {
+                        if (!line.trim().isEmpty()) {
+                            tables.add(line.trim());
+                        }
+                    }
+                    slf4jLogger.debug("Found {} tables", tables.size());
+                    assertEquals(TABLES, tables.size());
+                }
+                afterNanos = Math.min(afterNanos, System.nanoTime() - start);
+            }
+        } finally {
+            julLogger.removeHandler(console);
+        }
+
+        System.out.printf("Listing %,d tables: %.2f ms per call with per-row logging, %.2f ms without%n",
+            TABLES, beforeNanos / 1e6 / CALLS, afterNanos / 1e6 / CALLS);
+        assertTrue(afterNanos < beforeNanos, "Dropping per-row logging should make listing faster");
+    }
+}
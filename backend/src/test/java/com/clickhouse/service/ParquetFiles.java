@@ -0,0 +1,144 @@
+package com.clickhouse.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes Parquet files holding only a footer, in the Thrift compact protocol, for tests that read schemas
+ * and row counts. The data section is filler: nothing here decodes pages.
+ */
+final class ParquetFiles {
+    // Thrift compact protocol type ids
+    private static final int I32 = 5;
+    private static final int I64 = 6;
+    private static final int BINARY = 8;
+    private static final int LIST = 9;
+    private static final int STRUCT = 12;
+
+    static final int REQUIRED = 0;
+    static final int OPTIONAL = 1;
+    static final int REPEATED = 2;
+
+    /**
+     * A {@code SchemaElement}; {@code -1} leaves a field unset.
+     */
+    record Element(String name, int type, int typeLength, int repetition, int numChildren, int convertedType,
+                   int scale, int precision) {
+
+        static Element group(String name, int repetition, int numChildren, int convertedType) {
+            return new Element(name, -1, -1, repetition, numChildren, convertedType, -1, -1);
+        }
+
+        static Element leaf(String name, int type, int repetition, int convertedType) {
+            return new Element(name, type, -1, repetition, -1, convertedType, -1, -1);
+        }
+    }
+
+    private ParquetFiles() {
+    }
+
+    static Path write(Path file, long rows, Element... schema) throws IOException {
+        byte[] footer = footer(rows, schema);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("PAR1".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes("column chunks".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(footer);
+        out.write(footer.length);
+        out.write(footer.length >>> 8);
+        out.write(footer.length >>> 16);
+        out.write(footer.length >>> 24);
+        out.writeBytes("PAR1".getBytes(StandardCharsets.US_ASCII));
+        Files.write(file, out.toByteArray());
+        return file;
+    }
+
+    /**
+     * A {@code FileMetaData} with two row groups and key/value metadata, which the reader has to skip.
+     */
+    static byte[] footer(long rows, Element... schema) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        field(out, 1, I32);
+        varint(out, zigzag(2));
+        field(out, 1, LIST);
+        listHeader(out, schema.length, STRUCT);
+        for (Element element : schema) {
+            schemaElement(out, element);
+        }
+        field(out, 1, I64);
+        varint(out, zigzag(rows));
+        field(out, 1, LIST);
+        listHeader(out, 2, STRUCT);
+        for (long groupRows : new long[] {rows / 2, rows - rows / 2}) {
+            field(out, 1, LIST);
+            listHeader(out, 0, STRUCT);
+            field(out, 1, I64);
+            varint(out, zigzag(groupRows * 16));
+            field(out, 1, I64);
+            varint(out, zigzag(groupRows));
+            out.write(0);
+        }
+        field(out, 1, LIST);
+        listHeader(out, 1, STRUCT);
+        field(out, 1, BINARY);
+        string(out, "writer.model.name");
+        field(out, 1, BINARY);
+        string(out, "test");
+        out.write(0);
+        field(out, 1, BINARY);
+        string(out, "ParquetFiles");
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    private static void schemaElement(ByteArrayOutputStream out, Element element) {
+        int previous = 0;
+        int[] values = {element.type(), element.typeLength(), element.repetition(), 0, element.numChildren(),
+            element.convertedType(), element.scale(), element.precision()};
+        for (int id = 1; id <= values.length; id++) {
+            if (id == 4) {
+                field(out, id - previous, BINARY);
+                string(out, element.name());
+                previous = id;
+            } else if (values[id - 1] >= 0) {
+                field(out, id - previous, I32);
+                varint(out, zigzag(values[id - 1]));
+                previous = id;
+            }
+        }
+        out.write(0);
+    }
+
+    private static void field(ByteArrayOutputStream out, int delta, int type) {
+        out.write(delta << 4 | type);
+    }
+
+    private static void listHeader(ByteArrayOutputStream out, int size, int elementType) {
+        if (size < 15) {
+            out.write(size << 4 | elementType);
+        } else {
+            out.write(0xF0 | elementType);
+            varint(out, size);
+        }
+    }
+
+    private static void string(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        varint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static void varint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
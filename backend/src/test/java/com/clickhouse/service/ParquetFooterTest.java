@@ -0,0 +1,92 @@
+package com.clickhouse.service;
+
+import com.clickhouse.service.ParquetFiles.Element;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParquetFooterTest {
+    // Parquet physical and converted types
+    private static final int INT32 = 1;
+    private static final int INT64 = 2;
+    private static final int BYTE_ARRAY = 6;
+    private static final int FIXED_LEN_BYTE_ARRAY = 7;
+    private static final int UTF8 = 0;
+    private static final int LIST = 3;
+    private static final int DECIMAL = 5;
+    private static final int TIMESTAMP_MILLIS = 9;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsTheSchemaAndRowCount() throws IOException {
+        Path file = ParquetFiles.write(dir.resolve("data.parquet"), 1_234_567,
+            Element.group("schema", ParquetFiles.REQUIRED, 6, -1),
+            Element.leaf("id", INT64, ParquetFiles.REQUIRED, -1),
+            Element.leaf("name", BYTE_ARRAY, ParquetFiles.OPTIONAL, UTF8),
+            new Element("price", INT32, -1, ParquetFiles.REQUIRED, -1, DECIMAL, 2, 9),
+            Element.leaf("created", INT64, ParquetFiles.OPTIONAL, TIMESTAMP_MILLIS),
+            new Element("hash", FIXED_LEN_BYTE_ARRAY, 16, ParquetFiles.REQUIRED, -1, -1, -1, -1),
+            Element.group("tags", ParquetFiles.OPTIONAL, 1, LIST),
+            Element.group("list", ParquetFiles.REPEATED, 1, -1),
+            Element.leaf("element", BYTE_ARRAY, ParquetFiles.REQUIRED, UTF8));
+
+        assertTrue(ParquetFooter.isParquet(file));
+        ParquetFooter footer = ParquetFooter.read(file);
+        assertEquals(1_234_567, footer.rowCount());
+        assertEquals(List.of(
+            new ParquetFooter.Column("id", "Int64"),
+            new ParquetFooter.Column("name", "Nullable(String)"),
+            new ParquetFooter.Column("price", "Decimal(9, 2)"),
+            new ParquetFooter.Column("created", "Nullable(DateTime64(3))"),
+            new ParquetFooter.Column("hash", "FixedString(16)"),
+            new ParquetFooter.Column("tags", "Array(String)")), footer.columns());
+        assertEquals(Files.size(file) - "PAR1column chunks".length(), footer.footerSize());
+    }
+
+    @Test
+    void mapsOtherGroupsToString() throws IOException {
+        Path file = ParquetFiles.write(dir.resolve("data.parquet"), 3,
+            Element.group("schema", ParquetFiles.REQUIRED, 2, -1),
+            Element.group("point", ParquetFiles.REQUIRED, 2, -1),
+            Element.leaf("x", INT32, ParquetFiles.REQUIRED, -1),
+            Element.leaf("y", INT32, ParquetFiles.REQUIRED, -1),
+            Element.leaf("z", INT32, ParquetFiles.REQUIRED, -1));
+
+        assertEquals(List.of(new ParquetFooter.Column("point", "String"), new ParquetFooter.Column("z", "Int32")),
+            ParquetFooter.read(file).columns());
+    }
+
+    @Test
+    void rejectsFilesWithoutAValidFooter() throws IOException {
+        Path csv = Files.writeString(dir.resolve("data.csv"), "id,name\n1,a\n");
+        assertFalse(ParquetFooter.isParquet(csv));
+        assertThrows(IOException.class, () -> ParquetFooter.read(csv));
+
+        byte[] valid = Files.readAllBytes(ParquetFiles.write(dir.resolve("valid.parquet"), 1,
+            Element.group("schema", ParquetFiles.REQUIRED, 1, -1),
+            Element.leaf("id", INT64, ParquetFiles.REQUIRED, -1)));
+        byte[] oversized = valid.clone();
+        oversized[oversized.length - 6] = 0x7F;
+        Path file = dir.resolve("oversized.parquet");
+        Files.write(file, oversized);
+        assertThrows(IOException.class, () -> ParquetFooter.read(file));
+
+        byte[] truncated = valid.clone();
+        // The footer is now just the stop byte that ends FileMetaData, so it has no schema
+        truncated[truncated.length - 8] = 1;
+        Path corrupt = dir.resolve("corrupt.parquet");
+        Files.write(corrupt, truncated);
+        assertThrows(IOException.class, () -> ParquetFooter.read(corrupt));
+    }
+}
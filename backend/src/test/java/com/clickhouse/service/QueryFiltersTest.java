@@ -0,0 +1,96 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.QueryFilter;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryFiltersTest {
+
+    private static QueryFilter filter(String where, String orderBy) {
+        QueryFilter filter = new QueryFilter();
+        filter.setWhere(where);
+        filter.setOrderBy(orderBy);
+        return filter;
+    }
+
+    private static void assertRejected(String reason, Runnable check) {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, check::run);
+        assertTrue(error.getMessage().contains(reason), error.getMessage());
+    }
+
+    @Test
+    void pushesDownAFilter() {
+        QueryFilter filter = filter("ts >= '2024-01-01' AND name != 'it''s; -- fine'", "ts DESC, id");
+        filter.setLimit(500L);
+        filter.setOffset(10L);
+        filter.setSample(0.5);
+
+        String query = QueryFilters.select(List.of("id", "name"), "events", null, filter, "id % 2 = 0", 100);
+
+        assertEquals("SELECT id, name FROM events SAMPLE 0.5 WHERE (ts >= '2024-01-01' AND name != 'it''s; -- fine')"
+            + " AND id % 2 = 0 ORDER BY ts DESC, id LIMIT 100 OFFSET 10", query);
+    }
+
+    @Test
+    void acceptsOrdinaryExpressions() {
+        for (String where : List.of("id IN (1, 2, 3)", "lower(name) LIKE '%a\\'b%'", "arr[1] = 2",
+                "`odd column` = \"x\"", "if(a > 0, toDate(ts), today()) = today()")) {
+            assertDoesNotThrow(() -> QueryFilters.validate(filter(where, null)), where);
+        }
+        assertDoesNotThrow(() -> QueryFilters.validate(filter(null, "toDate(ts) DESC WITH FILL, id")));
+    }
+
+    @Test
+    void rejectsStackedStatementsAndComments() {
+        assertRejected("multiple statements", () -> QueryFilters.validate(filter("1 = 1; DROP TABLE t", null)));
+        assertRejected("comments", () -> QueryFilters.validate(filter("1 = 1 -- AND secret = 0", null)));
+        assertRejected("comments", () -> QueryFilters.validate(filter("1 = 1 /* x */", null)));
+        assertRejected("comments", () -> QueryFilters.validate(filter(null, "id # x")));
+        assertRejected("unterminated", () -> QueryFilters.validate(filter("name = 'x", null)));
+    }
+
+    @Test
+    void rejectsSubqueries() {
+        assertRejected("subqueries", () -> QueryFilters.validate(
+            filter("id IN (SELECT id FROM system.users)", null)));
+        assertRejected("subqueries", () -> QueryFilters.validate(filter(null, "(select 1)")));
+    }
+
+    @Test
+    void rejectsUnbalancedParentheses() {
+        assertRejected("unbalanced", () -> QueryFilters.validate(filter("1 = 1) OR (1 = 1", null)));
+        assertRejected("unbalanced", () -> QueryFilters.validate(filter("(1 = 1", null)));
+        assertRejected("unbalanced", () -> QueryFilters.validate(filter("arr[1 = 1", null)));
+    }
+
+    @Test
+    void rejectsClausesAfterAnOrderBy() {
+        assertRejected("LIMIT", () -> QueryFilters.validate(filter(null, "id LIMIT 1000000")));
+        assertRejected("FORMAT", () -> QueryFilters.validate(filter(null, "id FORMAT Native")));
+        assertRejected("SETTINGS", () -> QueryFilters.validateTableOrderBy("orderBy",
+            "id SETTINGS index_granularity = 1"));
+        assertDoesNotThrow(() -> QueryFilters.validateTableOrderBy("orderBy", "(toDate(ts), id)"));
+    }
+
+    @Test
+    void checksShardingKeysAndTypeNames() {
+        assertDoesNotThrow(() -> QueryFilters.validateExpression("shardingKey", "user_id, toDate(ts)"));
+        assertRejected("shardingKey", () -> QueryFilters.validateExpression("shardingKey", "id) % 1 = 0 OR (1"));
+
+        for (String type : List.of("String", "Nullable(DateTime('UTC'))", "Decimal(18, 4)",
+                "Enum8('a)' = 1, 'b' = 2)", "Array(Tuple(a String, b Int64))")) {
+            assertDoesNotThrow(() -> QueryFilters.validateTypeName("type", type), type);
+        }
+        assertRejected("not a type name", () -> QueryFilters.validateTypeName("type", "String DEFAULT 'x'"));
+        assertRejected("not a type name", () -> QueryFilters.validateTypeName("type", "String, other String"));
+        assertRejected("unbalanced", () -> QueryFilters.validateTypeName("type",
+            "Nullable(String) DEFAULT (1)"));
+        assertRejected("subqueries", () -> QueryFilters.validateTypeName("type", "FixedString((SELECT 1))"));
+    }
+}
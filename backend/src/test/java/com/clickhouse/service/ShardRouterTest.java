@@ -0,0 +1,84 @@
+package com.clickhouse.service;
+
+import com.clickhouse.model.ClickHouseConnection;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRouterTest {
+
+    private static ShardRouter.Shard shard(int number) {
+        ClickHouseConnection connection = new ClickHouseConnection();
+        connection.setHost("shard" + number);
+        connection.setPort(8123);
+        return new ShardRouter.Shard(number, connection);
+    }
+
+    @Test
+    void parsesDistributedEngineArguments() {
+        assertEquals(List.of("'events'", "'default'", "'events_local'", "rand()"),
+            ShardRouter.parseDistributedEngine("Distributed('events', 'default', 'events_local', rand())"));
+        assertEquals(List.of("cluster", "db", "`t,(1`", "cityHash64(a, tuple(b, 'x)'))", "'hot'"),
+            ShardRouter.parseDistributedEngine(" Distributed(cluster, db, `t,(1`, cityHash64(a, tuple(b, 'x)')), 'hot')"
+                + " SETTINGS fsync_after_insert = 0"));
+        assertEquals(List.of("c", "db", "'it\\'s'"), ShardRouter.parseDistributedEngine("Distributed(c, db, 'it\\'s')"));
+        assertNull(ShardRouter.parseDistributedEngine("MergeTree ORDER BY id"));
+        assertNull(ShardRouter.parseDistributedEngine("Distributed(c, db, 't"));
+    }
+
+    @Test
+    void routesOnlyRandomlyShardedTables() {
+        assertTrue(ShardRouter.isRandomlySharded(List.of("c", "db", "t")));
+        assertTrue(ShardRouter.isRandomlySharded(List.of("c", "db", "t", "RAND( )")));
+        assertFalse(ShardRouter.isRandomlySharded(List.of("c", "db", "t", "cityHash64(user_id)")));
+        assertFalse(ShardRouter.isRandomlySharded(List.of("c", "db", "t", "rand() % 2")));
+    }
+
+    @Test
+    void quotesAndUnquotesArguments() {
+        assertEquals("it's", ShardRouter.unquote("'it\\'s'"));
+        assertEquals("odd`name", ShardRouter.unquote("`odd\\`name`"));
+        assertEquals("plain", ShardRouter.unquote("plain"));
+        assertEquals("'it\\'s \\\\'", ShardRouter.quoteLiteral("it's \\"));
+        assertEquals("`odd\\`name`", ShardRouter.quoteIdentifier("odd`name"));
+    }
+
+    @Test
+    void spreadsBatchesByShardWeight() {
+        List<ShardRouter.Shard> shards = List.of(shard(1), shard(2), shard(3));
+        ShardRouter router = new ShardRouter("events_local", shards, List.of(1, 3, 0));
+
+        int[] counts = new int[shards.size()];
+        int batches = 40_000;
+        for (int i = 0; i < batches; i++) {
+            // Offsets of batches of a byte-range import, spaced by the batch size
+            counts[router.shardFor(8L + i * 65_536L).number() - 1]++;
+        }
+
+        assertEquals(0, counts[2], Arrays.toString(counts));
+        assertEquals(0.25, (double) counts[0] / batches, 0.02, Arrays.toString(counts));
+        assertEquals(0.75, (double) counts[1] / batches, 0.02, Arrays.toString(counts));
+    }
+
+    @Test
+    void sendsARetriedBatchToTheSameShard() {
+        ShardRouter router = new ShardRouter("events_local", List.of(shard(1), shard(2)), List.of(1, 1));
+        for (long offset = 0; offset < 1000; offset += 7) {
+            assertSame(router.shardFor(offset), router.shardFor(offset));
+        }
+    }
+
+    @Test
+    void needsAShardWithAPositiveWeight() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new ShardRouter("events_local", List.of(shard(1), shard(2)), List.of(0, 0)));
+    }
+}
@@ -0,0 +1,112 @@
+package com.clickhouse.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TabSeparatedReaderTest {
+
+    /** Escapes a value the way ClickHouse writes it in {@code TabSeparated} output. */
+    private static String escape(String value) {
+        if (value == null) {
+            return "\\N";
+        }
+        StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\b' -> escaped.append("\\b");
+                case '\f' -> escaped.append("\\f");
+                case '\0' -> escaped.append("\\0");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static byte[] body(List<List<String>> rows) {
+        StringBuilder body = new StringBuilder();
+        for (List<String> row : rows) {
+            for (int i = 0; i < row.size(); i++) {
+                body.append(i > 0 ? "\t" : "").append(escape(row.get(i)));
+            }
+            body.append('\n');
+        }
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<List<String>> readAll(byte[] body) throws IOException {
+        List<List<String>> rows = new ArrayList<>();
+        try (TabSeparatedReader reader = new TabSeparatedReader(new ByteArrayInputStream(body))) {
+            List<String> row;
+            while ((row = reader.next()) != null) {
+                rows.add(new ArrayList<>(row));
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    void readsBackEscapedValues() throws IOException {
+        List<List<String>> rows = List.of(
+            List.of("1", "plain", "été 東京"),
+            Arrays.asList("2", null, "\\N"),
+            List.of("3", "tab\there", "line\nbreak\r\n"),
+            List.of("4", "back\\slash\\", "\b\f\0"),
+            List.of("5", "", ""));
+
+        assertEquals(rows, readAll(body(rows)));
+    }
+
+    @Test
+    void readsEmptyStringsOfASingleColumn() throws IOException {
+        List<List<String>> rows = List.of(List.of("a"), List.of(""), List.of(""), List.of("b"));
+
+        assertEquals(rows, readAll(body(rows)));
+        assertEquals(List.of(), readAll(new byte[0]));
+    }
+
+    @Test
+    void reusesTheRowBetweenCalls() throws IOException {
+        try (TabSeparatedReader reader = new TabSeparatedReader(
+                new ByteArrayInputStream("1\ta\n2\tb".getBytes(StandardCharsets.UTF_8)))) {
+            List<String> first = reader.next();
+            assertEquals(List.of("1", "a"), first);
+            List<String> second = reader.next();
+            assertEquals(List.of("2", "b"), second);
+            assertEquals(List.of("2", "b"), first);
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void parsesOneLine() {
+        List<String> row = new ArrayList<>();
+        StringBuilder scratch = new StringBuilder();
+
+        TabSeparatedReader.parseLine("\\N\t\t\\\\N\ttrailing\\", row, scratch);
+
+        assertEquals(Arrays.asList(null, "", "\\N", "trailing\\"), row);
+    }
+
+    @Test
+    void unescapesOnlyWithinEachField() {
+        List<String> row = new ArrayList<>();
+        StringBuilder scratch = new StringBuilder();
+
+        TabSeparatedReader.parseLine("plain\tpre\\tfix\tlast\\\\", row, scratch);
+
+        assertEquals(List.of("plain", "pre\tfix", "last\\"), row);
+    }
+}
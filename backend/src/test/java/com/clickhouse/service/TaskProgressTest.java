@@ -0,0 +1,93 @@
+package com.clickhouse.service;
+
+import com.clickhouse.config.IngestionConfig;
+import com.clickhouse.model.TaskState;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskProgressTest {
+
+    @Test
+    void firstTerminalStateSticks() {
+        TaskProgress progress = new TaskProgress("t");
+        assertTrue(progress.start());
+        assertTrue(progress.finish(TaskState.CANCELLED, null));
+        assertFalse(progress.finish(TaskState.FAILED, "interrupted"));
+        assertEquals(TaskState.CANCELLED, progress.getState());
+        assertNull(progress.snapshot().getError());
+    }
+
+    @Test
+    void doesNotStartOnceCancelled() {
+        TaskProgress progress = new TaskProgress("t");
+        assertTrue(progress.finish(TaskState.CANCELLED, null));
+        assertFalse(progress.start());
+        assertEquals(TaskState.CANCELLED, progress.getState());
+    }
+
+    @Test
+    void onlyOneRacingFinishWins() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            TaskProgress progress = new TaskProgress("t");
+            progress.start();
+            CountDownLatch go = new CountDownLatch(1);
+            AtomicInteger winners = new AtomicInteger();
+            Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                TaskState state = i % 2 == 0 ? TaskState.CANCELLED : TaskState.FAILED;
+                threads[i] = new Thread(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (progress.finish(state, state == TaskState.FAILED ? "failed" : null)) {
+                        winners.incrementAndGet();
+                    }
+                });
+                threads[i].start();
+            }
+            go.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(1, winners.get());
+            TaskState state = progress.getState();
+            assertEquals(state == TaskState.FAILED ? "failed" : null, progress.snapshot().getError());
+        }
+    }
+
+    @Test
+    void schedulerReportsCancelledRunningJobs() throws Exception {
+        IngestionJobScheduler scheduler = new IngestionJobScheduler(new IngestionConfig());
+        try {
+            CountDownLatch running = new CountDownLatch(1);
+            CountDownLatch observed = new CountDownLatch(1);
+            boolean[] cancelledWhenInterrupted = new boolean[1];
+            scheduler.submit("job", "host:8123", 0, () -> {
+                running.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    cancelledWhenInterrupted[0] = scheduler.isCancelled("job");
+                    observed.countDown();
+                }
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            assertFalse(scheduler.isCancelled("job"));
+            assertTrue(scheduler.cancel("job"));
+            assertTrue(observed.await(5, TimeUnit.SECONDS));
+            assertTrue(cancelledWhenInterrupted[0]);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}